@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Representative sets of hydrocarbon molecules for the fragmentation benchmarks. Each set contains molecules of
+ * increasing size generated from a repeating building block. The sets are fixed: every molecule can be fragmented with
+ * every combination of the benchmark parameters (see checkFragmentable), so all parameters measure the same molecules.
+ */
+public enum BenchmarkMolecules {
+    /**
+     * Unbranched alkanes with 6 to 85 carbon atoms.
+     */
+    LINEAR_ALKANES {
+        @Override
+        String createSmiles(int aSize) {
+            return "C".repeat(aSize + 5);
+        }
+    },
+    /**
+     * Alkanes with a quaternary carbon atom and an ethyl or propyl side chain in every repeating unit.
+     */
+    BRANCHED_ALKANES {
+        @Override
+        String createSmiles(int aSize) {
+            StringBuilder tmpSmiles = new StringBuilder("CC");
+            for (int i = 0; i < aSize / 3 + 1; i++) {
+                tmpSmiles.append(i % 2 == 0 ? "C(C)(CC)C" : "C(CCC)C(C)(C)C");
+            }
+            return tmpSmiles.append('C').toString();
+        }
+    },
+    /**
+     * Conjugated polyenes with 2 to 41 double bonds and a short alkyl tail.
+     */
+    POLYENES {
+        @Override
+        String createSmiles(int aSize) {
+            return "C=C".repeat(aSize / 2 + 2) + "CCC";
+        }
+    },
+    /**
+     * Two ring clusters (monocyclic, fused bicyclic or spiro) connected by a linker of 1 to 12 carbon atoms. Only
+     * linker lengths that every combination of benchmark settings can fragment without error are used.
+     */
+    RING_CLUSTERS_WITH_LINKERS {
+        @Override
+        String createSmiles(int aSize) {
+            String[] tmpFirstClusters = new String[]{"C1CCC(CC1)", "C1CC2CCC(CC2CC1)", "C1CCC2(CC1)CCCC2",
+                    "C1CCCC(CCC1)", "C1CCC(C1)", "C1CC(C1)", "C1CCC2CC(CCC2C1)"};
+            String[] tmpSecondClusters = new String[]{"C1CCCCC1", "C1CCC2CCCCC2C1", "C1CCCCCCC1", "C1CCCC1", "C1CC1",
+                    "C1CCC2(CC1)CCCC2"};
+            int[] tmpLinkerLengths = new int[]{1, 4, 7, 8, 9, 10, 11, 12};
+            return tmpFirstClusters[aSize % tmpFirstClusters.length]
+                    + "C".repeat(tmpLinkerLengths[(aSize - 1) / 10])
+                    + tmpSecondClusters[aSize % tmpSecondClusters.length];
+        }
+    };
+
+    /**
+     * Number of molecules per set.
+     */
+    static final int SET_SIZE = 80;
+
+    /**
+     * Creates the SMILES code of the molecule with the given size index.
+     * @param aSize Size index from 1 to SET_SIZE.
+     * @return SMILES code.
+     */
+    abstract String createSmiles(int aSize);
+
+    /**
+     * Parses all molecules of the set.
+     * @return List of SET_SIZE new IAtomContainer objects.
+     * @throws CDKException Is triggered when a SMILES code cannot be parsed.
+     */
+    List<IAtomContainer> createMolecules() throws CDKException {
+        SmilesParser tmpSmilesParser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        List<IAtomContainer> tmpMolecules = new ArrayList<>(SET_SIZE);
+        for (int i = 1; i <= SET_SIZE; i++) {
+            tmpMolecules.add(tmpSmilesParser.parseSmiles(this.createSmiles(i)));
+        }
+        return tmpMolecules;
+    }
+
+    /**
+     * Checks that every molecule of the set can be fragmented with the given settings, so that all benchmark
+     * parameters measure the same molecules. The check fragments its own copies of the molecules, because the
+     * fragmentation configures the atoms of the fragmented molecule; the molecules to be measured are created
+     * afterwards with createMolecules.
+     * @param aSettings Fragmentation settings.
+     * @throws CDKException Is triggered when a SMILES code cannot be parsed.
+     * @throws IllegalStateException Is triggered when a molecule cannot be fragmented with the settings; the settings
+     *                               must then be removed from the benchmark parameters.
+     */
+    void checkFragmentable(FragmentationSettings aSettings) throws CDKException {
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        List<IAtomContainer> tmpMolecules = this.createMolecules();
+        for (int i = 0; i < tmpMolecules.size(); i++) {
+            FragmentationResult tmpResult = tmpFragmenter.tryFragment(tmpMolecules.get(i), aSettings);
+            if (!tmpResult.isSuccessful()) {
+                throw new IllegalStateException("Molecule " + this.createSmiles(i + 1) + " of set " + this.name()
+                        + " cannot be fragmented with " + aSettings, tmpResult.getException());
+            }
+        }
+    }
+}
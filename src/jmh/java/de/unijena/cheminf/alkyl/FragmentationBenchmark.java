@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of AlkylFragmenter.fragment. One operation fragments every molecule of the selected
+ * BenchmarkMolecules set once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FragmentationBenchmark {
+    //<editor-fold desc="parameters">
+    /**
+     * Name of the BenchmarkMolecules set.
+     */
+    @Param({"LINEAR_ALKANES", "BRANCHED_ALKANES", "POLYENES", "RING_CLUSTERS_WITH_LINKERS"})
+    public String moleculeSet;
+    /**
+     * Minimum fragment size.
+     */
+    @Param({"0", "2", "3"})
+    public int minCut;
+    /**
+     * Maximum fragment size.
+     */
+    @Param({"0", "3", "6"})
+    public int maxCut;
+    /**
+     * Whether tertiary and quaternary carbon atoms are preserved.
+     */
+    @Param({"false", "true"})
+    public boolean isPreservingTertiaryQuaternaryCarbons;
+    //</editor-fold>
+    //<editor-fold desc="state">
+    /**
+     * Stateless fragmenter.
+     */
+    private AlkylFragmenter fragmenter;
+    /**
+     * Fragmentation settings built from the parameters.
+     */
+    private FragmentationSettings settings;
+    /**
+     * Molecules of the selected set, created anew for every iteration.
+     */
+    private List<IAtomContainer> molecules;
+    //</editor-fold>
+    //<editor-fold desc="setup">
+    /**
+     * Creates the fragmenter and the settings and checks that the whole molecule set can be fragmented with them.
+     * @throws CDKException Is triggered when a molecule cannot be created.
+     * @throws IllegalStateException Is triggered when a molecule of the set cannot be fragmented with the settings.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws CDKException {
+        this.fragmenter = new AlkylFragmenter();
+        this.settings = new FragmentationSettings(this.minCut, this.maxCut, this.isPreservingTertiaryQuaternaryCarbons);
+        BenchmarkMolecules.valueOf(this.moleculeSet).checkFragmentable(this.settings);
+    }
+
+    /**
+     * Creates fresh molecules of the selected set, so that every iteration starts with molecules that have not been
+     * fragmented yet.
+     * @throws CDKException Is triggered when a molecule cannot be created.
+     */
+    @Setup(Level.Iteration)
+    public void createMolecules() throws CDKException {
+        this.molecules = BenchmarkMolecules.valueOf(this.moleculeSet).createMolecules();
+    }
+    //</editor-fold>
+    //<editor-fold desc="benchmarks">
+    /**
+     * Fragments all molecules including the construction of their graphs and fragment IAtomContainer objects.
+     * @param aBlackhole Sink for the results.
+     * @throws CDKException Is triggered in genAtomContainer.
+     */
+    @Benchmark
+    public void fragment(Blackhole aBlackhole) throws CDKException {
+        for (IAtomContainer tmpMolecule : this.molecules) {
+            aBlackhole.consume(this.fragmenter.fragment(tmpMolecule, this.settings));
+        }
+    }
+    //</editor-fold>
+}
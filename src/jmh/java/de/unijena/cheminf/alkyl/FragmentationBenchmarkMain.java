@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Entry point of benchmarks.jar. It accepts the usual JMH command line options (e.g. a benchmark name pattern or
+ * "-p minCut=2") and always adds the GC profiler, so that every benchmark reports its allocation rate next to its
+ * throughput. The results of FragmentationPhaseBenchmark, which measures cumulative phase prefixes, are additionally
+ * converted into the time and allocation of each single phase.
+ */
+public class FragmentationBenchmarkMain {
+    /**
+     * Runs the selected benchmarks.
+     * @param args JMH command line options.
+     * @throws CommandLineOptionException if the options are invalid.
+     * @throws RunnerException if a benchmark fails.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions tmpCommandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder tmpOptions = new OptionsBuilder().parent(tmpCommandLineOptions);
+        if (tmpCommandLineOptions.getProfilers().stream()
+                .noneMatch(aProfiler -> aProfiler.getKlass().equals(GCProfiler.class.getName())
+                        || aProfiler.getKlass().equals("gc"))) {
+            tmpOptions.addProfiler(GCProfiler.class);
+        }
+        FragmentationBenchmarkMain.printPhaseDifferences(new Runner(tmpOptions.build()).run());
+    }
+
+    /**
+     * Prints the time and allocation of each single phase, computed as the difference between the results of
+     * FragmentationPhaseBenchmark for the phase and for the preceding phase with otherwise equal parameters. The first
+     * phase also contains resetting the graphs and creating the processes. Phases whose preceding phase was not run
+     * are skipped.
+     * @param aResults Results of all benchmarks that were run.
+     */
+    private static void printPhaseDifferences(Collection<RunResult> aResults) {
+        Map<String, RunResult> tmpPrefixResults = new HashMap<>(aResults.size() * 2);
+        for (RunResult tmpResult : aResults) {
+            if (tmpResult.getParams().getBenchmark().startsWith(FragmentationPhaseBenchmark.class.getName())) {
+                tmpPrefixResults.put(FragmentationBenchmarkMain.getPrefixKey(tmpResult.getParams(),
+                        tmpResult.getParams().getParam("phase")), tmpResult);
+            }
+        }
+        for (RunResult tmpResult : aResults) {
+            BenchmarkParams tmpParams = tmpResult.getParams();
+            if (!tmpParams.getBenchmark().startsWith(FragmentationPhaseBenchmark.class.getName())) {
+                continue;
+            }
+            FragmentationPhase tmpPhase = FragmentationPhase.valueOf(tmpParams.getParam("phase"));
+            RunResult tmpPrevious = tmpPhase.ordinal() == 0 ? null : tmpPrefixResults.get(
+                    FragmentationBenchmarkMain.getPrefixKey(tmpParams,
+                            FragmentationPhase.values()[tmpPhase.ordinal() - 1].name()));
+            if (tmpPhase.ordinal() > 0 && tmpPrevious == null) {
+                continue;
+            }
+            double tmpTime = tmpResult.getPrimaryResult().getScore()
+                    - (tmpPrevious == null ? 0 : tmpPrevious.getPrimaryResult().getScore());
+            double tmpBytes = FragmentationBenchmarkMain.getAllocation(tmpResult)
+                    - (tmpPrevious == null ? 0 : FragmentationBenchmarkMain.getAllocation(tmpPrevious));
+            System.out.printf("%s %s: %.3f %s, %.0f B/op%n", tmpPhase,
+                    FragmentationBenchmarkMain.getPrefixKey(tmpParams, ""), tmpTime,
+                    tmpResult.getPrimaryResult().getScoreUnit(), tmpBytes);
+        }
+    }
+
+    /**
+     * Returns a key identifying the parameters of a FragmentationPhaseBenchmark result with the phase replaced.
+     * @param aParams Parameters of the result.
+     * @param aPhase Name of the phase to put into the key.
+     * @return Key string.
+     */
+    private static String getPrefixKey(BenchmarkParams aParams, String aPhase) {
+        return aPhase + "[moleculeSet=" + aParams.getParam("moleculeSet") + ", minCut=" + aParams.getParam("minCut")
+                + ", maxCut=" + aParams.getParam("maxCut") + ", isPreservingTertiaryQuaternaryCarbons="
+                + aParams.getParam("isPreservingTertiaryQuaternaryCarbons") + "]";
+    }
+
+    /**
+     * Returns the allocation per operation reported by the GC profiler.
+     * @param aResult Result of a benchmark.
+     * @return Allocated bytes per operation or NaN if the profiler did not report them.
+     */
+    private static double getAllocation(RunResult aResult) {
+        Result tmpAllocation = aResult.getSecondaryResults().get("gc.alloc.rate.norm");
+        return tmpAllocation == null ? Double.NaN : tmpAllocation.getScore();
+    }
+}
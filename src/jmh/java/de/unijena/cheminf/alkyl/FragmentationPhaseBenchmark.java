@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the single fragmentation phases. JMH cannot exclude the preparation of a phase by the earlier phases
+ * without per-invocation setup, which distorts short measurements and charges the setup's allocation to the measured
+ * operation. Instead, one operation creates a new FragmentationProcess for each molecule of the selected
+ * BenchmarkMolecules set and runs all phases up to and including the selected one. The cost of a single phase is the
+ * difference between the results of the phase and the preceding phase for otherwise equal parameters, both for the
+ * time and for the allocation per operation reported by the GC profiler; FragmentationBenchmarkMain prints these
+ * differences after the run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FragmentationPhaseBenchmark {
+    //<editor-fold desc="parameters">
+    /**
+     * Name of the last FragmentationPhase run by an operation.
+     */
+    @Param({"CUT_BRANCHES", "CUT_CHAINS", "CUT_RINGS", "MAKE_CORRECTIONS", "GEN_ATOM_CONTAINER"})
+    public String phase;
+    /**
+     * Name of the BenchmarkMolecules set.
+     */
+    @Param({"LINEAR_ALKANES", "BRANCHED_ALKANES", "POLYENES", "RING_CLUSTERS_WITH_LINKERS"})
+    public String moleculeSet;
+    /**
+     * Minimum fragment size.
+     */
+    @Param({"0", "2", "3"})
+    public int minCut;
+    /**
+     * Maximum fragment size.
+     */
+    @Param({"0", "3", "6"})
+    public int maxCut;
+    /**
+     * Whether tertiary and quaternary carbon atoms are preserved.
+     */
+    @Param({"false", "true"})
+    public boolean isPreservingTertiaryQuaternaryCarbons;
+    //</editor-fold>
+    //<editor-fold desc="state">
+    /**
+     * Phases run by an operation, in FragmentationPhase order.
+     */
+    private FragmentationPhase[] phases;
+    /**
+     * Fragmentation settings built from the parameters.
+     */
+    private FragmentationSettings settings;
+    /**
+     * Molecules of the selected set.
+     */
+    private List<IAtomContainer> molecules;
+    /**
+     * Graphs of the molecules, reset at the start of every fragmentation.
+     */
+    private MoleculeGraph[] graphs;
+    //</editor-fold>
+    //<editor-fold desc="setup">
+    /**
+     * Creates the settings, the phase prefix, the molecules and their graphs.
+     * @throws CDKException Is triggered when a molecule cannot be created.
+     * @throws IllegalStateException Is triggered when a molecule of the set cannot be fragmented with the settings.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws CDKException {
+        this.phases = Arrays.copyOf(FragmentationPhase.values(), FragmentationPhase.valueOf(this.phase).ordinal() + 1);
+        this.settings = new FragmentationSettings(this.minCut, this.maxCut, this.isPreservingTertiaryQuaternaryCarbons);
+        BenchmarkMolecules.valueOf(this.moleculeSet).checkFragmentable(this.settings);
+        this.molecules = BenchmarkMolecules.valueOf(this.moleculeSet).createMolecules();
+        this.graphs = new MoleculeGraph[this.molecules.size()];
+        for (int i = 0; i < this.graphs.length; i++) {
+            this.graphs[i] = new MoleculeGraph(this.molecules.get(i));
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="benchmarks">
+    /**
+     * Fragments all molecules up to and including the selected phase. Resetting the graph and creating the process
+     * are part of every phase prefix and cancel out in the differences.
+     * @param aBlackhole Sink for the results.
+     * @throws CDKException Is triggered in genAtomContainer.
+     */
+    @Benchmark
+    public void runPhases(Blackhole aBlackhole) throws CDKException {
+        for (int i = 0; i < this.graphs.length; i++) {
+            this.graphs[i].reset();
+            FragmentationProcess tmpProcess = new FragmentationProcess(this.molecules.get(i), this.graphs[i],
+                    this.settings);
+            for (FragmentationPhase tmpPhase : this.phases) {
+                tmpProcess.runPhase(tmpPhase);
+            }
+            aBlackhole.consume(tmpProcess);
+        }
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,246 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class AtomSequenceList is a growable list of atom index sequences, such as the branches, remainders or fragments
+ * of a FragmentationProcess, stored in primitive int arrays so that no atom index is ever boxed. The atom indices of
+ * all sequences are stored one after the other in a single array; sequence i occupies the positions from offsets[i]
+ * (inclusive) to offsets[i+1] (exclusive), which is the layout of FragmentPartition. Atoms are always appended to the
+ * open sequence behind the last one, which becomes part of the list when it is closed (see closeSequence). The open
+ * sequence can be read like the others under the index size(). Objects of this class are not thread-safe.
+ */
+final class AtomSequenceList {
+    //<editor-fold desc="private fields">
+    /**
+     * Concatenated atom indices of all sequences, including the open one.
+     */
+    private int[] atomIndices;
+    /**
+     * Number of valid entries of atomIndices.
+     */
+    private int atomCount;
+    /**
+     * Start position of each sequence in atomIndices; the entry behind the last closed sequence is the start of the
+     * open sequence.
+     */
+    private int[] offsets;
+    /**
+     * Number of closed sequences.
+     */
+    private int sequenceCount;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new empty list.
+     * @param anAtomCapacity Initial number of atom indices that can be stored without growing.
+     */
+    AtomSequenceList(int anAtomCapacity) {
+        this.atomIndices = new int[Math.max(anAtomCapacity, 4)];
+        this.offsets = new int[8];
+    }
+    //</editor-fold>
+    //<editor-fold desc="methods">
+    /**
+     * Returns the number of closed sequences.
+     * @return Number of sequences.
+     */
+    int size() {
+        return this.sequenceCount;
+    }
+
+    /**
+     * Returns the number of atoms of a sequence.
+     * @param aSequence Index of the sequence, size() for the open sequence.
+     * @return Number of atoms.
+     * @throws IndexOutOfBoundsException if aSequence is neither a sequence nor size().
+     */
+    int getSize(int aSequence) {
+        if (aSequence < 0 || aSequence > this.sequenceCount) {
+            throw new IndexOutOfBoundsException("Index " + aSequence + " out of bounds for length "
+                    + this.sequenceCount);
+        }
+        return this.getEnd(aSequence) - this.offsets[aSequence];
+    }
+
+    /**
+     * Returns the atom index at the given position of a sequence.
+     * @param aSequence Index of the sequence, size() for the open sequence.
+     * @param aPosition Position in the sequence.
+     * @return Atom index.
+     * @throws IndexOutOfBoundsException if aPosition is not a position of the sequence.
+     */
+    int getAtom(int aSequence, int aPosition) {
+        int tmpSize = this.getSize(aSequence);
+        if (aPosition < 0 || aPosition >= tmpSize) {
+            throw new IndexOutOfBoundsException("Index " + aPosition + " out of bounds for length " + tmpSize);
+        }
+        return this.atomIndices[this.offsets[aSequence] + aPosition];
+    }
+
+    /**
+     * Appends an atom index to the open sequence.
+     * @param anAtomIndex Atom index.
+     */
+    void addAtom(int anAtomIndex) {
+        if (this.atomCount == this.atomIndices.length) {
+            this.atomIndices = Arrays.copyOf(this.atomIndices, this.atomCount * 2);
+        }
+        this.atomIndices[this.atomCount++] = anAtomIndex;
+    }
+
+    /**
+     * Appends a range of an int array to the open sequence.
+     * @param anAtomIndices Array of atom indices.
+     * @param aFrom First position of the range (inclusive).
+     * @param aTo Last position of the range (exclusive).
+     */
+    void addAtoms(int[] anAtomIndices, int aFrom, int aTo) {
+        int tmpCount = aTo - aFrom;
+        this.ensureAtomCapacity(tmpCount);
+        System.arraycopy(anAtomIndices, aFrom, this.atomIndices, this.atomCount, tmpCount);
+        this.atomCount += tmpCount;
+    }
+
+    /**
+     * Appends the atoms of a range of a sequence of the given list, which may be this list, to the open sequence.
+     * @param aList List holding the sequence.
+     * @param aSequence Index of the sequence in aList, aList.size() for its open sequence.
+     * @param aFrom First position of the range in the sequence (inclusive).
+     * @param aTo Last position of the range in the sequence (exclusive).
+     * @param anIsReversed Whether to append the range from its last to its first atom.
+     * @throws IndexOutOfBoundsException if the range exceeds the sequence.
+     * @throws IllegalArgumentException if aFrom is greater than aTo.
+     */
+    void addAtoms(AtomSequenceList aList, int aSequence, int aFrom, int aTo, boolean anIsReversed) {
+        int tmpSize = aList.getSize(aSequence);
+        if (aFrom < 0 || aTo > tmpSize) {
+            throw new IndexOutOfBoundsException("Range [" + aFrom + ", " + aTo + ") out of bounds for length "
+                    + tmpSize);
+        }
+        if (aFrom > aTo) {
+            throw new IllegalArgumentException("From index " + aFrom + " > to index " + aTo);
+        }
+        int tmpCount = aTo - aFrom;
+        this.ensureAtomCapacity(tmpCount);
+        int tmpStart = aList.offsets[aSequence] + aFrom;
+        if (anIsReversed) {
+            for (int i = tmpStart + tmpCount - 1; i >= tmpStart; i--) {
+                this.atomIndices[this.atomCount++] = aList.atomIndices[i];
+            }
+        } else {
+            System.arraycopy(aList.atomIndices, tmpStart, this.atomIndices, this.atomCount, tmpCount);
+            this.atomCount += tmpCount;
+        }
+    }
+
+    /**
+     * Closes the open sequence, so that it becomes the last sequence of the list, and starts a new empty open sequence.
+     */
+    void closeSequence() {
+        if (this.sequenceCount + 2 > this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        }
+        this.offsets[++this.sequenceCount] = this.atomCount;
+    }
+
+    /**
+     * Removes all atoms of the open sequence.
+     */
+    void clearOpenSequence() {
+        this.atomCount = this.offsets[this.sequenceCount];
+    }
+
+    /**
+     * Turns the last sequence back into the open sequence, so that atoms can be appended to it. The atoms of the
+     * current open sequence are removed.
+     * @throws IllegalStateException if the list has no sequence.
+     */
+    void reopenLastSequence() {
+        if (this.sequenceCount == 0) {
+            throw new IllegalStateException("No sequence to reopen");
+        }
+        this.atomCount = this.offsets[this.sequenceCount--];
+    }
+
+    /**
+     * Removes all sequences, including the open one.
+     */
+    void clear() {
+        this.atomCount = 0;
+        this.sequenceCount = 0;
+    }
+
+    /**
+     * Creates a partition with one fragment per closed sequence.
+     * @return New FragmentPartition object.
+     */
+    FragmentPartition toPartition() {
+        int tmpAtomCount = this.offsets[this.sequenceCount];
+        return new FragmentPartition(Arrays.copyOf(this.offsets, this.sequenceCount + 1),
+                Arrays.copyOf(this.atomIndices, tmpAtomCount));
+    }
+
+    /**
+     * Copies the closed sequences into lists of boxed atom indices.
+     * @return New list with one new Integer list per sequence.
+     */
+    List<List<Integer>> toLists() {
+        List<List<Integer>> tmpLists = new ArrayList<>(this.sequenceCount);
+        for (int i = 0; i < this.sequenceCount; i++) {
+            List<Integer> tmpList = new ArrayList<>(this.getEnd(i) - this.offsets[i]);
+            for (int j = this.offsets[i]; j < this.getEnd(i); j++) {
+                tmpList.add(this.atomIndices[j]);
+            }
+            tmpLists.add(tmpList);
+        }
+        return tmpLists;
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Returns the position behind the last atom of a sequence.
+     * @param aSequence Index of the sequence, sequenceCount for the open sequence.
+     * @return End position in atomIndices.
+     */
+    private int getEnd(int aSequence) {
+        return aSequence < this.sequenceCount ? this.offsets[aSequence + 1] : this.atomCount;
+    }
+
+    /**
+     * Grows atomIndices so that the given number of atom indices can be appended.
+     * @param aCount Number of atom indices to append.
+     */
+    private void ensureAtomCapacity(int aCount) {
+        if (this.atomCount + aCount > this.atomIndices.length) {
+            this.atomIndices = Arrays.copyOf(this.atomIndices, Math.max(this.atomIndices.length * 2,
+                    this.atomCount + aCount));
+        }
+    }
+    //</editor-fold>
+}
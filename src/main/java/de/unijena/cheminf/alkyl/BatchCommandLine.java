@@ -0,0 +1,372 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class BatchCommandLine is the non-interactive counterpart of the ConsoleApplication menu. It fragments all
+ * molecules of a SMILES / CSV file (see SmilesFileFragmenter) or SD file (see SdfFileFragmenter, chosen by the file
+ * extension .sdf or .sd) with the settings given as command line arguments:
+ * <pre>
+ * input output [--min-cut n] [--max-cut n] [--preserve | --no-preserve] [--threads n] [--time-limit ms]
+ *     [--cache n] [--progress-interval s] [--intern-fragments]
+ * </pre>
+ * If the output file name ends with .alkb, the fragments of a SMILES / CSV file are written in the binary format of
+ * the FragmentBinaryWriter instead of as SMILES codes; --intern-fragments adds a dictionary of the canonical fragment
+ * SMILES codes to it.
+ * While the file is streamed, a progress line with the average molecule and fragment throughput, the median and 99th
+ * percentile of the molecule latency and the number of failed molecules is printed periodically to the progress
+ * stream. A final line adds the number of records written and the records that could not be fragmented, including
+ * those that could not even be parsed.
+ * <p>
+ * main exits with status 0 on success, 1 if the files cannot be read or written and 2 for invalid arguments, so that
+ * the program can be run from job schedulers.
+ */
+public class BatchCommandLine {
+    //<editor-fold desc="constants">
+    /**
+     * Exit status of a successful run.
+     */
+    public static final int EXIT_SUCCESS = 0;
+    /**
+     * Exit status if the input or output file cannot be read or written.
+     */
+    public static final int EXIT_IO_ERROR = 1;
+    /**
+     * Exit status for invalid command line arguments.
+     */
+    public static final int EXIT_USAGE_ERROR = 2;
+    /**
+     * Default number of seconds between two progress lines.
+     */
+    private static final long DEFAULT_PROGRESS_INTERVAL_SECONDS = 10;
+    /**
+     * Extension of output files written in the binary format.
+     */
+    private static final String BINARY_FILE_EXTENSION = ".alkb";
+    /**
+     * Usage message printed for invalid command line arguments.
+     */
+    private static final String USAGE = "Usage: BatchCommandLine input output [--min-cut n] [--max-cut n]"
+            + " [--preserve | --no-preserve] [--threads n] [--time-limit ms] [--cache n] [--progress-interval s]"
+            + " [--intern-fragments]\n"
+            + "  input                  SMILES / CSV file (SMILES,ID per line) or SD file (.sdf, .sd)\n"
+            + "  output                 output file of the same format, or binary fragment file (.alkb) for SMILES"
+            + " input; an existing file is overwritten\n"
+            + "  --min-cut n            minimal fragment size, 0 for no minimum (default 1)\n"
+            + "  --max-cut n            maximal fragment size, 0 for no maximum (default 3)\n"
+            + "  --preserve             preserve tertiary and quaternary carbon atoms (default)\n"
+            + "  --no-preserve          do not preserve tertiary and quaternary carbon atoms\n"
+            + "  --threads n            number of worker threads (default: number of processors)\n"
+            + "  --time-limit ms        maximum time per molecule in milliseconds (default: no limit)\n"
+            + "  --cache n              number of cached results for duplicate structures (default: no cache)\n"
+            + "  --progress-interval s  seconds between two progress lines (default 10)\n"
+            + "  --intern-fragments     add a dictionary of the fragment SMILES codes to a binary fragment file";
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Path of the input file.
+     */
+    private final Path inputFile;
+    /**
+     * Path of the output file.
+     */
+    private final Path outputFile;
+    /**
+     * Fragmentation settings for all molecules.
+     */
+    private final FragmentationSettings settings;
+    /**
+     * Number of worker threads.
+     */
+    private final int threadCount;
+    /**
+     * Maximum time per molecule or null for no limit.
+     */
+    private final Duration timeLimit;
+    /**
+     * Maximum number of cached results, 0 for no cache.
+     */
+    private final int cacheSize;
+    /**
+     * Number of seconds between two progress lines.
+     */
+    private final long progressIntervalSeconds;
+    /**
+     * Whether a binary output file gets a fragment dictionary.
+     */
+    private final boolean isInterningFragments;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new BatchCommandLine from command line arguments.
+     * @param args Input and output path followed by options in any order.
+     * @throws IllegalArgumentException if the arguments are incomplete, unknown or invalid.
+     */
+    public BatchCommandLine(String[] args) {
+        Path tmpInputFile = null;
+        Path tmpOutputFile = null;
+        int tmpMinCut = 1;
+        int tmpMaxCut = 3;
+        boolean tmpIsPreservingTertiaryQuaternaryCarbons = true;
+        int tmpThreadCount = Runtime.getRuntime().availableProcessors();
+        Duration tmpTimeLimit = null;
+        int tmpCacheSize = 0;
+        long tmpProgressIntervalSeconds = DEFAULT_PROGRESS_INTERVAL_SECONDS;
+        boolean tmpIsInterningFragments = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--min-cut":
+                    tmpMinCut = parseNumber(args, ++i, 0);
+                    break;
+                case "--max-cut":
+                    tmpMaxCut = parseNumber(args, ++i, 0);
+                    break;
+                case "--preserve":
+                    tmpIsPreservingTertiaryQuaternaryCarbons = true;
+                    break;
+                case "--no-preserve":
+                    tmpIsPreservingTertiaryQuaternaryCarbons = false;
+                    break;
+                case "--threads":
+                    tmpThreadCount = parseNumber(args, ++i, 1);
+                    break;
+                case "--time-limit":
+                    tmpTimeLimit = Duration.ofMillis(parseNumber(args, ++i, 1));
+                    break;
+                case "--cache":
+                    tmpCacheSize = parseNumber(args, ++i, 0);
+                    break;
+                case "--progress-interval":
+                    tmpProgressIntervalSeconds = parseNumber(args, ++i, 1);
+                    break;
+                case "--intern-fragments":
+                    tmpIsInterningFragments = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    } else if (tmpInputFile == null) {
+                        tmpInputFile = Paths.get(args[i]);
+                    } else if (tmpOutputFile == null) {
+                        tmpOutputFile = Paths.get(args[i]);
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                    }
+            }
+        }
+        if (tmpOutputFile == null) {
+            throw new IllegalArgumentException("Input and output file are required");
+        }
+        if (isBinaryFile(tmpOutputFile) && isSdFile(tmpInputFile)) {
+            throw new IllegalArgumentException("Binary output (" + BINARY_FILE_EXTENSION
+                    + ") is only supported for SMILES / CSV input");
+        }
+        this.inputFile = tmpInputFile;
+        this.outputFile = tmpOutputFile;
+        this.settings = new FragmentationSettings(tmpMinCut, tmpMaxCut, tmpIsPreservingTertiaryQuaternaryCarbons);
+        this.threadCount = tmpThreadCount;
+        this.timeLimit = tmpTimeLimit;
+        this.cacheSize = tmpCacheSize;
+        this.progressIntervalSeconds = tmpProgressIntervalSeconds;
+        this.isInterningFragments = tmpIsInterningFragments;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Runs the batch fragmentation from the command line.
+     * @param args Input and output path followed by options in any order.
+     */
+    public static void main(String[] args) {
+        BatchCommandLine tmpCommandLine;
+        try {
+            tmpCommandLine = new BatchCommandLine(args);
+        } catch (IllegalArgumentException anException) {
+            System.err.println(anException.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE_ERROR);
+            return;
+        }
+        try {
+            tmpCommandLine.run(System.err);
+        } catch (IOException anException) {
+            System.err.println("Fragmentation of " + tmpCommandLine.getInputFile() + " failed: " + anException);
+            System.exit(EXIT_IO_ERROR);
+        }
+        System.exit(EXIT_SUCCESS);
+    }
+
+    /**
+     * Fragments all molecules of the input file, writes the results to the output file and prints progress lines and
+     * a final summary line to the given stream.
+     * @param aProgressStream Stream for the progress lines, e.g. System.err.
+     * @return Number of records written.
+     * @throws IOException if the files cannot be read or written or the processing is interrupted.
+     */
+    public long run(PrintStream aProgressStream) throws IOException {
+        FragmentationMetrics tmpMetrics = new FragmentationMetrics();
+        FragmentationCache tmpCache = this.cacheSize > 0 ? new FragmentationCache(this.cacheSize) : null;
+        long tmpStartNanos = System.nanoTime();
+        ScheduledExecutorService tmpProgressExecutor = Executors.newSingleThreadScheduledExecutor(aRunnable -> {
+            Thread tmpThread = new Thread(aRunnable, "alkyl-fragmentation-progress");
+            tmpThread.setDaemon(true);
+            return tmpThread;
+        });
+        tmpProgressExecutor.scheduleAtFixedRate(
+                () -> aProgressStream.println(formatProgress(tmpMetrics, System.nanoTime() - tmpStartNanos)),
+                this.progressIntervalSeconds, this.progressIntervalSeconds, TimeUnit.SECONDS);
+        long tmpRecordCount;
+        try {
+            if (isSdFile(this.inputFile)) {
+                SdfFileFragmenter tmpFileFragmenter = new SdfFileFragmenter(this.settings, this.threadCount);
+                tmpFileFragmenter.setCache(tmpCache);
+                tmpFileFragmenter.setListener(tmpMetrics);
+                tmpFileFragmenter.setTimeLimit(this.timeLimit);
+                tmpRecordCount = tmpFileFragmenter.fragment(this.inputFile, this.outputFile);
+            } else {
+                SmilesFileFragmenter tmpFileFragmenter = new SmilesFileFragmenter(this.settings, this.threadCount);
+                tmpFileFragmenter.setCache(tmpCache);
+                tmpFileFragmenter.setListener(tmpMetrics);
+                tmpFileFragmenter.setTimeLimit(this.timeLimit);
+                tmpRecordCount = isBinaryFile(this.outputFile)
+                        ? tmpFileFragmenter.fragmentToBinary(this.inputFile, this.outputFile, this.isInterningFragments)
+                        : tmpFileFragmenter.fragment(this.inputFile, this.outputFile);
+            }
+        } finally {
+            tmpProgressExecutor.shutdownNow();
+        }
+        //records that could not be parsed or fragmented; the metrics count successful molecules only
+        long tmpNotFragmentedCount = Math.max(tmpRecordCount - tmpMetrics.getMoleculeCount(), 0);
+        aProgressStream.println(formatProgress(tmpMetrics, System.nanoTime() - tmpStartNanos) + ", " + tmpRecordCount
+                + " records written to " + this.outputFile + ", " + tmpNotFragmentedCount + " not fragmented");
+        return tmpRecordCount;
+    }
+
+    /**
+     * Returns the path of the input file.
+     * @return Input file.
+     */
+    public Path getInputFile() {
+        return this.inputFile;
+    }
+
+    /**
+     * Returns the path of the output file.
+     * @return Output file.
+     */
+    public Path getOutputFile() {
+        return this.outputFile;
+    }
+
+    /**
+     * Returns the fragmentation settings given as arguments.
+     * @return FragmentationSettings object.
+     */
+    public FragmentationSettings getSettings() {
+        return this.settings;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     * @return Thread count.
+     */
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    /**
+     * Creates a progress line from the metrics collected so far. The molecule count and throughput include the
+     * molecules whose fragmentation failed, which are also given as errors.
+     * @param aMetrics Metrics of the running fragmentation.
+     * @param anElapsedNanos Time since the start of the fragmentation in nanoseconds.
+     * @return Progress line without line break.
+     */
+    public static String formatProgress(FragmentationMetrics aMetrics, long anElapsedNanos) {
+        double tmpElapsedSeconds = Math.max(anElapsedNanos, 1L) / 1e9;
+        long tmpMoleculeCount = aMetrics.getMoleculeCount() + aMetrics.getFailedMoleculeCount();
+        long tmpFragmentCount = aMetrics.getFragmentCount();
+        LatencyHistogram tmpHistogram = aMetrics.getMoleculeHistogram();
+        return String.format(Locale.ROOT,
+                "%.1f s: %d molecules (%.1f/s), %d fragments (%.1f/s), p50 %.3f ms, p99 %.3f ms, %d errors",
+                tmpElapsedSeconds, tmpMoleculeCount, tmpMoleculeCount / tmpElapsedSeconds, tmpFragmentCount,
+                tmpFragmentCount / tmpElapsedSeconds, tmpHistogram.getQuantileNanos(0.5) / 1e6,
+                tmpHistogram.getQuantileNanos(0.99) / 1e6, aMetrics.getFailedMoleculeCount());
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Checks whether a file is an SD file by its extension.
+     * @param aFile Path of the file.
+     * @return True if the file name ends with .sdf or .sd.
+     */
+    private static boolean isSdFile(Path aFile) {
+        String tmpFileName = aFile.getFileName().toString().toLowerCase(Locale.ROOT);
+        return tmpFileName.endsWith(".sdf") || tmpFileName.endsWith(".sd");
+    }
+
+    /**
+     * Checks whether a file is a binary fragment file by its extension.
+     * @param aFile Path of the file.
+     * @return True if the file name ends with .alkb.
+     */
+    private static boolean isBinaryFile(Path aFile) {
+        return aFile.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(BINARY_FILE_EXTENSION);
+    }
+
+    /**
+     * Parses the value of a numeric option.
+     * @param args Command line arguments.
+     * @param anIndex Index of the value.
+     * @param aMinimum Smallest allowed value.
+     * @return Parsed value.
+     * @throws IllegalArgumentException if the value is missing, not an integer or smaller than aMinimum.
+     */
+    private static int parseNumber(String[] args, int anIndex, int aMinimum) {
+        if (anIndex >= args.length) {
+            throw new IllegalArgumentException("Missing value for option " + args[anIndex - 1]);
+        }
+        int tmpValue;
+        try {
+            tmpValue = Integer.parseInt(args[anIndex]);
+        } catch (NumberFormatException anException) {
+            throw new IllegalArgumentException("Invalid value for option " + args[anIndex - 1] + ": "
+                    + args[anIndex]);
+        }
+        if (tmpValue < aMinimum) {
+            throw new IllegalArgumentException("Value for option " + args[anIndex - 1] + " must be at least "
+                    + aMinimum + ": " + tmpValue);
+        }
+        return tmpValue;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,365 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The class BatchFragmenter fragments collections of molecules in parallel on a ForkJoinPool. The input is split
+ * recursively into halves until a part is not larger than the grain size; the parts are then processed by the pool's
+ * worker threads, which steal unprocessed halves from each other when they run out of work. This way, slow molecules
+ * do not leave the other workers idle. The results are returned in the order of the input molecules. Molecules that
+ * cannot be fragmented yield a result that is not successful (see FragmentationResult.isSuccessful) and do not stop
+ * the batch. Molecules from an Iterable are taken in blocks that are submitted to the pool while the calling thread
+ * already reads the next ones; only a bounded number of blocks is in flight at any time.
+ */
+public class BatchFragmenter {
+    //<editor-fold desc="constants">
+    /**
+     * Number of parts per worker thread the input is split into when the grain size is chosen automatically.
+     */
+    private static final int PARTS_PER_THREAD = 16;
+    /**
+     * Upper limit for the automatically chosen grain size.
+     */
+    private static final int MAX_AUTOMATIC_GRAIN_SIZE = 256;
+    /**
+     * Number of molecules taken from an Iterable and submitted to the pool as one task.
+     */
+    private static final int BLOCK_SIZE = 256;
+    /**
+     * Number of blocks per worker thread that may be submitted to the pool before the oldest one is collected.
+     */
+    private static final int BLOCKS_PER_THREAD = 4;
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Stateless fragmenter shared by all worker threads.
+     */
+    private final AlkylFragmenter fragmenter;
+    /**
+     * Pool the fragmentation tasks are run on.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Maximum number of molecules processed by one task without further splitting, 0 for automatic choice.
+     */
+    private final int grainSize;
+    //</editor-fold>
+    //<editor-fold desc="constructors">
+    /**
+     * Creates a new BatchFragmenter that runs on the common ForkJoinPool and chooses the grain size automatically.
+     */
+    public BatchFragmenter() {
+        this(ForkJoinPool.commonPool(), 0);
+    }
+
+    /**
+     * Creates a new BatchFragmenter that runs on the given pool and chooses the grain size automatically.
+     * @param aPool ForkJoinPool to run the fragmentation on.
+     */
+    public BatchFragmenter(ForkJoinPool aPool) {
+        this(aPool, 0);
+    }
+
+    /**
+     * Creates a new BatchFragmenter.
+     * @param aPool ForkJoinPool to run the fragmentation on.
+     * @param aGrainSize Maximum number of molecules one task fragments without splitting its part of the input any
+     *                   further, 0 for automatic choice depending on the input size and the pool's parallelism.
+     * @throws IllegalArgumentException if aGrainSize is negative.
+     */
+    public BatchFragmenter(ForkJoinPool aPool, int aGrainSize) {
+        if (aGrainSize < 0) {
+            throw new IllegalArgumentException("Grain size must not be negative: " + aGrainSize);
+        }
+        this.fragmenter = new AlkylFragmenter();
+        this.pool = aPool;
+        this.grainSize = aGrainSize;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Fragments all given molecules in parallel.
+     * @param aMolecules List of molecules to be fragmented. Each molecule object must appear only once.
+     * @param aSettings Fragmentation settings for all molecules.
+     * @return List of FragmentationResult objects in the order of the input molecules.
+     */
+    public List<FragmentationResult> fragment(List<IAtomContainer> aMolecules, FragmentationSettings aSettings) {
+        IAtomContainer[] tmpMolecules = aMolecules.toArray(new IAtomContainer[0]);
+        FragmentationResult[] tmpResults = new FragmentationResult[tmpMolecules.length];
+        this.fragmentInto(tmpMolecules, tmpMolecules.length, aSettings, tmpResults, null);
+        return Collections.unmodifiableList(Arrays.asList(tmpResults));
+    }
+
+    /**
+     * Fragments all molecules of the given Iterable in parallel. The molecules are taken from the Iterable in blocks
+     * that are fragmented while the next blocks are read, so that the Iterable may load them lazily, e.g. from a file.
+     * @param aMolecules Iterable of molecules to be fragmented. Each molecule object must appear only once.
+     * @param aSettings Fragmentation settings for all molecules.
+     * @return List of FragmentationResult objects in the order of the input molecules.
+     */
+    public List<FragmentationResult> fragment(Iterable<IAtomContainer> aMolecules, FragmentationSettings aSettings) {
+        List<FragmentationResult> tmpResults = new ArrayList<>();
+        this.fragmentBlocks(aMolecules, aSettings, tmpResults, null);
+        return Collections.unmodifiableList(tmpResults);
+    }
+
+    /**
+     * Fragments all molecules of the given Iterable in parallel and adds their fragments to the given counter. The
+     * worker threads add each result to the counter as soon as it is available and then drop it, so that apart from
+     * the blocks of input molecules in flight only the unique fragments of the counter are kept in memory.
+     * @param aMolecules Iterable of molecules to be fragmented. Each molecule object must appear only once.
+     * @param aSettings Fragmentation settings for all molecules.
+     * @param aCounter FragmentFrequencyCounter object the fragments are added to.
+     */
+    public void count(Iterable<IAtomContainer> aMolecules, FragmentationSettings aSettings,
+                      FragmentFrequencyCounter aCounter) {
+        this.fragmentBlocks(aMolecules, aSettings, null, aCounter);
+    }
+
+    /**
+     * Returns the pool the fragmentation runs on.
+     * @return ForkJoinPool object.
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Sets a cache so that duplicate structures are fragmented only once (see AlkylFragmenter.setCache). Must not be
+     * called during a fragmentation.
+     * @param aCache FragmentationCache object or null for no caching.
+     */
+    public void setCache(FragmentationCache aCache) {
+        this.fragmenter.setCache(aCache);
+    }
+
+    /**
+     * Sets a listener that is notified about every molecule and fragmentation phase (see
+     * AlkylFragmenter.setListener). It is called from all worker threads. Must not be called during a fragmentation.
+     * @param aListener FragmentationListener object or null.
+     */
+    public void setListener(FragmentationListener aListener) {
+        this.fragmenter.setListener(aListener);
+    }
+
+    /**
+     * Sets the maximum wall time per molecule (see AlkylFragmenter.setTimeLimit). Molecules that exceed it are reported
+     * as timed out instead of blocking a worker thread. Must not be called during a fragmentation.
+     * @param aTimeLimit Duration object or null for no limit.
+     */
+    public void setTimeLimit(Duration aTimeLimit) {
+        this.fragmenter.setTimeLimit(aTimeLimit);
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Fragments the molecules of the given Iterable block by block. The calling thread reads the next block while the
+     * pool fragments the submitted ones; once the window of blocks in flight is full, the oldest block is joined and
+     * its results are collected before the next one is submitted.
+     * @param aMolecules Iterable of molecules.
+     * @param aSettings Fragmentation settings.
+     * @param aResults List the results are appended to in input order or null if they are only counted.
+     * @param aCounter Counter the results are added to or null.
+     */
+    private void fragmentBlocks(Iterable<IAtomContainer> aMolecules, FragmentationSettings aSettings,
+                                List<FragmentationResult> aResults, FragmentFrequencyCounter aCounter) {
+        int tmpWindowSize = Math.max(this.pool.getParallelism(), 1) * BLOCKS_PER_THREAD;
+        ArrayDeque<FragmentationTask> tmpWindow = new ArrayDeque<>(tmpWindowSize);
+        IAtomContainer[] tmpBlock = new IAtomContainer[BLOCK_SIZE];
+        int tmpCount = 0;
+        try {
+            for (IAtomContainer tmpMolecule : aMolecules) {
+                tmpBlock[tmpCount++] = tmpMolecule;
+                if (tmpCount == BLOCK_SIZE) {
+                    if (tmpWindow.size() == tmpWindowSize) {
+                        this.collect(tmpWindow.removeFirst(), aResults);
+                    }
+                    tmpWindow.addLast(this.createTask(tmpBlock, tmpCount, aSettings,
+                            aResults == null ? null : new FragmentationResult[tmpCount], aCounter));
+                    this.pool.execute(tmpWindow.peekLast());
+                    tmpBlock = new IAtomContainer[BLOCK_SIZE];
+                    tmpCount = 0;
+                }
+            }
+            if (tmpCount > 0) {
+                tmpWindow.addLast(this.createTask(tmpBlock, tmpCount, aSettings,
+                        aResults == null ? null : new FragmentationResult[tmpCount], aCounter));
+                this.pool.execute(tmpWindow.peekLast());
+            }
+            while (!tmpWindow.isEmpty()) {
+                this.collect(tmpWindow.removeFirst(), aResults);
+            }
+        } finally {
+            for (FragmentationTask tmpTask : tmpWindow) {
+                tmpTask.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Waits for the given block task and appends its results to the given list.
+     * @param aTask Task fragmenting one block, submitted to the pool.
+     * @param aResults List the results are appended to or null.
+     */
+    private void collect(FragmentationTask aTask, List<FragmentationResult> aResults) {
+        aTask.join();
+        if (aResults != null) {
+            aResults.addAll(Arrays.asList(aTask.results).subList(aTask.start, aTask.end));
+        }
+    }
+
+    /**
+     * Fragments the first aCount molecules of the given array on the pool and stores the results at the same
+     * positions of the result array or adds them to the counter.
+     * @param aMolecules Array of molecules.
+     * @param aCount Number of molecules to fragment.
+     * @param aSettings Fragmentation settings.
+     * @param aResults Array of at least aCount elements for the results or null if they are only counted.
+     * @param aCounter Counter the results are added to or null.
+     */
+    private void fragmentInto(IAtomContainer[] aMolecules, int aCount, FragmentationSettings aSettings,
+                              FragmentationResult[] aResults, FragmentFrequencyCounter aCounter) {
+        if (aCount == 0) {
+            return;
+        }
+        this.pool.invoke(this.createTask(aMolecules, aCount, aSettings, aResults, aCounter));
+    }
+
+    /**
+     * Creates the root task fragmenting the first aCount molecules of the given array with the configured or an
+     * automatically chosen grain size.
+     * @param aMolecules Array of molecules.
+     * @param aCount Number of molecules to fragment, at least 1.
+     * @param aSettings Fragmentation settings.
+     * @param aResults Array of at least aCount elements for the results or null if they are only counted.
+     * @param aCounter Counter the results are added to or null.
+     * @return FragmentationTask object that has not been submitted yet.
+     */
+    private FragmentationTask createTask(IAtomContainer[] aMolecules, int aCount, FragmentationSettings aSettings,
+                                         FragmentationResult[] aResults, FragmentFrequencyCounter aCounter) {
+        int tmpGrainSize = this.grainSize;
+        if (tmpGrainSize == 0) {
+            tmpGrainSize = Math.max(1, Math.min(MAX_AUTOMATIC_GRAIN_SIZE,
+                    aCount / (Math.max(this.pool.getParallelism(), 1) * PARTS_PER_THREAD)));
+        }
+        return new FragmentationTask(this.fragmenter, aSettings, aMolecules, aResults, aCounter, 0, aCount,
+                tmpGrainSize);
+    }
+    //</editor-fold>
+    //<editor-fold desc="FragmentationTask">
+    /**
+     * Task that fragments a range of an array of molecules. Ranges larger than the grain size are split in halves
+     * that are forked as new tasks.
+     */
+    private static class FragmentationTask extends RecursiveAction {
+        /**
+         * Stateless fragmenter shared by all tasks.
+         */
+        private final AlkylFragmenter fragmenter;
+        /**
+         * Fragmentation settings.
+         */
+        private final FragmentationSettings settings;
+        /**
+         * Array of input molecules.
+         */
+        private final IAtomContainer[] molecules;
+        /**
+         * Array the results are stored in at the positions of their molecules or null.
+         */
+        private final FragmentationResult[] results;
+        /**
+         * Counter the results are added to or null.
+         */
+        private final FragmentFrequencyCounter counter;
+        /**
+         * First position of the range (inclusive).
+         */
+        private final int start;
+        /**
+         * Last position of the range (exclusive).
+         */
+        private final int end;
+        /**
+         * Maximum range size processed without splitting.
+         */
+        private final int grainSize;
+
+        /**
+         * Creates a new task for the given range.
+         * @param aFragmenter Stateless fragmenter.
+         * @param aSettings Fragmentation settings.
+         * @param aMolecules Array of input molecules.
+         * @param aResults Array for the results or null.
+         * @param aCounter Counter for the results or null.
+         * @param aStart First position of the range (inclusive).
+         * @param anEnd Last position of the range (exclusive).
+         * @param aGrainSize Maximum range size processed without splitting.
+         */
+        FragmentationTask(AlkylFragmenter aFragmenter, FragmentationSettings aSettings, IAtomContainer[] aMolecules,
+                          FragmentationResult[] aResults, FragmentFrequencyCounter aCounter, int aStart, int anEnd,
+                          int aGrainSize) {
+            this.fragmenter = aFragmenter;
+            this.settings = aSettings;
+            this.molecules = aMolecules;
+            this.results = aResults;
+            this.counter = aCounter;
+            this.start = aStart;
+            this.end = anEnd;
+            this.grainSize = aGrainSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.end - this.start > this.grainSize) {
+                int tmpMiddle = (this.start + this.end) >>> 1;
+                invokeAll(new FragmentationTask(this.fragmenter, this.settings, this.molecules, this.results,
+                                this.counter, this.start, tmpMiddle, this.grainSize),
+                        new FragmentationTask(this.fragmenter, this.settings, this.molecules, this.results,
+                                this.counter, tmpMiddle, this.end, this.grainSize));
+                return;
+            }
+            for (int i = this.start; i < this.end; i++) {
+                FragmentationResult tmpResult = this.fragmenter.tryFragment(this.molecules[i], this.settings);
+                if (this.counter != null) {
+                    this.counter.add(tmpResult);
+                }
+                if (this.results != null) {
+                    this.results[i] = tmpResult;
+                }
+            }
+        }
+    }
+    //</editor-fold>
+}
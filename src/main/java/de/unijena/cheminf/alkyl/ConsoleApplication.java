@@ -33,6 +33,8 @@ import org.openscience.cdk.smiles.SmilesParser;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -54,6 +56,10 @@ public class ConsoleApplication {
         return tmpSmilesList;
     }
     public static void main(String args[]) throws CDKException, IOException, CloneNotSupportedException {
+        if (args.length > 0) {
+            BatchCommandLine.main(args);
+            return;
+        }
         BufferedReader tmpBufferedReader = new BufferedReader(new InputStreamReader(System.in));
         AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
         SmilesParser tmpSmilesParser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
@@ -76,6 +82,26 @@ public class ConsoleApplication {
                 IAtomContainer tmpMol = tmpSmilesParser.parseSmiles(tmpMoleculeSmiles);
                 tmpFragmenter.setMolecule(tmpMol);
             }
+            if (tmpTask.equals("3")) {
+                System.out.print("SMILES File (SMILES,ID per line) or SD File (.sdf): ");
+                Path tmpInputFile = Paths.get(tmpBufferedReader.readLine().trim());
+                System.out.print("Output File: ");
+                Path tmpOutputFile = Paths.get(tmpBufferedReader.readLine().trim());
+                FragmentationSettings tmpSettings = new FragmentationSettings(tmpMinCut, tmpMaxCut,
+                        tmpIsPreservingTertiaryQuaternaryCarbonAtoms);
+                int tmpThreadCount = Runtime.getRuntime().availableProcessors();
+                String tmpInputFileName = tmpInputFile.getFileName().toString().toLowerCase();
+                long tmpRecordCount;
+                if (tmpInputFileName.endsWith(".sdf") || tmpInputFileName.endsWith(".sd")) {
+                    tmpRecordCount = new SdfFileFragmenter(tmpSettings, tmpThreadCount).fragment(tmpInputFile,
+                            tmpOutputFile);
+                } else {
+                    tmpRecordCount = new SmilesFileFragmenter(tmpSettings, tmpThreadCount).fragment(tmpInputFile,
+                            tmpOutputFile);
+                }
+                System.out.println(tmpRecordCount + " molecules fragmented, results written to " + tmpOutputFile);
+                continue;
+            }
             while (tmpTask.equals("2") && !tmpPreferences.equals("4")) {
                 System.out.println("Which preference do you want to change?");
                 System.out.println("1 Minimum Chain Length (current: " + Integer.toString(tmpMinCut)+")");
@@ -0,0 +1,399 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class FragmentBinaryReader gives random access to the records of a file written by a FragmentBinaryWriter
+ * (see there for the file layout). Each column is memory-mapped and accessed through typed views of the mapped bytes,
+ * so opening a file does not read it, and every access reads only the values it returns. Because only absolute reads
+ * are used, a reader can be used by any number of threads. Each column must be smaller than 2 GB.
+ */
+public final class FragmentBinaryReader implements Closeable {
+    //<editor-fold desc="private fields">
+    /**
+     * Channel of the file.
+     */
+    private final FileChannel channel;
+    /**
+     * Number of records.
+     */
+    private final int recordCount;
+    /**
+     * Number of entries of the fragment dictionary, -1 if the file has no dictionary.
+     */
+    private final int dictionarySize;
+    /**
+     * Offsets of the IDs in idBytes.
+     */
+    private final IntBuffer idOffsets;
+    /**
+     * UTF-8 encoded IDs.
+     */
+    private final ByteBuffer idBytes;
+    /**
+     * Settings table index of each record.
+     */
+    private final IntBuffer settingsIndices;
+    /**
+     * Status of each record.
+     */
+    private final ByteBuffer statuses;
+    /**
+     * Offsets of the records in atomOffsets.
+     */
+    private final IntBuffer fragmentOffsets;
+    /**
+     * Offsets of the fragments in atomIndices.
+     */
+    private final IntBuffer atomOffsets;
+    /**
+     * Atom indices of all fragments.
+     */
+    private final IntBuffer atomIndices;
+    /**
+     * Dictionary ID of each fragment.
+     */
+    private final IntBuffer fragmentIds;
+    /**
+     * Offsets of the dictionary entries in dictionaryBytes.
+     */
+    private final IntBuffer dictionaryOffsets;
+    /**
+     * UTF-8 encoded canonical SMILES codes of the dictionary entries.
+     */
+    private final ByteBuffer dictionaryBytes;
+    /**
+     * Settings table.
+     */
+    private final FragmentationSettings[] settingsTable;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Opens a binary fragment file and maps its columns.
+     * @param aFile Path of the file.
+     * @throws IOException if the file cannot be read, is not a complete binary fragment file, was written by another
+     * format or algorithm version, or has a column larger than 2 GB.
+     */
+    public FragmentBinaryReader(Path aFile) throws IOException {
+        this.channel = FileChannel.open(aFile, StandardOpenOption.READ);
+        try {
+            long tmpFileSize = this.channel.size();
+            if (tmpFileSize < FragmentBinaryWriter.HEADER_SIZE) {
+                throw new IOException("File " + aFile + " is too short for a binary fragment file");
+            }
+            ByteBuffer tmpHeader = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, FragmentBinaryWriter.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (tmpHeader.getInt(0) != FragmentBinaryWriter.MAGIC) {
+                throw new IOException("File " + aFile + " is not a complete binary fragment file");
+            }
+            if (tmpHeader.getInt(4) != FragmentBinaryWriter.FORMAT_VERSION
+                    || tmpHeader.getInt(8) != AlkylFragmenter.ALGORITHM_VERSION) {
+                throw new IOException("File " + aFile + " has format version " + tmpHeader.getInt(4)
+                        + " and algorithm version " + tmpHeader.getInt(8) + ", expected "
+                        + FragmentBinaryWriter.FORMAT_VERSION + " and " + AlkylFragmenter.ALGORITHM_VERSION);
+            }
+            boolean tmpHasDictionary = (tmpHeader.getInt(12) & FragmentBinaryWriter.FLAG_DICTIONARY) != 0;
+            long tmpRecordCount = tmpHeader.getLong(16);
+            long tmpFragmentCount = tmpHeader.getLong(24);
+            long tmpAtomCount = tmpHeader.getLong(32);
+            int tmpDictionarySize = tmpHeader.getInt(40);
+            int tmpSettingsCount = tmpHeader.getInt(44);
+            ByteBuffer[] tmpColumns = new ByteBuffer[FragmentBinaryWriter.COLUMN_COUNT];
+            for (int i = 0; i < tmpColumns.length; i++) {
+                long tmpOffset = tmpHeader.getLong(FragmentBinaryWriter.COLUMN_DIRECTORY_POSITION + i * 16);
+                long tmpLength = tmpHeader.getLong(FragmentBinaryWriter.COLUMN_DIRECTORY_POSITION + i * 16 + 8);
+                if (tmpOffset < FragmentBinaryWriter.HEADER_SIZE || tmpLength < 0
+                        || tmpOffset + tmpLength > tmpFileSize) {
+                    throw new IOException("Column " + i + " of file " + aFile + " is outside of the file");
+                }
+                if (tmpLength > Integer.MAX_VALUE) {
+                    throw new IOException("Column " + i + " of file " + aFile + " is larger than 2 GB");
+                }
+                tmpColumns[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, tmpOffset, tmpLength)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (tmpRecordCount < 0 || tmpRecordCount >= Integer.MAX_VALUE / 4 || tmpSettingsCount < 0
+                    || tmpColumns[FragmentBinaryWriter.ID_OFFSETS].capacity() != (tmpRecordCount + 1) * 4
+                    || tmpColumns[FragmentBinaryWriter.SETTINGS].capacity() != tmpRecordCount * 4
+                    || tmpColumns[FragmentBinaryWriter.STATUS].capacity() != tmpRecordCount
+                    || tmpColumns[FragmentBinaryWriter.FRAGMENT_OFFSETS].capacity() != (tmpRecordCount + 1) * 4
+                    || tmpColumns[FragmentBinaryWriter.ATOM_OFFSETS].capacity() != (tmpFragmentCount + 1) * 4
+                    || tmpColumns[FragmentBinaryWriter.ATOM_INDICES].capacity() != tmpAtomCount * 4
+                    || tmpColumns[FragmentBinaryWriter.FRAGMENT_IDS].capacity() != (tmpHasDictionary
+                    ? tmpFragmentCount * 4 : 0)
+                    || tmpColumns[FragmentBinaryWriter.DICTIONARY_OFFSETS].capacity() != (tmpDictionarySize + 1L) * 4
+                    || tmpColumns[FragmentBinaryWriter.SETTINGS_TABLE].capacity() != tmpSettingsCount * 12L) {
+                throw new IOException("Column sizes of file " + aFile + " do not match its record counts");
+            }
+            this.recordCount = (int) tmpRecordCount;
+            this.dictionarySize = tmpHasDictionary ? tmpDictionarySize : -1;
+            this.idOffsets = tmpColumns[FragmentBinaryWriter.ID_OFFSETS].asIntBuffer();
+            this.idBytes = tmpColumns[FragmentBinaryWriter.ID_BYTES];
+            this.settingsIndices = tmpColumns[FragmentBinaryWriter.SETTINGS].asIntBuffer();
+            this.statuses = tmpColumns[FragmentBinaryWriter.STATUS];
+            this.fragmentOffsets = tmpColumns[FragmentBinaryWriter.FRAGMENT_OFFSETS].asIntBuffer();
+            this.atomOffsets = tmpColumns[FragmentBinaryWriter.ATOM_OFFSETS].asIntBuffer();
+            this.atomIndices = tmpColumns[FragmentBinaryWriter.ATOM_INDICES].asIntBuffer();
+            this.fragmentIds = tmpColumns[FragmentBinaryWriter.FRAGMENT_IDS].asIntBuffer();
+            this.dictionaryOffsets = tmpColumns[FragmentBinaryWriter.DICTIONARY_OFFSETS].asIntBuffer();
+            this.dictionaryBytes = tmpColumns[FragmentBinaryWriter.DICTIONARY_BYTES];
+            this.settingsTable = new FragmentationSettings[tmpSettingsCount];
+            ByteBuffer tmpSettingsTable = tmpColumns[FragmentBinaryWriter.SETTINGS_TABLE];
+            for (int i = 0; i < tmpSettingsCount; i++) {
+                this.settingsTable[i] = new FragmentationSettings(tmpSettingsTable.getInt(i * 12),
+                        tmpSettingsTable.getInt(i * 12 + 4), tmpSettingsTable.getInt(i * 12 + 8) != 0);
+            }
+        } catch (IOException | RuntimeException anException) {
+            this.channel.close();
+            throw anException;
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the number of records.
+     * @return Record count.
+     */
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Returns the ID of a record.
+     * @param aRecord Index of the record.
+     * @return ID String.
+     */
+    public String getId(int aRecord) {
+        int tmpStart = this.idOffsets.get(aRecord);
+        int tmpLength = this.idOffsets.get(aRecord + 1) - tmpStart;
+        byte[] tmpBytes = new byte[tmpLength];
+        this.idBytes.get(tmpStart, tmpBytes);
+        return new String(tmpBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the settings a record was fragmented with.
+     * @param aRecord Index of the record.
+     * @return FragmentationSettings object.
+     */
+    public FragmentationSettings getSettings(int aRecord) {
+        return this.settingsTable[this.settingsIndices.get(aRecord)];
+    }
+
+    /**
+     * Returns the status of a record.
+     * @param aRecord Index of the record.
+     * @return One of the FragmentBinaryWriter.STATUS constants.
+     */
+    public byte getStatus(int aRecord) {
+        return this.statuses.get(aRecord);
+    }
+
+    /**
+     * Returns whether a record was fragmented successfully.
+     * @param aRecord Index of the record.
+     * @return True if the status is FragmentBinaryWriter.STATUS_SUCCESSFUL.
+     */
+    public boolean isSuccessful(int aRecord) {
+        return this.statuses.get(aRecord) == FragmentBinaryWriter.STATUS_SUCCESSFUL;
+    }
+
+    /**
+     * Returns the number of fragments of a record.
+     * @param aRecord Index of the record.
+     * @return Fragment count, 0 for records that were not fragmented successfully.
+     */
+    public int getFragmentCount(int aRecord) {
+        return this.fragmentOffsets.get(aRecord + 1) - this.fragmentOffsets.get(aRecord);
+    }
+
+    /**
+     * Returns the number of atoms of a fragment.
+     * @param aRecord Index of the record.
+     * @param aFragment Index of the fragment in the record.
+     * @return Atom count of the fragment.
+     */
+    public int getFragmentSize(int aRecord, int aFragment) {
+        int tmpFragment = this.getFragmentPosition(aRecord, aFragment);
+        return this.atomOffsets.get(tmpFragment + 1) - this.atomOffsets.get(tmpFragment);
+    }
+
+    /**
+     * Returns an atom index of a fragment.
+     * @param aRecord Index of the record.
+     * @param aFragment Index of the fragment in the record.
+     * @param aPosition Position of the atom in the fragment.
+     * @return Index of the atom in the molecule of the record.
+     * @throws IndexOutOfBoundsException if aPosition is not smaller than the fragment size.
+     */
+    public int getAtomIndex(int aRecord, int aFragment, int aPosition) {
+        int tmpFragment = this.getFragmentPosition(aRecord, aFragment);
+        int tmpStart = this.atomOffsets.get(tmpFragment);
+        if (aPosition < 0 || tmpStart + aPosition >= this.atomOffsets.get(tmpFragment + 1)) {
+            throw new IndexOutOfBoundsException("Atom position " + aPosition + " out of bounds for fragment "
+                    + aFragment + " of record " + aRecord);
+        }
+        return this.atomIndices.get(tmpStart + aPosition);
+    }
+
+    /**
+     * Returns the atom indices of a fragment.
+     * @param aRecord Index of the record.
+     * @param aFragment Index of the fragment in the record.
+     * @return New array with the atom indices of the fragment.
+     */
+    public int[] getFragmentAtomIndices(int aRecord, int aFragment) {
+        int tmpFragment = this.getFragmentPosition(aRecord, aFragment);
+        int tmpStart = this.atomOffsets.get(tmpFragment);
+        int[] tmpAtomIndices = new int[this.atomOffsets.get(tmpFragment + 1) - tmpStart];
+        this.atomIndices.get(tmpStart, tmpAtomIndices);
+        return tmpAtomIndices;
+    }
+
+    /**
+     * Returns the fragments of a record as a partition.
+     * @param aRecord Index of the record.
+     * @return New FragmentPartition object, without fragments for records that were not fragmented successfully.
+     */
+    public FragmentPartition getPartition(int aRecord) {
+        int tmpFirstFragment = this.fragmentOffsets.get(aRecord);
+        int[] tmpOffsets = new int[this.getFragmentCount(aRecord) + 1];
+        int tmpStart = this.atomOffsets.get(tmpFirstFragment);
+        for (int i = 1; i < tmpOffsets.length; i++) {
+            tmpOffsets[i] = this.atomOffsets.get(tmpFirstFragment + i) - tmpStart;
+        }
+        int[] tmpAtomIndices = new int[tmpOffsets[tmpOffsets.length - 1]];
+        this.atomIndices.get(tmpStart, tmpAtomIndices);
+        return new FragmentPartition(tmpOffsets, tmpAtomIndices);
+    }
+
+    /**
+     * Returns whether the file contains a fragment dictionary.
+     * @return True if getFragmentId and getFragmentSmiles can be used.
+     */
+    public boolean hasFragmentDictionary() {
+        return this.dictionarySize >= 0;
+    }
+
+    /**
+     * Returns the number of entries of the fragment dictionary.
+     * @return Number of distinct fragments, or -1 if the file has no dictionary.
+     */
+    public int getDictionarySize() {
+        return this.dictionarySize;
+    }
+
+    /**
+     * Returns the dictionary ID of a fragment.
+     * @param aRecord Index of the record.
+     * @param aFragment Index of the fragment in the record.
+     * @return ID of the canonical SMILES code of the fragment in the dictionary or -1 if it is unknown.
+     * @throws IllegalStateException if the file has no dictionary.
+     */
+    public int getFragmentId(int aRecord, int aFragment) {
+        if (!this.hasFragmentDictionary()) {
+            throw new IllegalStateException("Binary fragment file has no fragment dictionary");
+        }
+        return this.fragmentIds.get(this.getFragmentPosition(aRecord, aFragment));
+    }
+
+    /**
+     * Returns the canonical SMILES code of a dictionary entry.
+     * @param aFragmentId ID of the entry.
+     * @return Canonical (SmiFlavor.Unique) SMILES code.
+     * @throws IllegalStateException if the file has no dictionary.
+     */
+    public String getFragmentSmiles(int aFragmentId) {
+        if (!this.hasFragmentDictionary()) {
+            throw new IllegalStateException("Binary fragment file has no fragment dictionary");
+        }
+        int tmpStart = this.dictionaryOffsets.get(aFragmentId);
+        byte[] tmpBytes = new byte[this.dictionaryOffsets.get(aFragmentId + 1) - tmpStart];
+        this.dictionaryBytes.get(tmpStart, tmpBytes);
+        return new String(tmpBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a read-only view of the mapped atom indices of all fragments of all records, e.g. for bulk processing.
+     * Fragment f (counted over all records) occupies the positions from getAtomOffsets().get(f) to
+     * getAtomOffsets().get(f + 1).
+     * @return IntBuffer object sharing the mapped bytes.
+     */
+    public IntBuffer getAtomIndices() {
+        return this.atomIndices.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the mapped atom offsets of all fragments of all records.
+     * @return IntBuffer object sharing the mapped bytes.
+     */
+    public IntBuffer getAtomOffsets() {
+        return this.atomOffsets.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the mapped fragment offsets of all records; the fragments of record r are the
+     * fragments from getFragmentOffsets().get(r) to getFragmentOffsets().get(r + 1).
+     * @return IntBuffer object sharing the mapped bytes.
+     */
+    public IntBuffer getFragmentOffsets() {
+        return this.fragmentOffsets.asReadOnlyBuffer();
+    }
+
+    /**
+     * Closes the file. Views returned before stay valid.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Returns the position of a fragment among the fragments of all records.
+     * @param aRecord Index of the record.
+     * @param aFragment Index of the fragment in the record.
+     * @return Position of the fragment in atomOffsets and fragmentIds.
+     * @throws IndexOutOfBoundsException if aFragment is not smaller than the fragment count of the record.
+     */
+    private int getFragmentPosition(int aRecord, int aFragment) {
+        int tmpFirstFragment = this.fragmentOffsets.get(aRecord);
+        if (aFragment < 0 || tmpFirstFragment + aFragment >= this.fragmentOffsets.get(aRecord + 1)) {
+            throw new IndexOutOfBoundsException("Fragment " + aFragment + " out of bounds for record " + aRecord);
+        }
+        return tmpFirstFragment + aFragment;
+    }
+    //</editor-fold>
+}
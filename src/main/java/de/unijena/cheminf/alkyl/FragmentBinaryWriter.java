@@ -0,0 +1,539 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class FragmentBinaryWriter writes fragmentation results to a compact binary file that downstream jobs can read
+ * without parsing SMILES codes, e.g. with a FragmentBinaryReader. The file is columnar: all values of one kind are
+ * stored one after the other, so that each column can be memory-mapped as a plain little-endian array.
+ * <p>
+ * Per record (molecule) the file holds its ID, the settings it was fragmented with, a status and its fragments. The
+ * fragments are packed in compressed sparse row form: the fragment offsets of the records point into the atom offsets
+ * of the fragments, which point into the concatenated atom indices. Optionally, the canonical SMILES code of each
+ * fragment is interned into a dictionary, and every fragment refers to its dictionary entry by ID, so that equal
+ * fragments of different molecules can be recognised without comparing atoms.
+ * <p>
+ * File layout (all numbers little-endian, all columns starting at a multiple of 8 bytes):
+ * <ul>
+ *     <li>a header of HEADER_SIZE bytes: magic number ("ALKB"), format version, AlkylFragmenter.ALGORITHM_VERSION,
+ *     flags, record, fragment and atom count, dictionary and settings table size, followed by the offset and length
+ *     of each column;</li>
+ *     <li>the columns: ID offsets (int, records + 1), ID bytes (UTF-8), settings (int, index into the settings table),
+ *     status (byte), fragment offsets (int, records + 1), atom offsets (int, fragments + 1), atom indices (int),
+ *     fragment IDs (int per fragment, only with dictionary), dictionary offsets (int, entries + 1), dictionary bytes
+ *     (UTF-8) and the settings table (three ints per entry: minCut, maxCut and 1 if tertiary and quaternary carbons
+ *     are preserved, else 0).</li>
+ * </ul>
+ * While records are written, each column is streamed through a small direct buffer into a temporary file next to the
+ * output file with a FileChannel. close concatenates the columns into the output file by channel transfers and
+ * writes the header last, and it deletes the output file if this fails. If the records cannot be completed, e.g.
+ * because reading the input failed, abort discards them and deletes the output file instead, so an incomplete file is
+ * never mistaken for a valid one. Each column is limited to 2 GB, so
+ * that all offsets fit into an int, which allows about 500 million fragments and atom indices per file. Objects of
+ * this class are not thread-safe; records are written in the order of the calls.
+ */
+public final class FragmentBinaryWriter implements Closeable {
+    //<editor-fold desc="constants">
+    /**
+     * First four bytes of the file ("ALKB").
+     */
+    static final int MAGIC = 0x414C4B42;
+    /**
+     * Version of the file format.
+     */
+    static final int FORMAT_VERSION = 1;
+    /**
+     * Size of the header in bytes.
+     */
+    static final int HEADER_SIZE = 256;
+    /**
+     * Position of the column directory in the header, which holds an offset and a length (both long) per column.
+     */
+    static final int COLUMN_DIRECTORY_POSITION = 64;
+    /**
+     * Flag set if the file contains a fragment dictionary.
+     */
+    static final int FLAG_DICTIONARY = 1;
+    /**
+     * Status of a successfully fragmented record.
+     */
+    public static final byte STATUS_SUCCESSFUL = 0;
+    /**
+     * Status of a record whose fragmentation failed.
+     */
+    public static final byte STATUS_FAILED = 1;
+    /**
+     * Status of a record whose fragmentation exceeded the time limit.
+     */
+    public static final byte STATUS_TIMED_OUT = 2;
+    /**
+     * Status of a record whose molecule could not be read.
+     */
+    public static final byte STATUS_INVALID_INPUT = 3;
+    /**
+     * Column of the offsets of the IDs in the ID bytes.
+     */
+    static final int ID_OFFSETS = 0;
+    /**
+     * Column of the UTF-8 encoded IDs.
+     */
+    static final int ID_BYTES = 1;
+    /**
+     * Column of the settings table indices.
+     */
+    static final int SETTINGS = 2;
+    /**
+     * Column of the statuses.
+     */
+    static final int STATUS = 3;
+    /**
+     * Column of the offsets of the records in the atom offsets.
+     */
+    static final int FRAGMENT_OFFSETS = 4;
+    /**
+     * Column of the offsets of the fragments in the atom indices.
+     */
+    static final int ATOM_OFFSETS = 5;
+    /**
+     * Column of the atom indices of all fragments.
+     */
+    static final int ATOM_INDICES = 6;
+    /**
+     * Column of the dictionary IDs of the fragments.
+     */
+    static final int FRAGMENT_IDS = 7;
+    /**
+     * Column of the offsets of the dictionary entries in the dictionary bytes.
+     */
+    static final int DICTIONARY_OFFSETS = 8;
+    /**
+     * Column of the UTF-8 encoded canonical SMILES codes of the dictionary entries.
+     */
+    static final int DICTIONARY_BYTES = 9;
+    /**
+     * Column of the settings table.
+     */
+    static final int SETTINGS_TABLE = 10;
+    /**
+     * Number of columns.
+     */
+    static final int COLUMN_COUNT = 11;
+    /**
+     * Size of the direct buffer of each column in bytes.
+     */
+    private static final int COLUMN_BUFFER_SIZE = 1 << 16;
+    /**
+     * Maximum size of a column in bytes.
+     */
+    private static final long MAX_COLUMN_SIZE = Integer.MAX_VALUE;
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Path of the output file.
+     */
+    private final Path file;
+    /**
+     * Whether canonical SMILES codes of the fragments are interned into a dictionary.
+     */
+    private final boolean isInterningFragments;
+    /**
+     * Temporary file of each column.
+     */
+    private final Path[] columnFiles;
+    /**
+     * Channel of the temporary file of each column.
+     */
+    private final FileChannel[] columnChannels;
+    /**
+     * Direct buffer of each column.
+     */
+    private final ByteBuffer[] columnBuffers;
+    /**
+     * Index in the settings table by settings.
+     */
+    private final Map<FragmentationSettings, Integer> settingsIndices;
+    /**
+     * Settings table in order of first use.
+     */
+    private final List<FragmentationSettings> settingsTable;
+    /**
+     * Dictionary ID by canonical SMILES code.
+     */
+    private final Map<String, Integer> fragmentIds;
+    /**
+     * Canonical SMILES codes of the dictionary in order of their IDs.
+     */
+    private final List<String> dictionary;
+    /**
+     * Number of records written.
+     */
+    private long recordCount;
+    /**
+     * Number of fragments written.
+     */
+    private long fragmentCount;
+    /**
+     * Number of atom indices written.
+     */
+    private long atomCount;
+    /**
+     * Number of ID bytes written.
+     */
+    private long idByteCount;
+    /**
+     * Whether close has been called.
+     */
+    private boolean isClosed;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new writer. The output file is only created by close.
+     * @param aFile Path of the output file; an existing file is overwritten.
+     * @param anIsInterningFragments Whether to intern the canonical SMILES codes of the fragments into a dictionary.
+     * @throws IOException if the temporary column files cannot be created.
+     */
+    public FragmentBinaryWriter(Path aFile, boolean anIsInterningFragments) throws IOException {
+        this.file = aFile;
+        this.isInterningFragments = anIsInterningFragments;
+        this.columnFiles = new Path[COLUMN_COUNT];
+        this.columnChannels = new FileChannel[COLUMN_COUNT];
+        this.columnBuffers = new ByteBuffer[COLUMN_COUNT];
+        this.settingsIndices = new HashMap<>();
+        this.settingsTable = new ArrayList<>();
+        this.fragmentIds = new HashMap<>();
+        this.dictionary = new ArrayList<>();
+        try {
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                this.columnFiles[i] = aFile.resolveSibling(aFile.getFileName() + ".column" + i);
+                this.columnChannels[i] = FileChannel.open(this.columnFiles[i], StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.columnBuffers[i] = ByteBuffer.allocateDirect(COLUMN_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException anException) {
+            this.deleteColumnFiles();
+            throw anException;
+        }
+        this.column(ID_OFFSETS, 4).putInt(0);
+        this.column(FRAGMENT_OFFSETS, 4).putInt(0);
+        this.column(ATOM_OFFSETS, 4).putInt(0);
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Writes a fragmentation result as the next record. Its status is STATUS_SUCCESSFUL, STATUS_TIMED_OUT or
+     * STATUS_FAILED. Fragments whose canonical SMILES code cannot be created get the fragment ID -1.
+     * @param anId ID of the record, e.g. the name of the molecule.
+     * @param aResult FragmentationResult object.
+     * @throws IOException if a column cannot be written.
+     */
+    public void write(String anId, FragmentationResult aResult) throws IOException {
+        if (!aResult.isSuccessful()) {
+            this.write(anId, aResult.getSettings(), aResult.isTimedOut() ? STATUS_TIMED_OUT : STATUS_FAILED, null,
+                    null);
+            return;
+        }
+        String[] tmpFragmentSmiles = this.isInterningFragments
+                ? getCanonicalSmiles(aResult.getIAtomContainer()) : null;
+        this.write(anId, aResult.getSettings(), STATUS_SUCCESSFUL, aResult.getPartition(), tmpFragmentSmiles);
+    }
+
+    /**
+     * Writes a partition as the next, successful record. Fragment IDs are -1 if the dictionary is used, because the
+     * partition does not know the fragment structures.
+     * @param anId ID of the record, e.g. the name of the molecule.
+     * @param aSettings Settings the molecule was fragmented with.
+     * @param aPartition FragmentPartition object.
+     * @throws IOException if a column cannot be written.
+     */
+    public void write(String anId, FragmentationSettings aSettings, FragmentPartition aPartition) throws IOException {
+        this.write(anId, aSettings, STATUS_SUCCESSFUL, aPartition, null);
+    }
+
+    /**
+     * Writes a record without fragments, e.g. for a molecule that could not be read.
+     * @param anId ID of the record.
+     * @param aSettings Settings the molecule was to be fragmented with.
+     * @param aStatus STATUS_FAILED, STATUS_TIMED_OUT or STATUS_INVALID_INPUT.
+     * @throws IOException if a column cannot be written.
+     * @throws IllegalArgumentException if aStatus is STATUS_SUCCESSFUL or unknown.
+     */
+    public void writeFailure(String anId, FragmentationSettings aSettings, byte aStatus) throws IOException {
+        if (aStatus < STATUS_FAILED || aStatus > STATUS_INVALID_INPUT) {
+            throw new IllegalArgumentException("Invalid status of a failed record: " + aStatus);
+        }
+        this.write(anId, aSettings, aStatus, null, null);
+    }
+
+    /**
+     * Returns the number of records written so far.
+     * @return Record count.
+     */
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Discards all records written so far: deletes the temporary column files and an existing output file without
+     * writing a header. It is to be called instead of close when not all records could be written, so that no
+     * incomplete file is left behind. Calling close afterwards has no effect.
+     * @throws IOException if a file cannot be closed or deleted.
+     */
+    public void abort() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        try {
+            this.deleteColumnFiles();
+        } finally {
+            Files.deleteIfExists(this.file);
+        }
+    }
+
+    /**
+     * Writes the dictionary and the settings table, concatenates all columns into the output file, writes the header
+     * and deletes the temporary column files. If this fails, the output file is deleted. Nothing happens if the writer
+     * has already been closed or aborted.
+     * @throws IOException if the output file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        boolean tmpIsComplete = false;
+        try {
+            long tmpDictionaryByteCount = 0;
+            this.column(DICTIONARY_OFFSETS, 4).putInt(0);
+            for (String tmpSmiles : this.dictionary) {
+                byte[] tmpBytes = tmpSmiles.getBytes(StandardCharsets.UTF_8);
+                tmpDictionaryByteCount += tmpBytes.length;
+                if (tmpDictionaryByteCount > MAX_COLUMN_SIZE) {
+                    throw new IOException("Fragment dictionary of binary fragment file " + this.file
+                            + " exceeds the maximum column size of 2 GB");
+                }
+                this.putBytes(DICTIONARY_BYTES, tmpBytes);
+                this.column(DICTIONARY_OFFSETS, 4).putInt((int) tmpDictionaryByteCount);
+            }
+            for (FragmentationSettings tmpSettings : this.settingsTable) {
+                this.column(SETTINGS_TABLE, 12).putInt(tmpSettings.getMinCut()).putInt(tmpSettings.getMaxCut())
+                        .putInt(tmpSettings.isPreservingTertiaryQuaternaryCarbons() ? 1 : 0);
+            }
+            ByteBuffer tmpHeader = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            tmpHeader.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, AlkylFragmenter.ALGORITHM_VERSION)
+                    .putInt(12, this.isInterningFragments ? FLAG_DICTIONARY : 0).putLong(16, this.recordCount)
+                    .putLong(24, this.fragmentCount).putLong(32, this.atomCount).putInt(40, this.dictionary.size())
+                    .putInt(44, this.settingsTable.size());
+            try (FileChannel tmpChannel = FileChannel.open(this.file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long tmpPosition = HEADER_SIZE;
+                for (int i = 0; i < COLUMN_COUNT; i++) {
+                    this.flush(i);
+                    long tmpLength = this.columnChannels[i].size();
+                    tmpPosition = (tmpPosition + 7) & ~7L;
+                    for (long tmpTransferred = 0; tmpTransferred < tmpLength; ) {
+                        tmpTransferred += this.columnChannels[i].transferTo(tmpTransferred,
+                                tmpLength - tmpTransferred, tmpChannel.position(tmpPosition + tmpTransferred));
+                    }
+                    tmpHeader.putLong(COLUMN_DIRECTORY_POSITION + i * 16, tmpPosition);
+                    tmpHeader.putLong(COLUMN_DIRECTORY_POSITION + i * 16 + 8, tmpLength);
+                    tmpPosition += tmpLength;
+                }
+                //the header is written last, so that a file whose writing was interrupted has no valid magic number
+                tmpHeader.clear();
+                while (tmpHeader.hasRemaining()) {
+                    tmpChannel.write(tmpHeader, tmpHeader.position());
+                }
+                tmpChannel.force(true);
+            }
+            tmpIsComplete = true;
+        } finally {
+            try {
+                this.deleteColumnFiles();
+            } finally {
+                if (!tmpIsComplete) {
+                    Files.deleteIfExists(this.file);
+                }
+            }
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Writes the next record.
+     * @param anId ID of the record.
+     * @param aSettings Settings of the fragmentation.
+     * @param aStatus Status of the record.
+     * @param aPartition Fragments of the record or null if there are none.
+     * @param aFragmentSmiles Canonical SMILES codes of the fragments (null entries for unconvertible fragments) or
+     *                        null if not known.
+     * @throws IOException if a column cannot be written or the writer is closed or aborted.
+     */
+    void write(String anId, FragmentationSettings aSettings, byte aStatus, FragmentPartition aPartition,
+               String[] aFragmentSmiles) throws IOException {
+        if (this.isClosed) {
+            throw new IOException("Binary fragment file " + this.file + " is closed or aborted");
+        }
+        byte[] tmpIdBytes = anId.getBytes(StandardCharsets.UTF_8);
+        int tmpFragmentCount = aPartition == null ? 0 : aPartition.getFragmentCount();
+        int tmpAtomCount = aPartition == null ? 0 : aPartition.getAtomIndices().length;
+        //4 bytes per offset, including the leading 0 of each offset column
+        if (this.idByteCount + tmpIdBytes.length > MAX_COLUMN_SIZE || (this.recordCount + 2) * 4 > MAX_COLUMN_SIZE
+                || (this.fragmentCount + tmpFragmentCount + 1) * 4 > MAX_COLUMN_SIZE
+                || (this.atomCount + tmpAtomCount) * 4 > MAX_COLUMN_SIZE) {
+            throw new IOException("Binary fragment file " + this.file + " exceeds the maximum column size of 2 GB");
+        }
+        this.putBytes(ID_BYTES, tmpIdBytes);
+        this.idByteCount += tmpIdBytes.length;
+        this.column(ID_OFFSETS, 4).putInt((int) this.idByteCount);
+        Integer tmpSettingsIndex = this.settingsIndices.get(aSettings);
+        if (tmpSettingsIndex == null) {
+            tmpSettingsIndex = this.settingsTable.size();
+            this.settingsIndices.put(aSettings, tmpSettingsIndex);
+            this.settingsTable.add(aSettings);
+        }
+        this.column(SETTINGS, 4).putInt(tmpSettingsIndex);
+        this.column(STATUS, 1).put(aStatus);
+        if (aPartition != null) {
+            int[] tmpOffsets = aPartition.getOffsets();
+            int[] tmpAtomIndices = aPartition.getAtomIndices();
+            for (int i = 1; i < tmpOffsets.length; i++) {
+                this.column(ATOM_OFFSETS, 4).putInt((int) this.atomCount + tmpOffsets[i]);
+                if (this.isInterningFragments) {
+                    String tmpSmiles = aFragmentSmiles == null ? null : aFragmentSmiles[i - 1];
+                    this.column(FRAGMENT_IDS, 4).putInt(tmpSmiles == null ? -1 : this.fragmentIds.computeIfAbsent(
+                            tmpSmiles, aSmiles -> {
+                                this.dictionary.add(aSmiles);
+                                return this.dictionary.size() - 1;
+                            }));
+                }
+            }
+            for (int tmpAtomIndex : tmpAtomIndices) {
+                this.column(ATOM_INDICES, 4).putInt(tmpAtomIndex);
+            }
+            this.fragmentCount += tmpFragmentCount;
+            this.atomCount += tmpAtomCount;
+        }
+        this.column(FRAGMENT_OFFSETS, 4).putInt((int) this.fragmentCount);
+        this.recordCount++;
+    }
+
+    /**
+     * Creates the canonical SMILES codes of fragments for the dictionary.
+     * @param aFragments IAtomContainer objects of the fragments.
+     * @return Canonical SMILES code of each fragment or null for fragments that cannot be converted.
+     */
+    static String[] getCanonicalSmiles(List<IAtomContainer> aFragments) {
+        SmilesGenerator tmpSmilesGenerator = new SmilesGenerator(SmiFlavor.Unique);
+        String[] tmpFragmentSmiles = new String[aFragments.size()];
+        for (int i = 0; i < tmpFragmentSmiles.length; i++) {
+            try {
+                tmpFragmentSmiles[i] = tmpSmilesGenerator.create(aFragments.get(i));
+            } catch (CDKException anException) {
+                tmpFragmentSmiles[i] = null;
+            }
+        }
+        return tmpFragmentSmiles;
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Returns the buffer of a column with room for the given number of bytes, writing its content to the temporary
+     * file first if necessary.
+     * @param aColumn Index of the column.
+     * @param aByteCount Number of bytes to be put into the buffer.
+     * @return Buffer of the column.
+     * @throws IOException if the temporary file cannot be written.
+     */
+    private ByteBuffer column(int aColumn, int aByteCount) throws IOException {
+        if (this.columnBuffers[aColumn].remaining() < aByteCount) {
+            this.flush(aColumn);
+        }
+        return this.columnBuffers[aColumn];
+    }
+
+    /**
+     * Appends bytes of any length to a column.
+     * @param aColumn Index of the column.
+     * @param aBytes Bytes to append.
+     * @throws IOException if the temporary file cannot be written.
+     */
+    private void putBytes(int aColumn, byte[] aBytes) throws IOException {
+        for (int tmpStart = 0; tmpStart < aBytes.length; ) {
+            ByteBuffer tmpBuffer = this.column(aColumn, 1);
+            int tmpLength = Math.min(tmpBuffer.remaining(), aBytes.length - tmpStart);
+            tmpBuffer.put(aBytes, tmpStart, tmpLength);
+            tmpStart += tmpLength;
+        }
+    }
+
+    /**
+     * Writes the content of the buffer of a column to its temporary file.
+     * @param aColumn Index of the column.
+     * @throws IOException if the temporary file cannot be written.
+     */
+    private void flush(int aColumn) throws IOException {
+        ByteBuffer tmpBuffer = this.columnBuffers[aColumn];
+        tmpBuffer.flip();
+        while (tmpBuffer.hasRemaining()) {
+            this.columnChannels[aColumn].write(tmpBuffer);
+        }
+        tmpBuffer.clear();
+    }
+
+    /**
+     * Closes and deletes the temporary column files.
+     * @throws IOException if a file cannot be closed or deleted.
+     */
+    private void deleteColumnFiles() throws IOException {
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            if (this.columnChannels[i] != null) {
+                this.columnChannels[i].close();
+            }
+            if (this.columnFiles[i] != null) {
+                Files.deleteIfExists(this.columnFiles[i]);
+            }
+        }
+    }
+    //</editor-fold>
+}
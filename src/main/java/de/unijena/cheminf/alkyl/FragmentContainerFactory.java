@@ -0,0 +1,284 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.config.AtomTypeFactory;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.AtomContainer;
+import org.openscience.cdk.tools.CDKHydrogenAdder;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.AtomTypeManipulator;
+import java.util.Arrays;
+
+/**
+ * The class FragmentContainerFactory converts fragments given as lists of atom indices into IAtomContainer objects
+ * saturated with hydrogen atoms. On construction, it visits every bond of the molecule once and assigns it to the
+ * fragments containing both of its atoms, using a compressed array of the fragment ids of every atom (an atom may
+ * belong to more than one fragment after makeCorrections). At the same time, the bond orders of every atom inside each
+ * fragment are counted. Each fragment can then be created separately in time linear in its size, either all at once
+ * (see FragmentationProcess) or on demand (see LazyFragment).
+ * <p>
+ * Fragments made of neutral, non-radical carbon atoms with single, double and triple bonds are typed and saturated
+ * directly from the bond order counts (see configureCarbons); only fragments with other atoms or with unset or
+ * aromatic bonds go through the CDK atom type perception. The fragments are
+ * silent containers, because they share their atoms with the molecule and a listening container would be notified of
+ * every change of these atoms for as long as the atoms live. Creating a fragment sets the atom types and implicit
+ * hydrogen counts of its atoms in the molecule, so objects of this class are not thread-safe.
+ */
+class FragmentContainerFactory {
+    //<editor-fold desc="constants">
+    /**
+     * Atom type list used by the CDK atom type perception. The hydrocarbon fast path configures carbon atoms with the
+     * types of this list, so that they are indistinguishable from perceived ones.
+     */
+    private static final String ATOM_TYPE_LIST = "org/openscience/cdk/dict/data/cdk-atom-types.owl";
+    //</editor-fold>
+    //<editor-fold desc="fragment data">
+    /**
+     * The fragmented molecule.
+     */
+    private final IAtomContainer molecule;
+    /**
+     * Atom indices of each fragment.
+     */
+    private final FragmentPartition partition;
+    /**
+     * The fragment ids of atom i are stored in fragmentIds from fragmentOffsets[i] to fragmentOffsets[i+1] - 1.
+     */
+    private final int[] fragmentOffsets;
+    /**
+     * Concatenated fragment ids of all atoms.
+     */
+    private final int[] fragmentIds;
+    /**
+     * Bond order sum of each entry of fragmentIds, i.e. of an atom inside one of its fragments.
+     */
+    private final int[] orderSums;
+    /**
+     * Number of double bonds of each entry of fragmentIds.
+     */
+    private final int[] doubleBondCounts;
+    /**
+     * Number of triple bonds of each entry of fragmentIds.
+     */
+    private final int[] tripleBondCounts;
+    /**
+     * The bonds of fragment i are stored in bondIndices from bondOffsets[i] to bondOffsets[i+1] - 1.
+     */
+    private final int[] bondOffsets;
+    /**
+     * Concatenated bond indices of all fragments, in the order of the bonds in the molecule.
+     */
+    private final int[] bondIndices;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Assigns the bonds of the molecule to the given fragments.
+     * @param aMolecule The fragmented molecule.
+     * @param aPartition Atom indices of each fragment.
+     */
+    FragmentContainerFactory(IAtomContainer aMolecule, FragmentPartition aPartition) {
+        this.molecule = aMolecule;
+        this.partition = aPartition;
+        int tmpAtomCount = aMolecule.getAtomCount();
+        int tmpFragmentCount = aPartition.getFragmentCount();
+        this.fragmentOffsets = new int[tmpAtomCount + 1];
+        int[] tmpLastFragment = new int[tmpAtomCount];
+        Arrays.fill(tmpLastFragment, -1);
+        for (int tmpFragment = 0; tmpFragment < tmpFragmentCount; tmpFragment++) {
+            for (int i = 0; i < aPartition.getFragmentSize(tmpFragment); i++) {
+                int tmpAtomIndex = aPartition.getAtomIndex(tmpFragment, i);
+                if (tmpLastFragment[tmpAtomIndex] != tmpFragment) {
+                    tmpLastFragment[tmpAtomIndex] = tmpFragment;
+                    this.fragmentOffsets[tmpAtomIndex + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < tmpAtomCount; i++) {
+            this.fragmentOffsets[i + 1] += this.fragmentOffsets[i];
+        }
+        this.fragmentIds = new int[this.fragmentOffsets[tmpAtomCount]];
+        int[] tmpFillPositions = Arrays.copyOf(this.fragmentOffsets, tmpAtomCount);
+        Arrays.fill(tmpLastFragment, -1);
+        for (int tmpFragment = 0; tmpFragment < tmpFragmentCount; tmpFragment++) {
+            for (int i = 0; i < aPartition.getFragmentSize(tmpFragment); i++) {
+                int tmpAtomIndex = aPartition.getAtomIndex(tmpFragment, i);
+                if (tmpLastFragment[tmpAtomIndex] != tmpFragment) {
+                    tmpLastFragment[tmpAtomIndex] = tmpFragment;
+                    this.fragmentIds[tmpFillPositions[tmpAtomIndex]++] = tmpFragment;
+                }
+            }
+        }
+        this.orderSums = new int[this.fragmentIds.length];
+        this.doubleBondCounts = new int[this.fragmentIds.length];
+        this.tripleBondCounts = new int[this.fragmentIds.length];
+        this.bondOffsets = new int[tmpFragmentCount + 1];
+        //first pass: count the bonds of each fragment and the bond orders of each atom in each fragment
+        for (IBond tmpBond : aMolecule.bonds()) {
+            int tmpAtom0 = tmpBond.getAtom(0).getIndex();
+            int tmpAtom1 = tmpBond.getAtom(1).getIndex();
+            for (int i = this.fragmentOffsets[tmpAtom0]; i < this.fragmentOffsets[tmpAtom0 + 1]; i++) {
+                int j = this.findEntry(tmpAtom1, this.fragmentIds[i]);
+                if (j < 0) {
+                    continue;
+                }
+                this.bondOffsets[this.fragmentIds[i] + 1]++;
+                IBond.Order tmpOrder = tmpBond.getOrder();
+                //unset, aromatic and unusual bond orders make the sum invalid, so that the atoms are perceived by CDK
+                int tmpOrderValue = tmpOrder == null || tmpOrder == IBond.Order.UNSET || tmpBond.isAromatic()
+                        || tmpOrder.numeric() > 3 ? 5 : tmpOrder.numeric();
+                this.orderSums[i] += tmpOrderValue;
+                this.orderSums[j] += tmpOrderValue;
+                if (tmpOrderValue == 2) {
+                    this.doubleBondCounts[i]++;
+                    this.doubleBondCounts[j]++;
+                } else if (tmpOrderValue == 3) {
+                    this.tripleBondCounts[i]++;
+                    this.tripleBondCounts[j]++;
+                }
+            }
+        }
+        for (int i = 0; i < tmpFragmentCount; i++) {
+            this.bondOffsets[i + 1] += this.bondOffsets[i];
+        }
+        //second pass: store the bond indices of each fragment
+        this.bondIndices = new int[this.bondOffsets[tmpFragmentCount]];
+        int[] tmpBondFillPositions = Arrays.copyOf(this.bondOffsets, tmpFragmentCount);
+        int tmpBondIndex = 0;
+        for (IBond tmpBond : aMolecule.bonds()) {
+            int tmpAtom0 = tmpBond.getAtom(0).getIndex();
+            int tmpAtom1 = tmpBond.getAtom(1).getIndex();
+            for (int i = this.fragmentOffsets[tmpAtom0]; i < this.fragmentOffsets[tmpAtom0 + 1]; i++) {
+                if (this.findEntry(tmpAtom1, this.fragmentIds[i]) >= 0) {
+                    this.bondIndices[tmpBondFillPositions[this.fragmentIds[i]]++] = tmpBondIndex;
+                }
+            }
+            tmpBondIndex++;
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Returns the number of fragments.
+     * @return Number of fragments.
+     */
+    int getFragmentCount() {
+        return this.partition.getFragmentCount();
+    }
+
+    /**
+     * Creates the IAtomContainer object of a fragment. Its bonds and atoms are those of the molecule, in the order of
+     * the bonds in the molecule and of the atom indices of the fragment. The atom types and implicit hydrogen counts of
+     * the fragment atoms are set according to the fragment.
+     * @param aFragment Index of the fragment.
+     * @return New IAtomContainer object of the fragment.
+     * @throws CDKException Is triggered when saturating the fragment with hydrogen where bonds were split.
+     */
+    IAtomContainer create(int aFragment) throws CDKException {
+        IAtomContainer tmpMoleculeFragment = new AtomContainer();
+        for (int i = this.bondOffsets[aFragment]; i < this.bondOffsets[aFragment + 1]; i++) {
+            tmpMoleculeFragment.addBond(this.molecule.getBond(this.bondIndices[i]));
+        }
+        for (int i = 0; i < this.partition.getFragmentSize(aFragment); i++) {
+            IAtom tmpAtom = this.molecule.getAtom(this.partition.getAtomIndex(aFragment, i));
+            /*
+            The fragments share their atoms with the molecule. Hydrogen counts left by an earlier fragmentation of
+            the same molecule would disturb the atom type perception, so they are cleared first.
+             */
+            tmpAtom.setImplicitHydrogenCount(null);
+            tmpMoleculeFragment.addAtom(tmpAtom);
+        }
+        if (!this.configureCarbons(aFragment)) {
+            AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(tmpMoleculeFragment);
+            CDKHydrogenAdder.getInstance(tmpMoleculeFragment.getBuilder()).addImplicitHydrogens(tmpMoleculeFragment);
+        }
+        return tmpMoleculeFragment;
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Returns the position of a fragment id in the fragment ids of an atom.
+     * @param anAtomIndex Index of the atom.
+     * @param aFragment Fragment id.
+     * @return Position in fragmentIds or -1 if the atom is not part of the fragment.
+     */
+    private int findEntry(int anAtomIndex, int aFragment) {
+        for (int i = this.fragmentOffsets[anAtomIndex]; i < this.fragmentOffsets[anAtomIndex + 1]; i++) {
+            if (this.fragmentIds[i] == aFragment) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hydrocarbon fast path of create. If all atoms of the fragment are neutral carbon atoms without unpaired
+     * electrons, their atom types follow from the numbers of double and triple bonds inside the fragment (C.sp3,
+     * C.sp2, C.allene or C.sp) and their implicit hydrogen counts from the bond order sum. The atoms are then
+     * configured with these types and saturated, which gives the same result as the CDK atom type perception and
+     * hydrogen adder. Nothing is changed if any atom does not fit.
+     * @param aFragment Index of the fragment.
+     * @return True if the fragment has been configured, false if it needs the CDK atom type perception.
+     * @throws CDKException Is triggered when the atom type list cannot be read.
+     */
+    private boolean configureCarbons(int aFragment) throws CDKException {
+        int tmpSize = this.partition.getFragmentSize(aFragment);
+        String[] tmpTypeNames = new String[tmpSize];
+        int[] tmpHydrogenCounts = new int[tmpSize];
+        for (int i = 0; i < tmpSize; i++) {
+            int tmpAtomIndex = this.partition.getAtomIndex(aFragment, i);
+            IAtom tmpAtom = this.molecule.getAtom(tmpAtomIndex);
+            Integer tmpCharge = tmpAtom.getFormalCharge();
+            if (tmpAtom.getAtomicNumber() == null || tmpAtom.getAtomicNumber() != 6
+                    || (tmpCharge != null && tmpCharge != 0)
+                    || this.molecule.getConnectedSingleElectronsCount(tmpAtom) > 0) {
+                return false;
+            }
+            int tmpEntry = this.findEntry(tmpAtomIndex, aFragment);
+            int tmpOrderSum = this.orderSums[tmpEntry];
+            if (tmpOrderSum > 4) {
+                return false;
+            } else if (this.tripleBondCounts[tmpEntry] == 1) {
+                tmpTypeNames[i] = "C.sp";
+            } else if (this.doubleBondCounts[tmpEntry] == 2) {
+                tmpTypeNames[i] = "C.allene";
+            } else if (this.doubleBondCounts[tmpEntry] == 1) {
+                tmpTypeNames[i] = "C.sp2";
+            } else {
+                tmpTypeNames[i] = "C.sp3";
+            }
+            tmpHydrogenCounts[i] = 4 - tmpOrderSum;
+        }
+        AtomTypeFactory tmpFactory = AtomTypeFactory.getInstance(ATOM_TYPE_LIST, this.molecule.getBuilder());
+        for (int i = 0; i < tmpTypeNames.length; i++) {
+            IAtom tmpAtom = this.molecule.getAtom(this.partition.getAtomIndex(aFragment, i));
+            AtomTypeManipulator.configure(tmpAtom, tmpFactory.getAtomType(tmpTypeNames[i]));
+            tmpAtom.setImplicitHydrogenCount(tmpHydrogenCounts[i]);
+        }
+        return true;
+    }
+    //</editor-fold>
+}
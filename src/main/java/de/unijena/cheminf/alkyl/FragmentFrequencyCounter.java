@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe table of the unique fragments of a fragmentation run and how often each of them occurs. Every fragment
+ * added is converted into its canonical SMILES code, which is the key of a ConcurrentHashMap whose entries hold
+ * LongAdder counters, so that any number of worker threads can add results at the same time without contending for
+ * a lock. Only one string and two counters per unique fragment are kept in memory; the results and fragment
+ * IAtomContainer objects themselves can be discarded right after they have been added. BatchFragmenter.count,
+ * SmilesFileFragmenter and SdfFileFragmenter feed a counter directly from their workers.
+ */
+public final class FragmentFrequencyCounter {
+    //<editor-fold desc="private fields">
+    /**
+     * Counters of each unique fragment by canonical SMILES code.
+     */
+    private final ConcurrentHashMap<String, FragmentCount> fragmentCounts;
+    /**
+     * Number of results added.
+     */
+    private final LongAdder moleculeCount;
+    /**
+     * Number of results added that were not successful.
+     */
+    private final LongAdder failedMoleculeCount;
+    /**
+     * Number of fragments added, including repeated ones.
+     */
+    private final LongAdder fragmentCount;
+    /**
+     * Number of fragments that could not be converted into a canonical SMILES code and are therefore not counted.
+     */
+    private final LongAdder unconvertibleFragmentCount;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new empty counter.
+     */
+    public FragmentFrequencyCounter() {
+        this.fragmentCounts = new ConcurrentHashMap<>();
+        this.moleculeCount = new LongAdder();
+        this.failedMoleculeCount = new LongAdder();
+        this.fragmentCount = new LongAdder();
+        this.unconvertibleFragmentCount = new LongAdder();
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Counts the fragments of a result. A fragment occurring several times in the molecule counts as several
+     * occurrences, but as one molecule. Failed results are only counted as failed molecules.
+     * @param aResult FragmentationResult object.
+     */
+    public void add(FragmentationResult aResult) {
+        this.moleculeCount.increment();
+        if (!aResult.isSuccessful()) {
+            this.failedMoleculeCount.increment();
+            return;
+        }
+        SmilesGenerator tmpSmilesGenerator = new SmilesGenerator(SmiFlavor.Unique);
+        Map<String, Integer> tmpMoleculeCounts = new HashMap<>();
+        for (IAtomContainer tmpFragment : aResult.getIAtomContainer()) {
+            this.fragmentCount.increment();
+            try {
+                tmpMoleculeCounts.merge(tmpSmilesGenerator.create(tmpFragment), 1, Integer::sum);
+            } catch (CDKException anException) {
+                this.unconvertibleFragmentCount.increment();
+            }
+        }
+        for (Map.Entry<String, Integer> tmpEntry : tmpMoleculeCounts.entrySet()) {
+            FragmentCount tmpCount = this.fragmentCounts.computeIfAbsent(tmpEntry.getKey(), aKey -> new FragmentCount());
+            tmpCount.occurrences.add(tmpEntry.getValue());
+            tmpCount.molecules.increment();
+        }
+    }
+
+    /**
+     * Returns the number of unique fragments.
+     * @return Number of distinct canonical SMILES codes counted.
+     */
+    public int getUniqueFragmentCount() {
+        return this.fragmentCounts.size();
+    }
+
+    /**
+     * Returns how often a fragment occurred.
+     * @param aCanonicalSmiles Canonical (SmiFlavor.Unique) SMILES code of the fragment.
+     * @return Number of occurrences, 0 for unknown fragments.
+     */
+    public long getOccurrenceCount(String aCanonicalSmiles) {
+        FragmentCount tmpCount = this.fragmentCounts.get(aCanonicalSmiles);
+        return tmpCount == null ? 0 : tmpCount.occurrences.sum();
+    }
+
+    /**
+     * Returns the number of molecules a fragment occurred in.
+     * @param aCanonicalSmiles Canonical (SmiFlavor.Unique) SMILES code of the fragment.
+     * @return Number of molecules, 0 for unknown fragments.
+     */
+    public long getMoleculeCount(String aCanonicalSmiles) {
+        FragmentCount tmpCount = this.fragmentCounts.get(aCanonicalSmiles);
+        return tmpCount == null ? 0 : tmpCount.molecules.sum();
+    }
+
+    /**
+     * Returns the number of results added.
+     * @return Number of molecules, including failed ones.
+     */
+    public long getMoleculeCount() {
+        return this.moleculeCount.sum();
+    }
+
+    /**
+     * Returns the number of results added that were not successful.
+     * @return Number of failed molecules.
+     */
+    public long getFailedMoleculeCount() {
+        return this.failedMoleculeCount.sum();
+    }
+
+    /**
+     * Returns the number of fragments added.
+     * @return Number of fragments, including repeated ones.
+     */
+    public long getFragmentCount() {
+        return this.fragmentCount.sum();
+    }
+
+    /**
+     * Returns the number of fragments that could not be converted into a canonical SMILES code.
+     * @return Number of fragments missing from the table.
+     */
+    public long getUnconvertibleFragmentCount() {
+        return this.unconvertibleFragmentCount.sum();
+    }
+
+    /**
+     * Returns a snapshot of the occurrence counts of all unique fragments, sorted by decreasing count and then by
+     * SMILES code. Results added concurrently may or may not be included.
+     * @return New map from canonical SMILES code to number of occurrences.
+     */
+    public Map<String, Long> getOccurrenceCounts() {
+        List<Map.Entry<String, Long>> tmpEntries = new ArrayList<>(this.fragmentCounts.size());
+        for (Map.Entry<String, FragmentCount> tmpEntry : this.fragmentCounts.entrySet()) {
+            tmpEntries.add(Map.entry(tmpEntry.getKey(), tmpEntry.getValue().occurrences.sum()));
+        }
+        tmpEntries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> tmpCounts = new LinkedHashMap<>(tmpEntries.size() * 2);
+        for (Map.Entry<String, Long> tmpEntry : tmpEntries) {
+            tmpCounts.put(tmpEntry.getKey(), tmpEntry.getValue());
+        }
+        return tmpCounts;
+    }
+
+    /**
+     * Writes the table of unique fragments as tab-separated text with the header "SMILES Occurrences Molecules",
+     * sorted like getOccurrenceCounts.
+     * @param aWriter Writer to write to; it is not closed.
+     * @throws IOException if the table cannot be written.
+     */
+    public void write(Writer aWriter) throws IOException {
+        aWriter.write("SMILES\tOccurrences\tMolecules\n");
+        for (Map.Entry<String, Long> tmpEntry : this.getOccurrenceCounts().entrySet()) {
+            aWriter.write(tmpEntry.getKey() + "\t" + tmpEntry.getValue() + "\t"
+                    + this.getMoleculeCount(tmpEntry.getKey()) + "\n");
+        }
+        aWriter.flush();
+    }
+    //</editor-fold>
+    //<editor-fold desc="FragmentCount">
+    /**
+     * Counters of one unique fragment.
+     */
+    private static final class FragmentCount {
+        /**
+         * Number of occurrences of the fragment.
+         */
+        private final LongAdder occurrences = new LongAdder();
+        /**
+         * Number of molecules the fragment occurs in.
+         */
+        private final LongAdder molecules = new LongAdder();
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable partition of the atoms of a molecule into fragments, given by their atom indices only. The indices of all
+ * fragments are stored one after the other in a single int array; fragment i occupies the positions from offsets[i]
+ * (inclusive) to offsets[i+1] (exclusive). Objects of this class are returned by AlkylFragmenter.partition, which
+ * does not create IAtomContainer objects for the fragments.
+ */
+public final class FragmentPartition {
+    //<editor-fold desc="partition data">
+    /**
+     * Array of length fragment count + 1 with the start position of each fragment in atomIndices.
+     */
+    private final int[] offsets;
+    /**
+     * Concatenated atom indices of all fragments.
+     */
+    private final int[] atomIndices;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new partition from lists of atom indices.
+     * @param aFragmentsIndices List of the atom indices of each fragment.
+     */
+    FragmentPartition(List<List<Integer>> aFragmentsIndices) {
+        this.offsets = new int[aFragmentsIndices.size() + 1];
+        for (int i = 0; i < aFragmentsIndices.size(); i++) {
+            this.offsets[i + 1] = this.offsets[i] + aFragmentsIndices.get(i).size();
+        }
+        this.atomIndices = new int[this.offsets[aFragmentsIndices.size()]];
+        int tmpPosition = 0;
+        for (List<Integer> tmpFragment : aFragmentsIndices) {
+            for (int tmpAtomIndex : tmpFragment) {
+                this.atomIndices[tmpPosition++] = tmpAtomIndex;
+            }
+        }
+    }
+
+    /**
+     * Creates a new partition from its array representation. The arrays are not copied.
+     * @param anOffsets Array of length fragment count + 1 with the start position of each fragment in anAtomIndices.
+     * @param anAtomIndices Concatenated atom indices of all fragments.
+     */
+    FragmentPartition(int[] anOffsets, int[] anAtomIndices) {
+        this.offsets = anOffsets;
+        this.atomIndices = anAtomIndices;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the number of fragments.
+     * @return Number of fragments.
+     */
+    public int getFragmentCount() {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of atoms of a fragment.
+     * @param aFragment Index of the fragment.
+     * @return Number of atoms of the fragment.
+     */
+    public int getFragmentSize(int aFragment) {
+        return this.offsets[aFragment + 1] - this.offsets[aFragment];
+    }
+
+    /**
+     * Returns the index of an atom of a fragment in the fragmented molecule.
+     * @param aFragment Index of the fragment.
+     * @param aPosition Position of the atom in the fragment, must be smaller than getFragmentSize(aFragment).
+     * @return Atom index in the fragmented molecule.
+     * @throws IndexOutOfBoundsException if aPosition is not a position of the fragment.
+     */
+    public int getAtomIndex(int aFragment, int aPosition) {
+        if (aPosition < 0 || aPosition >= this.getFragmentSize(aFragment)) {
+            throw new IndexOutOfBoundsException("Position " + aPosition + " is not part of fragment " + aFragment);
+        }
+        return this.atomIndices[this.offsets[aFragment] + aPosition];
+    }
+
+    /**
+     * Returns the atom indices of a fragment.
+     * @param aFragment Index of the fragment.
+     * @return New int array with the atom indices of the fragment in the fragmented molecule.
+     */
+    public int[] getFragmentAtomIndices(int aFragment) {
+        return Arrays.copyOfRange(this.atomIndices, this.offsets[aFragment], this.offsets[aFragment + 1]);
+    }
+
+    /**
+     * Returns the start positions of the fragments in the array returned by getAtomIndices.
+     * @return New int array of length getFragmentCount() + 1.
+     */
+    public int[] getOffsets() {
+        return this.offsets.clone();
+    }
+
+    /**
+     * Returns the concatenated atom indices of all fragments.
+     * @return New int array with the atom indices of all fragments.
+     */
+    public int[] getAtomIndices() {
+        return this.atomIndices.clone();
+    }
+
+    /**
+     * Returns the atom indices of all fragments as one array per fragment.
+     * @return New two-dimensional int array.
+     */
+    public int[][] toArray() {
+        int[][] tmpArray = new int[this.getFragmentCount()][];
+        for (int i = 0; i < tmpArray.length; i++) {
+            tmpArray[i] = this.getFragmentAtomIndices(i);
+        }
+        return tmpArray;
+    }
+
+    @Override
+    public boolean equals(Object anObject) {
+        if (this == anObject) {
+            return true;
+        }
+        if (!(anObject instanceof FragmentPartition)) {
+            return false;
+        }
+        FragmentPartition tmpPartition = (FragmentPartition) anObject;
+        return Arrays.equals(this.offsets, tmpPartition.offsets)
+                && Arrays.equals(this.atomIndices, tmpPartition.atomIndices);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.offsets) + Arrays.hashCode(this.atomIndices);
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentPartition" + Arrays.deepToString(this.toArray());
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,326 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded least-recently-used cache of fragmentation results, to be set on an AlkylFragmenter (see
+ * AlkylFragmenter.setCache) so that duplicate structures in a data set are fragmented only once. Optionally, the
+ * cache is backed by a FragmentationStore on disk, which is consulted for keys that are not in memory and receives
+ * every newly computed partition, so that later runs can skip known molecules.
+ * <p>
+ * The fragmentation depends on the order of the atoms and bonds, so a cached result may only be reused for a
+ * molecule with the same structure in the same order. The key of an entry is therefore made of the canonical SMILES
+ * code of the molecule, its atom order (the canonical rank of every atom followed by the ranks of the two atoms of
+ * every bond, in the order of the molecule) and the FragmentationSettings. Molecules with the same key are identical
+ * down to their atom indices, so the value is simply the atom partition of the fragments, and a result taken from
+ * the cache always equals the result of an AlkylFragmenter without a cache. The same structure given in another
+ * order is a separate entry. Molecules for which no canonical SMILES code can be created are not cached.
+ * <p>
+ * All methods are thread-safe. Two threads missing the same key at the same time both fragment the molecule, and the
+ * second result replaces the first.
+ */
+public final class FragmentationCache {
+    //<editor-fold desc="private fields">
+    /**
+     * Maximum number of entries.
+     */
+    private final int maximumSize;
+    /**
+     * Cache entries in access order, from the least to the most recently used one. Guarded by the lock of the map.
+     */
+    private final LinkedHashMap<Key, FragmentPartition> entries;
+    /**
+     * Number of lookups that found an entry.
+     */
+    private final LongAdder hitCount;
+    /**
+     * Number of lookups that did not find an entry.
+     */
+    private final LongAdder missCount;
+    /**
+     * Number of entries removed because the cache was full.
+     */
+    private final LongAdder evictionCount;
+    /**
+     * Persistent store behind the in-memory entries or null.
+     */
+    private final FragmentationStore store;
+    /**
+     * Number of lookups that were not found in memory but in the store.
+     */
+    private final LongAdder storeHitCount;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new empty cache.
+     * @param aMaximumSize Maximum number of entries; when it is exceeded, the least recently used entry is removed.
+     * @throws IllegalArgumentException if aMaximumSize is smaller than 1.
+     */
+    public FragmentationCache(int aMaximumSize) {
+        this(aMaximumSize, null);
+    }
+
+    /**
+     * Creates a new empty cache backed by a persistent store. The store is not closed by the cache.
+     * @param aMaximumSize Maximum number of entries in memory; when it is exceeded, the least recently used entry is
+     *                     removed from memory, but not from the store.
+     * @param aStore FragmentationStore object or null for no persistent store.
+     * @throws IllegalArgumentException if aMaximumSize is smaller than 1.
+     */
+    public FragmentationCache(int aMaximumSize, FragmentationStore aStore) {
+        if (aMaximumSize < 1) {
+            throw new IllegalArgumentException("Maximum cache size must be positive: " + aMaximumSize);
+        }
+        this.maximumSize = aMaximumSize;
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+        this.store = aStore;
+        this.storeHitCount = new LongAdder();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FragmentPartition> anEldest) {
+                if (this.size() > FragmentationCache.this.maximumSize) {
+                    FragmentationCache.this.evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the maximum number of entries.
+     * @return Maximum number of entries.
+     */
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * Returns the current number of entries.
+     * @return Number of entries.
+     */
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * Returns the number of fragmentations answered from the cache.
+     * @return Number of cache hits.
+     */
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * Returns the number of fragmentations that were not found in memory but in the persistent store.
+     * @return Number of store hits.
+     */
+    public long getStoreHitCount() {
+        return this.storeHitCount.sum();
+    }
+
+    /**
+     * Returns the persistent store behind the cache.
+     * @return FragmentationStore object or null.
+     */
+    public FragmentationStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Returns the number of fragmentations that were not found in the cache or the store and had to be carried out.
+     * @return Number of cache misses.
+     */
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries that were removed because the cache was full.
+     * @return Number of evictions.
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    /**
+     * Removes all entries. The counters are not reset.
+     */
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentationCache{size=" + this.size() + ", maximumSize=" + this.maximumSize + ", hits="
+                + this.getHitCount() + ", storeHits=" + this.getStoreHitCount() + ", misses=" + this.getMissCount()
+                + ", evictions=" + this.getEvictionCount() + "}";
+    }
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Returns the atom indices of the fragments of the given molecule, either from the cache or by fragmenting the
+     * molecule and storing the result. Cached partitions are immutable and returned as they are; molecules sharing a
+     * cache key have identical atoms at identical indices, so the partition is valid for each of them.
+     * @param aMolecule The molecule to be fragmented.
+     * @param aSettings Fragmentation settings.
+     * @param aListener FragmentationListener object the phases of a new fragmentation are reported to or null.
+     * @param aTimeLimitNanos Time limit of a new fragmentation in nanoseconds or 0 for no limit.
+     * @return FragmentPartition object with the atom indices of each fragment in aMolecule or null if no canonical
+     * SMILES code can be created for the molecule.
+     * @throws UncheckedIOException if the persistent store cannot be read or written.
+     */
+    FragmentPartition findPartition(IAtomContainer aMolecule, FragmentationSettings aSettings,
+                                    FragmentationListener aListener, long aTimeLimitNanos) {
+        int[] tmpCanonicalOrder = new int[aMolecule.getAtomCount()];
+        String tmpSmiles;
+        try {
+            tmpSmiles = new SmilesGenerator(SmiFlavor.Unique).create(aMolecule, tmpCanonicalOrder);
+        } catch (CDKException anException) {
+            return null;
+        }
+        int[] tmpAtomOrder = FragmentationCache.createAtomOrder(aMolecule, tmpCanonicalOrder);
+        Key tmpKey = new Key(tmpSmiles, tmpAtomOrder, aSettings);
+        FragmentPartition tmpPartition;
+        synchronized (this.entries) {
+            tmpPartition = this.entries.get(tmpKey);
+        }
+        if (tmpPartition != null) {
+            this.hitCount.increment();
+        } else {
+            try {
+                if (this.store != null) {
+                    tmpPartition = this.store.get(tmpSmiles, tmpAtomOrder, aSettings);
+                }
+                if (tmpPartition != null) {
+                    this.storeHitCount.increment();
+                } else {
+                    this.missCount.increment();
+                    FragmentationProcess tmpProcess = new FragmentationProcess(aMolecule,
+                            new MoleculeGraph(aMolecule), aSettings, aListener);
+                    tmpProcess.setTimeLimit(aTimeLimitNanos);
+                    tmpProcess.runWithoutAtomContainers();
+                    tmpPartition = tmpProcess.getPartition();
+                    if (this.store != null) {
+                        this.store.put(tmpSmiles, tmpAtomOrder, aSettings, tmpPartition);
+                    }
+                }
+            } catch (IOException anException) {
+                throw new UncheckedIOException(anException);
+            }
+            synchronized (this.entries) {
+                this.entries.put(tmpKey, tmpPartition);
+            }
+        }
+        return tmpPartition;
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Creates the atom order of a molecule: the canonical rank of every atom, followed by the canonical ranks of the
+     * first and second atom of every bond, in the order of the atoms and bonds of the molecule. Two molecules with the
+     * same canonical SMILES code and the same atom order have identical atoms and bonds at identical indices.
+     * @param aMolecule The molecule.
+     * @param aCanonicalOrder Canonical rank of each atom.
+     * @return Array of atom count + 2 * bond count ranks.
+     */
+    private static int[] createAtomOrder(IAtomContainer aMolecule, int[] aCanonicalOrder) {
+        int tmpAtomCount = aCanonicalOrder.length;
+        int[] tmpAtomOrder = Arrays.copyOf(aCanonicalOrder, tmpAtomCount + 2 * aMolecule.getBondCount());
+        int tmpPosition = tmpAtomCount;
+        for (IBond tmpBond : aMolecule.bonds()) {
+            tmpAtomOrder[tmpPosition++] = aCanonicalOrder[tmpBond.getAtom(0).getIndex()];
+            tmpAtomOrder[tmpPosition++] = aCanonicalOrder[tmpBond.getAtom(1).getIndex()];
+        }
+        return tmpAtomOrder;
+    }
+    //</editor-fold>
+    //<editor-fold desc="Key">
+    /**
+     * Cache key made of the canonical SMILES code of a molecule, its atom order and the fragmentation settings.
+     */
+    private static final class Key {
+        /**
+         * Canonical SMILES code.
+         */
+        private final String smiles;
+        /**
+         * Atom order of the molecule (see createAtomOrder).
+         */
+        private final int[] atomOrder;
+        /**
+         * Fragmentation settings.
+         */
+        private final FragmentationSettings settings;
+
+        /**
+         * Creates a new key.
+         * @param aSmiles Canonical SMILES code.
+         * @param anAtomOrder Atom order of the molecule.
+         * @param aSettings Fragmentation settings.
+         */
+        private Key(String aSmiles, int[] anAtomOrder, FragmentationSettings aSettings) {
+            this.smiles = aSmiles;
+            this.atomOrder = anAtomOrder;
+            this.settings = aSettings;
+        }
+
+        @Override
+        public boolean equals(Object anObject) {
+            if (this == anObject) {
+                return true;
+            }
+            if (!(anObject instanceof Key)) {
+                return false;
+            }
+            Key tmpKey = (Key) anObject;
+            return this.smiles.equals(tmpKey.smiles) && this.settings.equals(tmpKey.settings)
+                    && Arrays.equals(this.atomOrder, tmpKey.atomOrder);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * this.smiles.hashCode() + Arrays.hashCode(this.atomOrder)) + this.settings.hashCode();
+        }
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+
+/**
+ * Receiver of instrumentation events of the fragmentation, e.g. FragmentationMetrics. A listener is set with
+ * AlkylFragmenter.setListener (or the setListener methods of the batch and file fragmenters) and is called by all
+ * threads that use the fragmenter, so implementations must be thread-safe and should return quickly. Timing and
+ * allocation measurement are only carried out while a listener is set. All methods do nothing by default.
+ */
+public interface FragmentationListener {
+    /**
+     * Called after a fragmentation step of one molecule has been carried out. The steps CUT_BRANCHES, CUT_CHAINS,
+     * CUT_RINGS and MAKE_CORRECTIONS are reported whenever a molecule is actually fragmented, i.e. not for results taken
+     * from a FragmentationCache; GEN_ATOM_CONTAINER is reported whenever the fragment IAtomContainer objects of a
+     * molecule are created at once. Steps that CUT_RINGS carries out internally on ring linkers count as CUT_RINGS.
+     * @param aPhase The step.
+     * @param aDurationNanos Wall time of the step in nanoseconds.
+     * @param anAllocatedBytes Bytes allocated by the calling thread during the step or -1 if the JVM cannot measure
+     *                         this or thread allocation measurement is disabled (the fragmenter does not enable it).
+     * @param anItemCount Number of items produced by the step: branches for CUT_BRANCHES, chain fragments for
+     *                    CUT_CHAINS, ring clusters for CUT_RINGS, merged remainders for MAKE_CORRECTIONS and fragment
+     *                    IAtomContainer objects for GEN_ATOM_CONTAINER.
+     */
+    default void phaseCompleted(FragmentationPhase aPhase, long aDurationNanos, long anAllocatedBytes,
+                                int anItemCount) {
+    }
+
+    /**
+     * Called after a molecule has been fragmented successfully by fragment, tryFragment, partition or fragmentLazily.
+     * @param anAtomCount Number of atoms of the molecule.
+     * @param aFragmentCount Number of fragments.
+     * @param aDurationNanos Wall time of the whole call in nanoseconds.
+     */
+    default void moleculeFragmented(int anAtomCount, int aFragmentCount, long aDurationNanos) {
+    }
+
+    /**
+     * Called after the fragmentation of a molecule has failed.
+     * @param anAtomCount Number of atoms of the molecule.
+     * @param anException The cause of the failure.
+     * @param aDurationNanos Wall time of the whole call in nanoseconds.
+     */
+    default void moleculeFailed(int anAtomCount, Exception anException, long aDurationNanos) {
+    }
+}
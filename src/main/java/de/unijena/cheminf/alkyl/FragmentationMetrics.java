@@ -0,0 +1,308 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe FragmentationListener that aggregates the instrumentation events of any number of molecules: a
+ * LatencyHistogram of the wall time of each fragmentation phase and of whole molecules, the bytes allocated and items
+ * produced per phase, and counters of molecules, fragments, ring clusters and merged remainders. The values can be
+ * read programmatically or written in the Prometheus text exposition format with writePrometheus, e.g. to set
+ * service level objectives or to spot regressions of single phases.
+ */
+public final class FragmentationMetrics implements FragmentationListener {
+    //<editor-fold desc="private fields">
+    /**
+     * Wall time histogram of each phase.
+     */
+    private final Map<FragmentationPhase, LatencyHistogram> phaseHistograms;
+    /**
+     * Bytes allocated in each phase.
+     */
+    private final Map<FragmentationPhase, LongAdder> phaseAllocatedBytes;
+    /**
+     * Items produced by each phase.
+     */
+    private final Map<FragmentationPhase, LongAdder> phaseItemCounts;
+    /**
+     * Wall time histogram of whole molecules, successful or not.
+     */
+    private final LatencyHistogram moleculeHistogram;
+    /**
+     * Number of molecules fragmented successfully.
+     */
+    private final LongAdder moleculeCount;
+    /**
+     * Number of molecules whose fragmentation failed.
+     */
+    private final LongAdder failedMoleculeCount;
+    /**
+     * Number of molecules whose fragmentation exceeded the time limit.
+     */
+    private final LongAdder timedOutMoleculeCount;
+    /**
+     * Number of fragments of all successfully fragmented molecules.
+     */
+    private final LongAdder fragmentCount;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates empty metrics.
+     */
+    public FragmentationMetrics() {
+        this.phaseHistograms = new EnumMap<>(FragmentationPhase.class);
+        this.phaseAllocatedBytes = new EnumMap<>(FragmentationPhase.class);
+        this.phaseItemCounts = new EnumMap<>(FragmentationPhase.class);
+        for (FragmentationPhase tmpPhase : FragmentationPhase.values()) {
+            this.phaseHistograms.put(tmpPhase, new LatencyHistogram());
+            this.phaseAllocatedBytes.put(tmpPhase, new LongAdder());
+            this.phaseItemCounts.put(tmpPhase, new LongAdder());
+        }
+        this.moleculeHistogram = new LatencyHistogram();
+        this.moleculeCount = new LongAdder();
+        this.failedMoleculeCount = new LongAdder();
+        this.timedOutMoleculeCount = new LongAdder();
+        this.fragmentCount = new LongAdder();
+    }
+    //</editor-fold>
+    //<editor-fold desc="FragmentationListener methods">
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void phaseCompleted(FragmentationPhase aPhase, long aDurationNanos, long anAllocatedBytes,
+                               int anItemCount) {
+        this.phaseHistograms.get(aPhase).record(aDurationNanos);
+        if (anAllocatedBytes > 0) {
+            this.phaseAllocatedBytes.get(aPhase).add(anAllocatedBytes);
+        }
+        this.phaseItemCounts.get(aPhase).add(anItemCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moleculeFragmented(int anAtomCount, int aFragmentCount, long aDurationNanos) {
+        this.moleculeHistogram.record(aDurationNanos);
+        this.moleculeCount.increment();
+        this.fragmentCount.add(aFragmentCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moleculeFailed(int anAtomCount, Exception anException, long aDurationNanos) {
+        this.moleculeHistogram.record(aDurationNanos);
+        this.failedMoleculeCount.increment();
+        if (anException instanceof FragmentationTimeoutException) {
+            this.timedOutMoleculeCount.increment();
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the wall time histogram of the given phase.
+     * @param aPhase Fragmentation phase.
+     * @return LatencyHistogram object that is updated live.
+     */
+    public LatencyHistogram getPhaseHistogram(FragmentationPhase aPhase) {
+        return this.phaseHistograms.get(aPhase);
+    }
+
+    /**
+     * Returns the number of bytes allocated in the given phase. It stays 0 if the JVM cannot measure allocation.
+     * @param aPhase Fragmentation phase.
+     * @return Allocated bytes.
+     */
+    public long getAllocatedBytes(FragmentationPhase aPhase) {
+        return this.phaseAllocatedBytes.get(aPhase).sum();
+    }
+
+    /**
+     * Returns the number of items produced by the given phase (see FragmentationListener.phaseCompleted).
+     * @param aPhase Fragmentation phase.
+     * @return Item count.
+     */
+    public long getItemCount(FragmentationPhase aPhase) {
+        return this.phaseItemCounts.get(aPhase).sum();
+    }
+
+    /**
+     * Returns the wall time histogram of whole molecules, successful or not.
+     * @return LatencyHistogram object that is updated live.
+     */
+    public LatencyHistogram getMoleculeHistogram() {
+        return this.moleculeHistogram;
+    }
+
+    /**
+     * Returns the number of molecules fragmented successfully.
+     * @return Molecule count.
+     */
+    public long getMoleculeCount() {
+        return this.moleculeCount.sum();
+    }
+
+    /**
+     * Returns the number of molecules whose fragmentation failed.
+     * @return Failed molecule count.
+     */
+    public long getFailedMoleculeCount() {
+        return this.failedMoleculeCount.sum();
+    }
+
+    /**
+     * Returns the number of molecules whose fragmentation exceeded the time limit. They are also counted as failed.
+     * @return Timed out molecule count.
+     */
+    public long getTimedOutMoleculeCount() {
+        return this.timedOutMoleculeCount.sum();
+    }
+
+    /**
+     * Returns the number of fragments of all successfully fragmented molecules.
+     * @return Fragment count.
+     */
+    public long getFragmentCount() {
+        return this.fragmentCount.sum();
+    }
+
+    /**
+     * Returns the number of ring clusters found by CUT_RINGS.
+     * @return Ring cluster count.
+     */
+    public long getRingClusterCount() {
+        return this.getItemCount(FragmentationPhase.CUT_RINGS);
+    }
+
+    /**
+     * Returns the number of remainders merged into fragments by MAKE_CORRECTIONS.
+     * @return Merged remainder count.
+     */
+    public long getMergedRemainderCount() {
+        return this.getItemCount(FragmentationPhase.MAKE_CORRECTIONS);
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format. Durations are given in seconds.
+     * @param aWriter Writer the metrics are written to. It is neither flushed nor closed.
+     * @throws IOException if the writer fails.
+     */
+    public void writePrometheus(Writer aWriter) throws IOException {
+        aWriter.write("# HELP alkyl_fragmentation_phase_seconds Wall time of the fragmentation phases.\n");
+        aWriter.write("# TYPE alkyl_fragmentation_phase_seconds histogram\n");
+        for (FragmentationPhase tmpPhase : FragmentationPhase.values()) {
+            FragmentationMetrics.writeHistogram(aWriter, "alkyl_fragmentation_phase_seconds",
+                    "phase=\"" + tmpPhase.name().toLowerCase(Locale.ROOT) + "\",", this.phaseHistograms.get(tmpPhase));
+        }
+        aWriter.write("# HELP alkyl_fragmentation_phase_allocated_bytes_total Bytes allocated in the fragmentation "
+                + "phases.\n");
+        aWriter.write("# TYPE alkyl_fragmentation_phase_allocated_bytes_total counter\n");
+        FragmentationMetrics.writePhaseCounters(aWriter, "alkyl_fragmentation_phase_allocated_bytes_total",
+                this.phaseAllocatedBytes);
+        aWriter.write("# HELP alkyl_fragmentation_phase_items_total Items produced by the fragmentation phases.\n");
+        aWriter.write("# TYPE alkyl_fragmentation_phase_items_total counter\n");
+        FragmentationMetrics.writePhaseCounters(aWriter, "alkyl_fragmentation_phase_items_total",
+                this.phaseItemCounts);
+        aWriter.write("# HELP alkyl_fragmentation_molecule_seconds Wall time of the fragmentation of whole molecules."
+                + "\n");
+        aWriter.write("# TYPE alkyl_fragmentation_molecule_seconds histogram\n");
+        FragmentationMetrics.writeHistogram(aWriter, "alkyl_fragmentation_molecule_seconds", "",
+                this.moleculeHistogram);
+        FragmentationMetrics.writeCounter(aWriter, "alkyl_fragmentation_molecules_total",
+                "Molecules fragmented successfully.", this.getMoleculeCount());
+        FragmentationMetrics.writeCounter(aWriter, "alkyl_fragmentation_failed_molecules_total",
+                "Molecules whose fragmentation failed.", this.getFailedMoleculeCount());
+        FragmentationMetrics.writeCounter(aWriter, "alkyl_fragmentation_timed_out_molecules_total",
+                "Molecules whose fragmentation exceeded the time limit.", this.getTimedOutMoleculeCount());
+        FragmentationMetrics.writeCounter(aWriter, "alkyl_fragmentation_fragments_total",
+                "Fragments of all successfully fragmented molecules.", this.getFragmentCount());
+        FragmentationMetrics.writeCounter(aWriter, "alkyl_fragmentation_ring_clusters_total",
+                "Ring clusters found.", this.getRingClusterCount());
+        FragmentationMetrics.writeCounter(aWriter, "alkyl_fragmentation_merged_remainders_total",
+                "Remainders merged into fragments.", this.getMergedRemainderCount());
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Writes the bucket, sum and count lines of a histogram.
+     * @param aWriter Writer.
+     * @param aName Metric name.
+     * @param aLabels Further labels, each followed by a comma, or an empty string.
+     * @param aHistogram Histogram to write.
+     * @throws IOException if the writer fails.
+     */
+    private static void writeHistogram(Writer aWriter, String aName, String aLabels, LatencyHistogram aHistogram)
+            throws IOException {
+        long[] tmpCounts = aHistogram.getBucketCounts();
+        long tmpCumulative = 0;
+        for (int i = 0; i < tmpCounts.length; i++) {
+            tmpCumulative += tmpCounts[i];
+            String tmpBound = i == tmpCounts.length - 1 ? "+Inf"
+                    : Double.toString(LatencyHistogram.getUpperBoundNanos(i) / 1e9);
+            aWriter.write(aName + "_bucket{" + aLabels + "le=\"" + tmpBound + "\"} " + tmpCumulative + "\n");
+        }
+        String tmpLabels = aLabels.isEmpty() ? "" : "{" + aLabels.substring(0, aLabels.length() - 1) + "}";
+        aWriter.write(aName + "_sum" + tmpLabels + " " + aHistogram.getSumNanos() / 1e9 + "\n");
+        aWriter.write(aName + "_count" + tmpLabels + " " + tmpCumulative + "\n");
+    }
+
+    /**
+     * Writes one counter line per phase.
+     * @param aWriter Writer.
+     * @param aName Metric name.
+     * @param aCounters Counter of each phase.
+     * @throws IOException if the writer fails.
+     */
+    private static void writePhaseCounters(Writer aWriter, String aName,
+                                           Map<FragmentationPhase, LongAdder> aCounters) throws IOException {
+        for (FragmentationPhase tmpPhase : FragmentationPhase.values()) {
+            aWriter.write(aName + "{phase=\"" + tmpPhase.name().toLowerCase(Locale.ROOT) + "\"} "
+                    + aCounters.get(tmpPhase).sum() + "\n");
+        }
+    }
+
+    /**
+     * Writes a counter without labels.
+     * @param aWriter Writer.
+     * @param aName Metric name.
+     * @param aHelp Description of the counter.
+     * @param aValue Value of the counter.
+     * @throws IOException if the writer fails.
+     */
+    private static void writeCounter(Writer aWriter, String aName, String aHelp, long aValue) throws IOException {
+        aWriter.write("# HELP " + aName + " " + aHelp + "\n");
+        aWriter.write("# TYPE " + aName + " counter\n");
+        aWriter.write(aName + " " + aValue + "\n");
+    }
+    //</editor-fold>
+}
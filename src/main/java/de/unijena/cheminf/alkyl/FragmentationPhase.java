@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+
+/**
+ * The steps of the fragmentation of a molecule in the order in which they are carried out.
+ */
+public enum FragmentationPhase {
+    /**
+     * Separation of all non-cyclic branches of the molecule.
+     */
+    CUT_BRANCHES,
+    /**
+     * Cutting of the branches into chains of the desired size.
+     */
+    CUT_CHAINS,
+    /**
+     * Separation of rings and ring linkers.
+     */
+    CUT_RINGS,
+    /**
+     * Addition of fragment remainders to their adjacent fragments.
+     */
+    MAKE_CORRECTIONS,
+    /**
+     * Conversion of the fragments into IAtomContainer objects saturated with hydrogen atoms.
+     */
+    GEN_ATOM_CONTAINER
+}
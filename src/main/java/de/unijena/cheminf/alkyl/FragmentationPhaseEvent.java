@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event of one fragmentation phase of a molecule, reported with the same item counts as
+ * FragmentationListener.phaseCompleted. The event is disabled by default because it is emitted several times per
+ * molecule; it can be enabled in the recording settings to see which phase makes an outlier molecule slow.
+ */
+@Name("de.unijena.cheminf.alkyl.FragmentationPhase")
+@Label("Fragmentation Phase")
+@Category({"Alkyl Fragmentation"})
+@Description("One phase of the fragmentation of a molecule")
+@Enabled(false)
+@StackTrace(false)
+final class FragmentationPhaseEvent extends Event {
+    //<editor-fold desc="event fields">
+    /**
+     * Name of the phase.
+     */
+    @Label("Phase")
+    String phase;
+    /**
+     * Number of items produced by the phase.
+     */
+    @Label("Item Count")
+    int itemCount;
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Ends the event and commits it if the recording asks for it.
+     * @param aPhase The finished phase.
+     * @param anItemCount Number of items produced by the phase.
+     */
+    void commit(FragmentationPhase aPhase, int anItemCount) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.phase = aPhase.name();
+            this.itemCount = anItemCount;
+            this.commit();
+        }
+    }
+    //</editor-fold>
+}
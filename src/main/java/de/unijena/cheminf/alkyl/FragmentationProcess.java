@@ -0,0 +1,1456 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The class FragmentationProcess holds all working state of the fragmentation of one molecule with one set of
+ * settings and carries out the fragmentation steps described in AlkylFragmenter. A new object is created for every
+ * fragmentation, so that the AlkylFragmenter itself does not keep any state between calls and can be shared between
+ * threads. Objects of this class are not thread-safe and must not be reused.
+ */
+class FragmentationProcess {
+    //<editor-fold desc="constants">
+    /**
+     * Number of calls of checkTimeLimit between two readings of the clock.
+     */
+    private static final int TIME_LIMIT_CHECK_INTERVAL = 256;
+    //</editor-fold>
+    //<editor-fold desc="fragmentation settings">
+    /**
+     * IAtomContainer with all molecular information of the molecule that is to be fragmented. Variable is not changed
+     * throughout the fragmentation process.
+     */
+    private final IAtomContainer molecule;
+    /**
+     * User setting for the minimum fragment size.
+     */
+    private final int minCut;
+    /**
+     * User setting for the maximum fragment size.
+     */
+    private final int maxCut;
+    /**
+     * User setting for whether tertiary and quaternary carbon atoms are to be preserved during the fragmentation.
+     */
+    private final boolean isPreservingTertiaryQuaternaryCarbons;
+    //</editor-fold>
+    //<editor-fold desc="private cache lists">
+    /**
+     * Primitive adjacency graph of the molecule. The fragmentation consumes its half-edges: cutBranches removes the
+     * bonds of all non-cyclic branches and cutRings removes the remaining ring and ring linker bonds.
+     */
+    private final MoleculeGraph connections;
+    /**
+     * Atom indices of each individual branch. It is filled by cutBranches and processed by cutChains.
+     */
+    private final AtomSequenceList branches;
+    /**
+     * Atom indices of the fragment remainders from the cutChains method. They will be added to their adjacent
+     * branches in the makeCorrections method.
+     */
+    private final AtomSequenceList remainder;
+    /**
+     * Atom indices of each resulting fragment. The cutRings and the cutChains method add to this list and the
+     * makeCorrections method adds fragment remainders back to their adjacent fragments.
+     */
+    private AtomSequenceList fragmentsIndices;
+
+    /**
+     * Partition copied from fragmentsIndices once the fragmentation steps are finished, created on first request.
+     */
+    private FragmentPartition partition;
+    /**
+     * List of IAtomContainer objects with the same fragments as in the fragmentsIndices list. In addition to the atom
+     * indices, they also contain bond information.
+     */
+    private List<IAtomContainer> fragmentsAtomContainer;
+    /**
+     * Indices of the ring atoms of the molecule as determined by MoleculeGraph.findRingAtoms. It is set by cutRings.
+     */
+    private BitSet ringAtoms;
+    /**
+     * Graph of the ring linker fragment that is currently dissected by cutRings. It is reused for all ring linker
+     * fragments (see MoleculeGraph.restrictTo), so that their number does not multiply with the size of the molecule.
+     */
+    private MoleculeGraph restrictedConnections;
+    /**
+     * Flags of the atoms at which the branches processed by cutChains are connected to other branches. The flags are
+     * reset at the end of each cutChains call, so that the array is only allocated once. A boolean array is used
+     * because BitSet.clear rescans all lower words whenever its highest set word becomes empty, which is quadratic
+     * for many small ring linker parts of a large molecule.
+     */
+    private final boolean[] branchingAtoms;
+    //</editor-fold>
+    //<editor-fold desc="instrumentation">
+    /**
+     * Listener the durations of the phases are reported to or null.
+     */
+    private final FragmentationListener listener;
+    /**
+     * Number of ring clusters added to the fragments by cutRings.
+     */
+    private int ringClusterCount;
+    /**
+     * Number of remainders merged into fragments by makeCorrections.
+     */
+    private int mergedRemainderCount;
+    //</editor-fold>
+    //<editor-fold desc="time limit">
+    /**
+     * Maximum wall time of the fragmentation in nanoseconds or 0 for no limit.
+     */
+    private long timeLimitNanos;
+    /**
+     * Value of System.nanoTime after which the fragmentation is cancelled, only used with a time limit.
+     */
+    private long deadlineNanos;
+    /**
+     * Remaining calls of checkTimeLimit until the clock is read again.
+     */
+    private int checksUntilClockReading;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new fragmentation of the given molecule.
+     * @param aMolecule IAtomContainer object of the molecule to be fragmented.
+     * @param aConnections MoleculeGraph object of the molecule with all bonds present. It is consumed by the
+     *                     fragmentation and must not be used by another FragmentationProcess at the same time.
+     * @param aSettings Fragmentation settings.
+     */
+    FragmentationProcess(IAtomContainer aMolecule, MoleculeGraph aConnections, FragmentationSettings aSettings) {
+        this(aMolecule, aConnections, aSettings, null);
+    }
+
+    /**
+     * Creates a new fragmentation of the given molecule that reports its phases to the given listener.
+     * @param aMolecule IAtomContainer object of the molecule to be fragmented.
+     * @param aConnections MoleculeGraph object of the molecule with all bonds present. It is consumed by the
+     *                     fragmentation and must not be used by another FragmentationProcess at the same time.
+     * @param aSettings Fragmentation settings.
+     * @param aListener FragmentationListener object or null.
+     */
+    FragmentationProcess(IAtomContainer aMolecule, MoleculeGraph aConnections, FragmentationSettings aSettings,
+                         FragmentationListener aListener) {
+        this.molecule = aMolecule;
+        this.listener = aListener;
+        this.connections = aConnections;
+        this.minCut = aSettings.getMinCut();
+        this.maxCut = aSettings.getMaxCut();
+        this.isPreservingTertiaryQuaternaryCarbons = aSettings.isPreservingTertiaryQuaternaryCarbons();
+        this.branches = new AtomSequenceList(aMolecule.getAtomCount());
+        this.remainder = new AtomSequenceList(16);
+        this.branchingAtoms = new boolean[aMolecule.getAtomCount()];
+        this.fragmentsIndices = new AtomSequenceList(aMolecule.getAtomCount());
+    }
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Runs all fragmentation steps and converts the resulting fragments into IAtomContainer objects.
+     * @throws CDKException Is triggered in genAtomContainer.
+     */
+    void run() throws CDKException {
+        runWithoutAtomContainers();
+        genAtomContainer(this.getPartition());
+    }
+
+    /**
+     * Runs all fragmentation steps except the conversion into IAtomContainer objects. Afterwards, only
+     * getPartition returns a result; no atom types are perceived and no hydrogen atoms are added.
+     */
+    void runWithoutAtomContainers() {
+        runStep(FragmentationPhase.CUT_BRANCHES);
+        runStep(FragmentationPhase.CUT_CHAINS);
+        runStep(FragmentationPhase.CUT_RINGS);
+        runStep(FragmentationPhase.MAKE_CORRECTIONS);
+    }
+
+    /**
+     * Runs a single fragmentation step. The steps must be run in the order of the FragmentationPhase constants, each
+     * exactly once; this allows measuring them separately.
+     * @param aPhase The fragmentation step to run.
+     * @throws CDKException Is triggered in genAtomContainer.
+     */
+    void runPhase(FragmentationPhase aPhase) throws CDKException {
+        if (aPhase == FragmentationPhase.GEN_ATOM_CONTAINER) {
+            genAtomContainer(this.getPartition());
+        } else {
+            runStep(aPhase);
+        }
+    }
+
+    /**
+     * Converts fragments given as atom indices into IAtomContainer objects saturated with hydrogen atoms (see
+     * FragmentContainerFactory) and reports this as GEN_ATOM_CONTAINER phase to the listener and as
+     * FragmentationPhaseEvent.
+     * @param aMolecule The fragmented molecule.
+     * @param aPartition Atom indices of each fragment.
+     * @param aListener FragmentationListener object or null.
+     * @return List of the fragment IAtomContainer objects.
+     * @throws CDKException Is triggered when saturating fragment molecules with hydrogen atoms.
+     */
+    static List<IAtomContainer> createAtomContainers(IAtomContainer aMolecule, FragmentPartition aPartition,
+                                                     FragmentationListener aListener) throws CDKException {
+        FragmentationPhaseEvent tmpEvent = new FragmentationPhaseEvent();
+        tmpEvent.begin();
+        long tmpStartBytes = aListener == null ? 0 : FragmentationProcess.getAllocatedBytes();
+        long tmpStartNanos = aListener == null ? 0 : System.nanoTime();
+        FragmentContainerFactory tmpFactory = new FragmentContainerFactory(aMolecule, aPartition);
+        List<IAtomContainer> tmpFragments = new ArrayList<>(tmpFactory.getFragmentCount());
+        for (int i = 0; i < tmpFactory.getFragmentCount(); i++) {
+            tmpFragments.add(tmpFactory.create(i));
+        }
+        if (aListener != null) {
+            FragmentationProcess.notifyPhase(aListener, FragmentationPhase.GEN_ATOM_CONTAINER, tmpStartNanos,
+                    tmpStartBytes, tmpFragments.size());
+        }
+        tmpEvent.commit(FragmentationPhase.GEN_ATOM_CONTAINER, tmpFragments.size());
+        return tmpFragments;
+    }
+
+    /**
+     * Limits the wall time of the fragmentation, counted from now. The fragmentation steps check the limit
+     * cooperatively in their loops and throw a FragmentationTimeoutException when it is exceeded. The creation of the
+     * fragment IAtomContainer objects is not limited.
+     * @param aTimeLimitNanos Maximum wall time in nanoseconds or 0 for no limit.
+     */
+    void setTimeLimit(long aTimeLimitNanos) {
+        this.timeLimitNanos = aTimeLimitNanos;
+        this.deadlineNanos = System.nanoTime() + aTimeLimitNanos;
+        this.checksUntilClockReading = 0;
+    }
+
+    /**
+     * Only runs cutBranches on the whole molecule and returns its results.
+     * @return A new List of Integer List objects containing the atom indices of each molecular branch.
+     */
+    List<List<Integer>> runCutBranches() {
+        cutBranches(this.connections);
+        return this.branches.toLists();
+    }
+
+    /**
+     * Returns the atom indices of the resulting fragments. The partition is copied from the primitive index buffers on
+     * the first call and the same object is returned afterwards.
+     * @return FragmentPartition object containing the atom indices of each fragment.
+     */
+    FragmentPartition getPartition() {
+        if (this.partition == null) {
+            this.partition = this.fragmentsIndices.toPartition();
+        }
+        return this.partition;
+    }
+
+    /**
+     * Returns the number of ring clusters found by cutRings.
+     * @return Number of ring fragments.
+     */
+    int getRingClusterCount() {
+        return this.ringClusterCount;
+    }
+
+    /**
+     * Returns the number of remainders merged into fragments by makeCorrections.
+     * @return Number of merged remainders.
+     */
+    int getMergedRemainderCount() {
+        return this.mergedRemainderCount;
+    }
+
+    /**
+     * Returns the resulting fragments as IAtomContainer objects.
+     * @return A List of IAtomContainer objects.
+     */
+    List<IAtomContainer> getFragmentsAtomContainer() {
+        return this.fragmentsAtomContainer;
+    }
+    //</editor-fold>
+    //<editor-fold desc="instrumentation methods">
+    /**
+     * Runs one of the steps CUT_BRANCHES, CUT_CHAINS, CUT_RINGS and MAKE_CORRECTIONS and reports it to the listener
+     * and as FragmentationPhaseEvent.
+     * @param aPhase The fragmentation step to run.
+     */
+    private void runStep(FragmentationPhase aPhase) {
+        this.checksUntilClockReading = 0;
+        checkTimeLimit();
+        FragmentationPhaseEvent tmpEvent = new FragmentationPhaseEvent();
+        tmpEvent.begin();
+        int tmpItemCount;
+        if (this.listener == null) {
+            tmpItemCount = carryOutStep(aPhase);
+        } else {
+            long tmpStartBytes = FragmentationProcess.getAllocatedBytes();
+            long tmpStartNanos = System.nanoTime();
+            tmpItemCount = carryOutStep(aPhase);
+            FragmentationProcess.notifyPhase(this.listener, aPhase, tmpStartNanos, tmpStartBytes, tmpItemCount);
+        }
+        tmpEvent.commit(aPhase, tmpItemCount);
+    }
+
+    /**
+     * Carries out one of the steps CUT_BRANCHES, CUT_CHAINS, CUT_RINGS and MAKE_CORRECTIONS.
+     * @param aPhase The fragmentation step to run.
+     * @return Number of items produced by the step (see FragmentationListener.phaseCompleted).
+     */
+    private int carryOutStep(FragmentationPhase aPhase) {
+        switch (aPhase) {
+            case CUT_BRANCHES:
+                cutBranches(this.connections);
+                return this.branches.size();
+            case CUT_CHAINS:
+                cutChains();
+                return this.fragmentsIndices.size();
+            case CUT_RINGS:
+                cutRings();
+                return this.ringClusterCount;
+            case MAKE_CORRECTIONS:
+                makeCorrections();
+                return this.mergedRemainderCount;
+            default:
+                throw new IllegalArgumentException("Unknown fragmentation phase: " + aPhase);
+        }
+    }
+
+    /**
+     * Throws a FragmentationTimeoutException if the time limit is exceeded. To keep the check cheap in the loops of
+     * the fragmentation steps, the clock is only read on every TIME_LIMIT_CHECK_INTERVAL-th call.
+     */
+    private void checkTimeLimit() {
+        if (this.timeLimitNanos == 0 || --this.checksUntilClockReading > 0) {
+            return;
+        }
+        this.checksUntilClockReading = TIME_LIMIT_CHECK_INTERVAL;
+        if (System.nanoTime() - this.deadlineNanos > 0) {
+            throw new FragmentationTimeoutException(this.timeLimitNanos);
+        }
+    }
+
+    /**
+     * Reports a finished phase to a listener.
+     * @param aListener FragmentationListener object.
+     * @param aPhase The finished phase.
+     * @param aStartNanos Value of System.nanoTime at the start of the phase.
+     * @param aStartBytes Value of getAllocatedBytes at the start of the phase.
+     * @param anItemCount Number of items produced by the phase.
+     */
+    private static void notifyPhase(FragmentationListener aListener, FragmentationPhase aPhase, long aStartNanos,
+                                    long aStartBytes, int anItemCount) {
+        long tmpDurationNanos = System.nanoTime() - aStartNanos;
+        long tmpEndBytes = FragmentationProcess.getAllocatedBytes();
+        long tmpAllocatedBytes = aStartBytes < 0 || tmpEndBytes < 0 ? -1 : tmpEndBytes - aStartBytes;
+        aListener.phaseCompleted(aPhase, tmpDurationNanos, tmpAllocatedBytes, anItemCount);
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far. The thread bean is only looked up when this
+     * is first called, i.e. when a listener is used for the first time.
+     * @return Allocated bytes or -1 if the JVM cannot measure this or the measurement is disabled.
+     */
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean tmpBean = AllocationBeanHolder.BEAN;
+        if (tmpBean == null) {
+            return -1;
+        }
+        try {
+            return tmpBean.getCurrentThreadAllocatedBytes();
+        } catch (UnsupportedOperationException anException) {
+            return -1;
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="private fragmentation methods">
+
+    /**
+     * This method dissects a given part of the molecule into its individual branches. The bonds of the extracted
+     * branches are removed from the given graph.
+     * @param aConnections MoleculeGraph object that only contains the bonds of the molecule fragment.
+     * @throws IllegalStateException if the last chain meets the other chains, but there is no non-empty main branch
+     * to join it with.
+     */
+    private void cutBranches (MoleculeGraph aConnections) {
+        /*
+        The growing chains are stored as linked lists of nodes in primitive arrays. Every node holds an atom index and
+        the node before it, so that a chain is identified by its last node and can be read backwards, i.e. in branch
+        order, without being reversed. Finished branches are copied once into tmpBranchAtoms and from there into
+        this.branches. Every node stands for a chain start or a consumed bond, which bounds the array sizes.
+         */
+        int tmpChainCount = 0;
+        int tmpHalfEdgeCount = 0;
+        for (int tmpMember=0; tmpMember<aConnections.getMemberCount(); tmpMember++) {
+            int i = aConnections.getMemberAtom(tmpMember);
+            tmpHalfEdgeCount += aConnections.getDegree(i);
+            if (aConnections.getDegree(i) == 1) {
+                tmpChainCount++;
+            }
+        }
+        int tmpNodeCapacity = tmpChainCount + tmpHalfEdgeCount / 2;
+        int[] tmpNodeAtoms = new int[tmpNodeCapacity];
+        int[] tmpPreviousNodes = new int[tmpNodeCapacity];
+        int[] tmpNodeDepths = new int[tmpNodeCapacity];
+        int[] tmpBranchAtoms = new int[tmpNodeCapacity];
+        int tmpNodeCount = 0;
+        int tmpBranchAtomCount = 0;
+        /*
+        The indices of all primary (terminal) carbon atoms become each the start of a new chain (tmpChainList holds the
+        last node of each chain). The chains in growing order form a doubly linked list, so that finished chains are
+        unlinked in constant time, however many chains there are.
+         */
+        int[] tmpChainList = new int[tmpChainCount];
+        int[] tmpNextChains = new int[tmpChainCount];
+        int[] tmpPreviousChains = new int[tmpChainCount];
+        int tmpChainListSize = 0;
+        for (int tmpMember=0; tmpMember<aConnections.getMemberCount(); tmpMember++) {
+            int i = aConnections.getMemberAtom(tmpMember);
+            if (aConnections.getDegree(i) == 1) {
+                tmpNodeAtoms[tmpNodeCount] = i;
+                tmpPreviousNodes[tmpNodeCount] = -1;
+                tmpNodeDepths[tmpNodeCount] = 1;
+                tmpPreviousChains[tmpChainListSize] = tmpChainListSize - 1;
+                tmpNextChains[tmpChainListSize] = tmpChainListSize + 1 < tmpChainCount ? tmpChainListSize + 1 : -1;
+                tmpChainList[tmpChainListSize++] = tmpNodeCount++;
+            }
+        }
+        int tmpFirstChain = tmpChainListSize > 0 ? 0 : -1;
+        /*
+        Next, all chains grow atom by atom at the same time; meaning, the first chain in tmpChainList adds its 
+        neighbouring atom, then the second chain gets its adjacent atom added and so on. After all chains have added 
+        their adjacent atoms they move on to the next. Every time one chain encounters a branching it is removed from
+        the tmpChainList and added to the this.branches list. At the end, there are only two chains left which will meet
+        at the centre of the molecule and then joint together to become the main branch. At this point, the variable 
+        tmpIsSearing becomes false and the loop finishes.
+         */
+        boolean tmpIsSearching = true;
+        while (tmpIsSearching) {
+            checkTimeLimit();
+            int tmpChain = tmpFirstChain;
+            while (tmpChain >= 0) {
+                int tmpNextChain = tmpNextChains[tmpChain];
+                int tmpLastNode = tmpChainList[tmpChain];
+                int tmpLastAtom = tmpNodeAtoms[tmpLastNode];
+                if (aConnections.getDegree(tmpLastAtom) > 0) {
+                    /*
+                    If the degree of the last atom in aConnections is zero it means that
+                    the last atom in the current chain does not have neighbouring atoms. This happens when the two last
+                    chains have reached each other.
+                    Before that happens, the neighbouring atom is added to the current chain and the bond information
+                    erased from aConnections. If the newly added atom has more than one other neighbour
+                    (at a branching) the whole current chain is added to the this.branches list and removed from the
+                    tmpChainList. This way each subbranch also contains the information, from which atom of another
+                    branch it was cut off.
+                     */
+                    int tmpNextAtom = aConnections.getNeighbour(tmpLastAtom, 0);
+                    tmpNodeAtoms[tmpNodeCount] = tmpNextAtom;
+                    tmpPreviousNodes[tmpNodeCount] = tmpLastNode;
+                    tmpNodeDepths[tmpNodeCount] = tmpNodeDepths[tmpLastNode] + 1;
+                    tmpChainList[tmpChain] = tmpNodeCount++;
+                    aConnections.removeEdge(tmpNextAtom, tmpLastAtom);
+                    aConnections.removeEdge(tmpLastAtom, tmpNextAtom);
+                    if (aConnections.getDegree(tmpNextAtom) > 1) {
+                        int tmpBranchStart = tmpBranchAtomCount;
+                        tmpBranchAtomCount = copyChain(tmpChainList[tmpChain], tmpNodeAtoms, tmpPreviousNodes,
+                                tmpNodeDepths, true, tmpBranchAtoms, tmpBranchAtomCount);
+                        this.branches.addAtoms(tmpBranchAtoms, tmpBranchStart, tmpBranchAtomCount);
+                        this.branches.closeSequence();
+                        tmpFirstChain = unlinkChain(tmpNextChains, tmpPreviousChains, tmpFirstChain, tmpChain);
+                        tmpChainListSize--;
+                    }
+                } else {
+                    /*
+                    When the two last chains meet each other, the first chain is added to the this.branches list and the
+                    second is then merged together with the just added chain. The branch to merge with is always the
+                    last one copied into tmpBranchAtoms, so it is extended there and then replaces the last branch.
+                     */
+                    if (tmpChainListSize == 2) {
+                        int tmpBranchStart = tmpBranchAtomCount;
+                        tmpBranchAtomCount = copyChain(tmpChainList[tmpFirstChain], tmpNodeAtoms, tmpPreviousNodes,
+                                tmpNodeDepths, false, tmpBranchAtoms, tmpBranchAtomCount);
+                        this.branches.addAtoms(tmpBranchAtoms, tmpBranchStart, tmpBranchAtomCount);
+                        this.branches.closeSequence();
+                        tmpFirstChain = unlinkChain(tmpNextChains, tmpPreviousChains, tmpFirstChain, tmpFirstChain);
+                        tmpChainListSize--;
+                    }
+                    int tmpMainBranchSize = this.branches.size() == 0 ? 0
+                            : this.branches.getSize(this.branches.size() - 1);
+                    if (tmpMainBranchSize == 0) {
+                        throw new IllegalStateException("Empty main branch when joining the chain ending at atom "
+                                + tmpLastAtom + " after branch cutting");
+                    }
+                    int tmpBranchStart = tmpBranchAtomCount - tmpMainBranchSize;
+                    tmpBranchAtomCount = copyChain(tmpChainList[tmpFirstChain], tmpNodeAtoms, tmpPreviousNodes,
+                            tmpNodeDepths, true, tmpBranchAtoms, tmpBranchAtomCount - 1);
+                    this.branches.reopenLastSequence();
+                    this.branches.clearOpenSequence();
+                    this.branches.addAtoms(tmpBranchAtoms, tmpBranchStart, tmpBranchAtomCount);
+                    this.branches.closeSequence();
+                    tmpFirstChain = unlinkChain(tmpNextChains, tmpPreviousChains, tmpFirstChain, tmpFirstChain);
+                    tmpChainListSize--;
+                    if (tmpChainListSize == 0) {
+                        tmpNextChain = -1;
+                    }
+                    tmpIsSearching = false;
+                }
+                tmpChain = tmpNextChain;
+            }
+            /*
+            When all branches are cut off, but if the last two chains do not meet each other it means that there must be
+            a ring (cluster) in between, which will be further broken down by the cutRings method. In this case an empty
+            list will be added at the end of the this.branches list to indicate that there is no continuous main branch.
+             */
+            if (tmpIsSearching && tmpChainListSize == 0) {
+                this.branches.closeSequence();
+                tmpIsSearching = false;
+            }
+
+        }
+    }
+
+    /**
+     * Copies the atom indices of a chain of cutBranches into an array.
+     * @param aLastNode Last node of the chain.
+     * @param aNodeAtoms Atom index of each node.
+     * @param aPreviousNodes Previous node of each node or -1 for the first node of a chain.
+     * @param aNodeDepths Number of nodes of the chain up to and including each node.
+     * @param anIsReversed Whether to copy the chain from its last to its first atom.
+     * @param aTarget Array to copy into.
+     * @param aPosition Position in aTarget to copy the first atom index to.
+     * @return Position in aTarget after the copied chain.
+     */
+    private static int copyChain(int aLastNode, int[] aNodeAtoms, int[] aPreviousNodes, int[] aNodeDepths,
+                                 boolean anIsReversed, int[] aTarget, int aPosition) {
+        int tmpLength = aNodeDepths[aLastNode];
+        int tmpPosition = anIsReversed ? aPosition : aPosition + tmpLength - 1;
+        int tmpStep = anIsReversed ? 1 : -1;
+        for (int tmpNode = aLastNode; tmpNode >= 0; tmpNode = aPreviousNodes[tmpNode]) {
+            aTarget[tmpPosition] = aNodeAtoms[tmpNode];
+            tmpPosition += tmpStep;
+        }
+        return aPosition + tmpLength;
+    }
+
+    /**
+     * Unlinks a chain from the doubly linked chain list of cutBranches. The next chain of the unlinked chain is kept,
+     * so that an iteration can continue from it.
+     * @param aNextChains Next chain of each chain or -1 for the last one.
+     * @param aPreviousChains Previous chain of each chain or -1 for the first one.
+     * @param aFirstChain First chain of the list.
+     * @param aChain Chain to unlink.
+     * @return New first chain of the list or -1 if the list is empty.
+     */
+    private static int unlinkChain(int[] aNextChains, int[] aPreviousChains, int aFirstChain, int aChain) {
+        int tmpPreviousChain = aPreviousChains[aChain];
+        int tmpNextChain = aNextChains[aChain];
+        if (tmpPreviousChain >= 0) {
+            aNextChains[tmpPreviousChain] = tmpNextChain;
+        }
+        if (tmpNextChain >= 0) {
+            aPreviousChains[tmpNextChain] = tmpPreviousChain;
+        }
+        return aChain == aFirstChain ? tmpNextChain : aFirstChain;
+    }
+
+    /**
+     * After the cutBranches method extracted only the non-cyclic parts of the molecule, the remaining rings and ring
+     * linkers are separated from each other by the cutRings method.
+     */
+    private void cutRings () {
+        /*
+        The current chain is the open sequence of tmpChains; the finished ring linker chains collected while preserving
+        tertiary and quaternary carbon atoms are its closed sequences. tmpIsInCurrentChain mirrors the atoms of the
+        current chain for constant-time membership tests; it is a boolean array for the reason given at branchingAtoms.
+        The starter queues are only ever polled at the front and appended to at the end.
+         */
+        AtomSequenceList tmpChains = new AtomSequenceList(this.molecule.getAtomCount());
+        boolean[] tmpIsInCurrentChain = new boolean[this.molecule.getAtomCount()];
+        IntQueue tmpBranchStarter = new IntQueue(16);
+        IntQueue tmpFragmentStarter = new IntQueue(16);
+        boolean tmpIsRingNotRingLinker;
+        boolean tmpHasSameKindNeighbour;
+        int tmpIndexCurrentAtom;
+        this.ringAtoms = this.connections.findRingAtoms();
+        /*
+        The cutBranches method extracted all non-cyclic and non-ring-linker atoms from the this.connections graph. At
+        the beginning of the cutRings method the first ring or ring linker atom from the molecule is being identified by
+        checking which of the atoms still has an entry about neighbouring atoms. This atom is saved into the
+        tmpFragmentStarters list and is going to be the starting atom for the iteration.
+         */
+        int tmpConnectionsIndex = 0;
+        while (tmpFragmentStarter.isEmpty() && tmpConnectionsIndex < this.connections.getAtomCount()) {
+            if (this.connections.getDegree(tmpConnectionsIndex) != 0) {
+                tmpFragmentStarter.addLast(tmpConnectionsIndex);
+            }
+            tmpConnectionsIndex++;
+        }
+        while (!tmpFragmentStarter.isEmpty()) {
+            checkTimeLimit();
+            /*
+            Each atom in the tmpFragmentStarter is the beginning of either a ring or a ring linker fragment.
+            They become the start of new chains to follow (tmpBranchStarter).
+             */
+            tmpIndexCurrentAtom = tmpFragmentStarter.pollFirst();
+            tmpIsRingNotRingLinker = this.ringAtoms.get(tmpIndexCurrentAtom);
+            tmpBranchStarter.addLast(tmpIndexCurrentAtom);
+            while (!tmpBranchStarter.isEmpty()) {
+                checkTimeLimit();
+                /*
+                This loop looks for atoms of the same type (ring or ring linker atom) and adds them either to the
+                current chain or the tmpBranchStarter if there are more than one atom of the same kind at a branching,
+                until the fragment is finished. All other atoms are added to the tmpFragmentStarter list to start new
+                fragments.
+
+                But there is a difference of procedure when tertiary and quaternary carbon atoms need to be preserved.
+                Then the
+                */
+                tmpIndexCurrentAtom = tmpBranchStarter.pollFirst();
+                if (!tmpIsInCurrentChain[tmpIndexCurrentAtom]) {
+                    tmpChains.addAtom(tmpIndexCurrentAtom);
+                    tmpIsInCurrentChain[tmpIndexCurrentAtom] = true;
+                }
+
+                if (this.isPreservingTertiaryQuaternaryCarbons) {
+                    /*
+                    When starting with a new current chain, there might be more than one neighbouring atom to
+                    tmpIndexCurrentAtom. The first becomes tmpIndexNeighbouringAtom and all the others become branch
+                    starters.
+                     */
+                    while (this.connections.getDegree(tmpIndexCurrentAtom) > 0) {
+                        checkTimeLimit();
+                        /*
+                        This loop continues until it reaches a previous atom. Because all other neighbouring atoms of
+                        tmpIndexCurrentAtom have been added to tmpBranchStarter or tmpFragmentStarter only one
+                        neighbouring atom remains.
+                         */
+                        int tmpIndexNeighbouringAtom = this.connections.getNeighbour(tmpIndexCurrentAtom, 0);
+                        this.connections.removeEdge(tmpIndexNeighbouringAtom, tmpIndexCurrentAtom);
+                        for (int tmpIndex=1; tmpIndex<this.connections.getDegree(tmpIndexCurrentAtom); tmpIndex++) {
+                            int tmpBranchStarterAtom = this.connections.getNeighbour(tmpIndexCurrentAtom, tmpIndex);
+                            tmpBranchStarter.addLast(tmpBranchStarterAtom);
+                            this.connections.removeEdge(tmpBranchStarterAtom, tmpIndexCurrentAtom);
+                        }
+                        int tmpIndexNextNeighbouringAtom = 0;
+                        for (int tmpIndex=this.connections.getDegree(tmpIndexNeighbouringAtom)-1; tmpIndex>=0; tmpIndex--) {
+                            /*
+                            Loop to access all tmpIndexNextNeighbouringAtom (neighbouring atoms to the neighbouring atom
+                            of tmpIndexCurrentAtom).
+                             */
+                            tmpIndexNextNeighbouringAtom = this.connections.getNeighbour(tmpIndexNeighbouringAtom, tmpIndex);
+                            this.connections.removeEdge(tmpIndexNextNeighbouringAtom, tmpIndexNeighbouringAtom);
+                            if (!tmpIsRingNotRingLinker && (this.ringAtoms.get(tmpIndexNeighbouringAtom) ||
+                                    this.ringAtoms.get(tmpIndexNextNeighbouringAtom) &&
+                                            (this.ringAtoms.get(tmpIndexCurrentAtom) ||
+                                                    this.ringAtoms.get(tmpIndexNeighbouringAtom)))) {
+                                /*
+                                If tmpIndexNeighbouringAtom or tmpIndexNextNeighbouringAtom is a ring atom while the
+                                current atom type is ring linkers, the current type is changed to ring atoms.
+                                 */
+                                tmpIsRingNotRingLinker = true;
+                            }
+                            if (tmpIndex == 0 && this.connections.getDegree(tmpIndexNeighbouringAtom) == 1 &&
+                                    !this.ringAtoms.get(tmpIndexNeighbouringAtom) &&
+                                    !this.ringAtoms.get(tmpIndexNextNeighbouringAtom)) {
+                                    /*
+                                    If both, the tmpIndexNeighbouringAtom and the tmpIndexNextNeighbouringAtom are ring
+                                    linkers and not branched, the current branch ends with the tmpIndexNeighbouringAtom
+                                    and the tmpIndexNextNeighbouringAtom is added to tmpFragmentStarter
+                                     */
+                                this.connections.clearNeighbours(tmpIndexCurrentAtom);
+                                tmpFragmentStarter.addLast(tmpIndexNextNeighbouringAtom);
+                                this.connections.removeEdge(tmpIndexNextNeighbouringAtom, tmpIndexNeighbouringAtom);
+                                tmpChains.addAtom(tmpIndexNeighbouringAtom);
+                                tmpIsInCurrentChain[tmpIndexNeighbouringAtom] = true;
+                                if (!tmpIsRingNotRingLinker) {
+                                    clearFlags(tmpIsInCurrentChain, tmpChains, tmpChains.size());
+                                    tmpChains.closeSequence();
+                                }
+                            } else if (tmpIndex == 0 && this.connections.getDegree(tmpIndexNeighbouringAtom) == 1 &&
+                                    !this.ringAtoms.get(tmpIndexCurrentAtom) &&
+                                    !this.ringAtoms.get(tmpIndexNeighbouringAtom)) {
+                                this.connections.clearNeighbours(tmpIndexCurrentAtom);
+                                tmpFragmentStarter.addLast(tmpIndexNeighbouringAtom);
+                                if (!tmpIsRingNotRingLinker) {
+                                    clearFlags(tmpIsInCurrentChain, tmpChains, tmpChains.size());
+                                    tmpChains.closeSequence();
+                                }
+                            } else if (tmpIndex > 0) {
+                                tmpBranchStarter.addLast(tmpIndexNextNeighbouringAtom);
+                            } else {
+                                this.connections.removeEdge(tmpIndexNeighbouringAtom, tmpIndexCurrentAtom);
+                                tmpChains.addAtom(tmpIndexNeighbouringAtom);
+                                tmpIsInCurrentChain[tmpIndexNeighbouringAtom] = true;
+                                this.connections.clearNeighbours(tmpIndexCurrentAtom);
+                                tmpIndexCurrentAtom = tmpIndexNeighbouringAtom;
+                                tmpIndexNeighbouringAtom = tmpIndexNextNeighbouringAtom;
+                            }
+                        }
+                        if (this.connections.getDegree(tmpIndexNeighbouringAtom) == 0) {
+                            tmpChains.addAtom(tmpIndexNeighbouringAtom);
+                            tmpIsInCurrentChain[tmpIndexNeighbouringAtom] = true;
+                            this.connections.clearNeighbours(tmpIndexCurrentAtom);
+                        }
+                    }
+                } else {
+                    /*
+                    The first neighbouring atom that is of the same kind as the current atom (both ring or both
+                    ring linker atoms) is added to the current chain. All other neighbouring atoms of the same
+                    kind are added to tmpBranchStarter. Those neighbouring atoms that are of the other kind are added to
+                    the tmpFragmentStarter list.
+                     */
+
+                    tmpHasSameKindNeighbour = false;
+                    while (this.connections.getDegree(tmpIndexCurrentAtom) > 0) {
+                        checkTimeLimit();
+                        /*
+                        This loop continues until the algorithm arrives at an earlier atom again. Then it starts again
+                        with a new branch or a fragment starter (outer loops).
+                         */
+                        for (int tmpSlot = this.connections.getSlotStart(tmpIndexCurrentAtom);
+                             tmpSlot < this.connections.getSlotEnd(tmpIndexCurrentAtom); tmpSlot++) {
+                            /*
+                            In order to sort the atoms into rings and ring linkers, the method iterates through each of
+                            the neighbours of every atom.
+                             */
+                            if (this.connections.isRemoved(tmpSlot)) {
+                                continue;
+                            }
+                            int tmpNeighbouringAtom = this.connections.getNeighbourAt(tmpSlot);
+                            if ((this.ringAtoms.get(tmpNeighbouringAtom) == tmpIsRingNotRingLinker ||
+                                    !this.ringAtoms.get(tmpNeighbouringAtom) == !tmpIsRingNotRingLinker)
+                                    && !tmpHasSameKindNeighbour) {
+                                /*
+                                If the neighbour is the first atom of the same type (ring or ring linker), it is added
+                                to the current chain.
+                                 */
+                                tmpChains.addAtom(tmpNeighbouringAtom);
+                                tmpIsInCurrentChain[tmpNeighbouringAtom] = true;
+                                tmpHasSameKindNeighbour = true;
+                            } else if (this.ringAtoms.get(tmpNeighbouringAtom) == tmpIsRingNotRingLinker
+                                    && tmpHasSameKindNeighbour) {
+                                /*
+                                All other neighbours of the same type are added to the tmpBranchStarter list to be added
+                                to the current fragment later on.
+                                 */
+                                tmpBranchStarter.addLast(tmpNeighbouringAtom);
+                            } else if (this.ringAtoms.get(tmpNeighbouringAtom) != tmpIsRingNotRingLinker) {
+                                /*
+                                All neighbouring atoms of another type are added to the tmpFragmentStarter list to
+                                become their own fragments later on.
+                                 */
+                                tmpFragmentStarter.addLast(tmpNeighbouringAtom);
+                            }
+                            if (tmpIsRingNotRingLinker || !tmpHasSameKindNeighbour) {
+                                /*
+                                To make sure that the current chain does not go back to previous atoms, the
+                                tmpIndexCurrentAtom is removed from the tmpNeighbouringAtom.
+                                 */
+                                this.connections.removeEdge(tmpNeighbouringAtom, tmpIndexCurrentAtom);
+                            }
+                        }
+                        /*
+                        After all neighbouring atoms were placed in their respective list, the neighbours' list of the
+                        tmpIndexCurrentAtom is cleared.
+                         */
+                        this.connections.clearNeighbours(tmpIndexCurrentAtom);
+                        if (tmpHasSameKindNeighbour) {
+                            /*
+                            If the tmpIndexCurrentAtom has at least one neighbour of the same type, the next
+                            tmpIndexCurrentAtom is the neighbouring atom, which was recently added to the current chain.
+                             */
+                            tmpIndexCurrentAtom = tmpChains.getAtom(tmpChains.size(),
+                                    tmpChains.getSize(tmpChains.size())-1);
+                            tmpHasSameKindNeighbour = false;
+                        } else if (!tmpHasSameKindNeighbour && !tmpBranchStarter.isEmpty()) {
+                            /*
+                            If all neighbouring atoms were of the other type, and if the tmpBranchStarter list is not
+                            empty, the first atom in the list becomes the tmpIndexCurrentAtom.
+                             */
+                            tmpIndexCurrentAtom = tmpBranchStarter.peekFirst();
+                            if (tmpIsInCurrentChain[tmpIndexCurrentAtom]) {
+                                tmpBranchStarter.pollFirst();
+                            }
+                        } else if (!tmpHasSameKindNeighbour && !tmpFragmentStarter.isEmpty()) {
+                            /*
+                            If all neighbouring atoms were of the other type, and if the tmpBranchStarter list is empty,
+                            but not tmpFragmentStarter, the first atom in the list becomes the tmpIndexCurrentAtom.
+                             */
+                            tmpIndexCurrentAtom = tmpFragmentStarter.peekFirst();
+                            if (tmpIsInCurrentChain[tmpIndexCurrentAtom]) {
+                                tmpFragmentStarter.pollFirst();
+                            }
+                        }
+                    }
+                }
+            }
+            if (tmpIsRingNotRingLinker) {
+                /*
+                If the current atom type is ring atom the fragment will not be further broken down and it is added to
+                the this.fragmentsIndices list.
+                 */
+                this.fragmentsIndices.addAtoms(tmpChains, tmpChains.size(), 0, tmpChains.getSize(tmpChains.size()),
+                        false);
+                this.fragmentsIndices.closeSequence();
+                this.ringClusterCount++;
+            } else {
+                /*
+                Ring Linker fragments are first separated into individual branches in cutBranches and cut in the desired
+                size in cutChains.
+                 */
+                this.restrictedConnections = this.connections.restrictTo(tmpChains, tmpChains.size(),
+                        this.restrictedConnections);
+                cutBranches(this.restrictedConnections);
+                cutChains();
+            }
+            clearFlags(tmpIsInCurrentChain, tmpChains, tmpChains.size());
+            tmpChains.clearOpenSequence();
+        }
+        /*
+        The last part of this method is only used when tmpIsPreservingTertiaryQuaternaryCarbon is enabled. It iterates
+        through the collected chains and looks for those fragments that belong together by checking if the neighbouring
+        atom of the last atom in the fragment list is also contained in another fragment list.
+         */
+        if (tmpChains.size() > 0) {
+            mergeRingLinkerFragments(tmpChains);
+        }
+    }
+
+    /**
+     * Merges the ring linker fragments that cutRings collected while preserving tertiary and quaternary carbon atoms
+     * and dissects each merged fragment with cutBranches and cutChains. Starting with the first remaining fragment, the
+     * remaining fragments are scanned in list order again and again until a scan does not change anything. A fragment
+     * is merged if the first neighbour of its last atom is already merged, or if it contains the first neighbour of
+     * the last merged atom. Instead of evaluating this for every fragment in every scan, the scans are replayed via
+     * indices: the first condition stays true once it holds, so the fragments are queued as soon as their neighbour is
+     * merged, and the fragments containing an atom are looked up directly. This keeps the merging near-linear in the
+     * number of fragments while giving exactly the fragments and atom order of the repeated scans.
+     * @param aFragments Ring linker fragments in the order in which they were found, as closed sequences.
+     * @throws IllegalStateException if one of several fragments is empty, because it has no last atom to be merged
+     * by.
+     */
+    private void mergeRingLinkerFragments(AtomSequenceList aFragments) {
+        int tmpFragmentCount = aFragments.size();
+        int tmpAtomCount = this.molecule.getAtomCount();
+        int tmpEntryCount = 0;
+        for (int tmpFragmentIndex = 0; tmpFragmentIndex < tmpFragmentCount; tmpFragmentIndex++) {
+            int tmpFragmentSize = aFragments.getSize(tmpFragmentIndex);
+            if (tmpFragmentSize == 0 && tmpFragmentCount > 1) {
+                throw new IllegalStateException("Ring linker fragment " + tmpFragmentIndex + " of " + tmpFragmentCount
+                        + " is empty and cannot be merged");
+            }
+            tmpEntryCount += tmpFragmentSize;
+        }
+        /*
+        The first neighbour of the last atom of each fragment is its target atom. For every atom, the fragments that
+        target it and the fragments that contain it are kept in linked lists stored in int arrays.
+         */
+        int[] tmpFirstTargetingFragment = new int[tmpAtomCount];
+        int[] tmpNextTargetingFragment = new int[tmpFragmentCount];
+        int[] tmpFirstContainingEntry = new int[tmpAtomCount];
+        int[] tmpNextContainingEntry = new int[tmpEntryCount];
+        int[] tmpEntryFragment = new int[tmpEntryCount];
+        Arrays.fill(tmpFirstTargetingFragment, -1);
+        Arrays.fill(tmpFirstContainingEntry, -1);
+        int tmpEntry = 0;
+        for (int tmpFragmentIndex = 0; tmpFragmentIndex < tmpFragmentCount; tmpFragmentIndex++) {
+            int tmpFragmentSize = aFragments.getSize(tmpFragmentIndex);
+            for (int tmpPosition = 0; tmpPosition < tmpFragmentSize; tmpPosition++) {
+                int tmpAtomIndex = aFragments.getAtom(tmpFragmentIndex, tmpPosition);
+                tmpEntryFragment[tmpEntry] = tmpFragmentIndex;
+                tmpNextContainingEntry[tmpEntry] = tmpFirstContainingEntry[tmpAtomIndex];
+                tmpFirstContainingEntry[tmpAtomIndex] = tmpEntry++;
+            }
+            tmpNextTargetingFragment[tmpFragmentIndex] = -1;
+            int tmpLastAtom = tmpFragmentSize == 0 ? -1 : aFragments.getAtom(tmpFragmentIndex, tmpFragmentSize - 1);
+            if (tmpLastAtom >= 0 && this.connections.getDegree(tmpLastAtom) > 0) {
+                int tmpTargetAtom = this.connections.getNeighbour(tmpLastAtom, 0);
+                tmpNextTargetingFragment[tmpFragmentIndex] = tmpFirstTargetingFragment[tmpTargetAtom];
+                tmpFirstTargetingFragment[tmpTargetAtom] = tmpFragmentIndex;
+            }
+        }
+        BitSet tmpIsRemaining = new BitSet(tmpFragmentCount);
+        tmpIsRemaining.set(0, tmpFragmentCount);
+        boolean[] tmpIsInMergedFragments = new boolean[tmpAtomCount];
+        /*
+        tmpTargetReachedFragments holds the remaining fragments whose target atom is merged; the next one behind the
+        scan position is found with nextSetBit. The bit behind the last fragment stays set, so that clearing the last
+        queued fragment does not make the BitSet rescan all lower words; nextSetBit returns it when nothing is queued.
+         */
+        BitSet tmpTargetReachedFragments = new BitSet(tmpFragmentCount + 1);
+        tmpTargetReachedFragments.set(tmpFragmentCount);
+        //the atoms of the merged fragments are collected in the open sequence of tmpMergedFragments
+        AtomSequenceList tmpMergedFragments = new AtomSequenceList(tmpEntryCount);
+        for (int tmpLeader = 0; tmpLeader >= 0; tmpLeader = tmpIsRemaining.nextSetBit(tmpLeader + 1)) {
+            tmpIsRemaining.clear(tmpLeader);
+            tmpMergedFragments.clearOpenSequence();
+            tmpMergedFragments.addAtoms(aFragments, tmpLeader, 0, aFragments.getSize(tmpLeader), false);
+            markMerged(tmpMergedFragments, 0, tmpIsInMergedFragments, tmpFirstTargetingFragment,
+                    tmpNextTargetingFragment, tmpIsRemaining, tmpTargetReachedFragments);
+            int tmpScanPosition = tmpLeader;
+            boolean tmpListHasChanged = false;
+            while (true) {
+                checkTimeLimit();
+                int tmpNextFragment = tmpTargetReachedFragments.nextSetBit(tmpScanPosition + 1);
+                if (tmpNextFragment == tmpFragmentCount) {
+                    tmpNextFragment = -1;
+                }
+                int tmpMergedSize = tmpMergedFragments.getSize(0);
+                int tmpLastAtom = tmpMergedSize == 0 ? -1 : tmpMergedFragments.getAtom(0, tmpMergedSize - 1);
+                if (tmpLastAtom >= 0 && this.connections.getDegree(tmpLastAtom) > 0) {
+                    int tmpTargetAtom = this.connections.getNeighbour(tmpLastAtom, 0);
+                    for (int tmpContaining = tmpFirstContainingEntry[tmpTargetAtom]; tmpContaining >= 0;
+                         tmpContaining = tmpNextContainingEntry[tmpContaining]) {
+                        int tmpCandidate = tmpEntryFragment[tmpContaining];
+                        if (tmpCandidate > tmpScanPosition && tmpIsRemaining.get(tmpCandidate)
+                                && (tmpNextFragment < 0 || tmpCandidate < tmpNextFragment)) {
+                            tmpNextFragment = tmpCandidate;
+                        }
+                    }
+                }
+                if (tmpNextFragment < 0) {
+                    if (!tmpListHasChanged) {
+                        break;
+                    }
+                    tmpListHasChanged = false;
+                    tmpScanPosition = tmpLeader;
+                    continue;
+                }
+                tmpMergedFragments.addAtoms(aFragments, tmpNextFragment, 0, aFragments.getSize(tmpNextFragment),
+                        false);
+                tmpIsRemaining.clear(tmpNextFragment);
+                tmpTargetReachedFragments.clear(tmpNextFragment);
+                markMerged(tmpMergedFragments, tmpMergedSize, tmpIsInMergedFragments, tmpFirstTargetingFragment,
+                        tmpNextTargetingFragment, tmpIsRemaining, tmpTargetReachedFragments);
+                tmpScanPosition = tmpNextFragment;
+                tmpListHasChanged = true;
+            }
+            /*
+            The last scan started at the leader and found no queued fragment behind it, and all queued fragments are
+            remaining ones behind the leader, so tmpTargetReachedFragments only holds its end bit again without being
+            cleared.
+             */
+            clearFlags(tmpIsInMergedFragments, tmpMergedFragments, 0);
+            this.restrictedConnections = this.connections.restrictTo(tmpMergedFragments, 0,
+                    this.restrictedConnections);
+            cutBranches(this.restrictedConnections);
+            cutChains();
+        }
+    }
+
+    /**
+     * Marks the atoms of the merged fragments from the given position on as merged and queues the remaining fragments
+     * whose target atom is among them (see mergeRingLinkerFragments).
+     * @param aMergedFragments List whose open sequence holds the atoms of the merged fragments.
+     * @param aStart Position of the first newly merged atom.
+     * @param anIsInMergedFragments Flags of the merged atoms.
+     * @param aFirstTargetingFragment First fragment targeting each atom or -1.
+     * @param aNextTargetingFragment Next fragment with the same target atom or -1.
+     * @param anIsRemaining Bitmask of the fragments that have not been merged yet.
+     * @param aTargetReachedFragments Bitmask of the remaining fragments whose target atom is merged.
+     */
+    private static void markMerged(AtomSequenceList aMergedFragments, int aStart, boolean[] anIsInMergedFragments,
+                                   int[] aFirstTargetingFragment, int[] aNextTargetingFragment, BitSet anIsRemaining,
+                                   BitSet aTargetReachedFragments) {
+        int tmpOpenSequence = aMergedFragments.size();
+        for (int i = aStart; i < aMergedFragments.getSize(tmpOpenSequence); i++) {
+            int tmpAtomIndex = aMergedFragments.getAtom(tmpOpenSequence, i);
+            if (anIsInMergedFragments[tmpAtomIndex]) {
+                continue;
+            }
+            anIsInMergedFragments[tmpAtomIndex] = true;
+            for (int tmpFragment = aFirstTargetingFragment[tmpAtomIndex]; tmpFragment >= 0;
+                 tmpFragment = aNextTargetingFragment[tmpFragment]) {
+                if (anIsRemaining.get(tmpFragment)) {
+                    aTargetReachedFragments.set(tmpFragment);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method cuts linear molecule fragments from the this.branches list into chains of equal length which are
+     * then stored in the this.fragmentsIndices list. It does not cut multiple bonds and 
+     */
+    private void cutChains() {
+        /*
+        The tmpBranchingIndices list is used for the tmpIsPreservingTertiaryQuaternaryCarbon option. It contains the
+        indices of all branching atoms in a chain.
+         */
+        boolean[] tmpBranchingIndices = this.branchingAtoms;
+        int tmpBranchCount = this.branches.size();
+        if (this.branches.getSize(0) > 0) {
+            for (int tmpBranch = 0; tmpBranch < tmpBranchCount; tmpBranch++) {
+                tmpBranchingIndices[this.branches.getAtom(tmpBranch, 0)] = true;
+            }
+        }
+        /*
+        The branches are processed in list order and the whole list is cleared at the end instead of removing each
+        processed branch from the front. The part of the current branch that is still to be cut starts at position
+        tmpItemStart of the branch and has tmpItemSize atoms; positions are given relative to this part.
+         */
+        for (int tmpBranchesIndex = 0; tmpBranchesIndex < tmpBranchCount; tmpBranchesIndex++) {
+            checkTimeLimit();
+            int tmpItemStart = 0;
+            int tmpItemSize = this.branches.getSize(tmpBranchesIndex);
+            int tmpIndex = 1;
+            int tmpBranchRest = 0;
+            /*
+            This while loop uses tmpIndex to iterate through the current branch if it is not the last one in 
+            the this.branches list. The last branch is the longest chain in the molecule. All the others' first 
+            integers are the indices of the atoms where the branches are connected to another molecule chain.
+            If isPreservingTertiaryQuaternaryCarbons is true and/or a multiple bond would be cut, the tmpBranchRest 
+            increases. Later the tmpBranchesRest will be used to remove the part of this branch, which needs be added
+            back to the connected branch.
+             */
+            while (tmpIndex - tmpBranchRest < 2 && tmpIndex < tmpItemSize && tmpBranchesIndex < tmpBranchCount-1) {
+                if (tmpIndex == 1 && isPreservingTertiaryQuaternaryCarbons ||
+                        !this.isSingleBond(this.branches.getAtom(tmpBranchesIndex, tmpBranchRest),
+                                this.branches.getAtom(tmpBranchesIndex, tmpIndex))) {
+                    tmpBranchRest++;
+                }
+                tmpIndex++;
+            }
+            /*
+            If the rest of the current branch (without the part that needs to be added back to the connected branch) is
+            smaller than the minimum chain length (this.minCut) it means the branch is too small so that it will be
+            added to the connected branch completely.
+            If it is big enough though only the first part of the branch will be added back to the connected branch (to
+            preserve tertiary and quaternary carbon atoms and to not split multiple bonds.
+             */
+            if (tmpItemSize - tmpBranchRest <= this.minCut && tmpItemSize - tmpBranchRest > 0) {
+                this.addBranchPart(this.remainder, tmpBranchesIndex, tmpItemStart, tmpItemSize, 0, tmpItemSize, false);
+            } else {
+                if (tmpBranchRest > 0 && tmpBranchesIndex < tmpBranchCount-1) {
+                    this.addBranchPart(this.remainder, tmpBranchesIndex, tmpItemStart, tmpItemSize, 0,
+                            tmpBranchRest+1, false);
+                }
+                if (tmpBranchesIndex < tmpBranchCount-1) {
+                    tmpItemStart += tmpBranchRest+1;
+                    tmpItemSize -= tmpBranchRest+1;
+                }
+                if (this.minCut == 0 && this.maxCut == 0 && tmpItemSize > 0) {
+                    this.addBranchPart(this.fragmentsIndices, tmpBranchesIndex, tmpItemStart, tmpItemSize, 0,
+                            tmpItemSize, false);
+                }
+                /*
+                tmpIndexCutPosition stands for the index of the bond within the current branch. E.g. if it is 3, the
+                third bond will be broken. tmpIndexCutPosition is the index of the next cut position. Because multiple
+                bonds must not be split, there are two variables: tmpShift and tmpShift0. They shift or move the cut
+                for- or backward along the chain.
+                 */
+                int tmpIndexCutPosition;
+                int tmpIndexNextCutPosition;
+                int tmpShift = 0;
+                int tmpShift0 = 0;
+                if (this.maxCut > 0) {
+                    /*
+                    If there is a set maximum chain length (this.maxCut > 0) the following while loop cuts the current
+                    branch into chain fragments of equal length. In case a multiple bond would be cut, the current
+                    fragment will be made smaller to shift the split to the previous bond. If the resulting fragment is
+                    smaller than the minimum chain length the fragment will increase in size instead until the split
+                    will be at a single bond.
+                    All these fragments are then stored into the this.fragmentsIndices list.
+                     */
+                    tmpIndexCutPosition = tmpItemSize;
+                    tmpIndexNextCutPosition = tmpIndexCutPosition-this.maxCut;
+                    while (tmpIndexNextCutPosition + tmpShift >= 0) {
+                        checkTimeLimit();
+                        tmpShift0 = tmpShift;
+                        boolean tmpIsReversedShift = false;
+                        while (tmpIndexNextCutPosition + tmpShift - 1 > 0) {
+                            int tmpAtom = this.getBranchAtom(tmpBranchesIndex, tmpItemStart, tmpItemSize,
+                                    tmpIndexNextCutPosition+tmpShift);
+                            int tmpPreviousAtom = this.getBranchAtom(tmpBranchesIndex, tmpItemStart, tmpItemSize,
+                                    tmpIndexNextCutPosition+tmpShift-1);
+                            /*
+                            The conditions are: Continue as long as 1. tmpIndexNextCutPosition is within the chain
+                            length range, 2. there is a multiple bond between the current and the next atom, or 3. the
+                            current atom is next to a branching when isPreservingTertiaryQuaternaryCarbons is enabled.
+                             */
+                            if (this.isSingleBond(tmpAtom, tmpPreviousAtom)
+                                    && (!isPreservingTertiaryQuaternaryCarbons || !tmpBranchingIndices[tmpAtom]
+                                    && !tmpBranchingIndices[tmpPreviousAtom])) {
+                                break;
+                            }
+                            if (tmpShift - tmpShift0 < this.maxCut - this.minCut && !tmpIsReversedShift) {
+                                tmpShift++;
+                            }
+                            if (tmpShift - tmpShift0 >= this.maxCut - this.minCut && !tmpIsReversedShift) {
+                                tmpIsReversedShift = true;
+                                tmpShift = tmpShift0;
+                            }
+                            if (tmpIsReversedShift) {
+                                tmpShift--;
+                            }
+                        }
+                        /*
+                        After having determined the right tmpShift value, the embedded fragment piece is added to the
+                        this.fragmentsIndices list.
+                         */
+                        this.addBranchPart(this.fragmentsIndices, tmpBranchesIndex, tmpItemStart, tmpItemSize,
+                                tmpIndexNextCutPosition+tmpShift, tmpIndexCutPosition+tmpShift0, false);
+                        tmpIndexCutPosition -= this.maxCut;
+                        tmpIndexNextCutPosition -= this.maxCut;
+                    }
+                    /*
+                    If the chain cannot be divided evenly without a remainder, what is left is either also added to
+                    this.fragmentsIndices or to this.remainders if it is smaller than this.minCut.
+                     */
+                    if (tmpIndexCutPosition+tmpShift % this.maxCut != 0) {
+                        if (tmpIndexCutPosition+tmpShift >= this.minCut) {
+                            this.addBranchPart(this.fragmentsIndices, tmpBranchesIndex, tmpItemStart, tmpItemSize, 0,
+                                    tmpIndexCutPosition + tmpShift, false);
+                        } else {
+                            this.addBranchPart(this.remainder, tmpBranchesIndex, tmpItemStart, tmpItemSize, 0,
+                                    tmpIndexCutPosition + tmpShift + 1, true);
+                        }
+                    }
+                } else if (this.maxCut == 0 && this.minCut > 0) {
+                    /*
+                    If there is only a this.minCut, the whole tmpShift finding process becomes simpler. It only shifts
+                    into one direction. But otherwise this part of the method is the same as for the this.maxCut part.
+                     */
+                    tmpIndexCutPosition = tmpItemSize;
+                    tmpIndexNextCutPosition = tmpIndexCutPosition-this.minCut;
+                    while (tmpIndexNextCutPosition + tmpShift >= 0) {
+                        checkTimeLimit();
+                        tmpShift0 = tmpShift;
+                        while (tmpIndexNextCutPosition + tmpShift - 1 > 0 && (!this.isSingleBond(
+                                this.getBranchAtom(tmpBranchesIndex, tmpItemStart, tmpItemSize,
+                                        tmpIndexNextCutPosition + tmpShift),
+                                this.getBranchAtom(tmpBranchesIndex, tmpItemStart, tmpItemSize,
+                                        tmpIndexNextCutPosition + tmpShift - 1))
+                                || tmpBranchingIndices[this.getBranchAtom(tmpBranchesIndex, tmpItemStart,
+                                        tmpItemSize, tmpIndexNextCutPosition)]
+                                && isPreservingTertiaryQuaternaryCarbons)) {
+                            tmpShift--;
+                        }
+                        this.addBranchPart(this.fragmentsIndices, tmpBranchesIndex, tmpItemStart, tmpItemSize,
+                                tmpIndexNextCutPosition+tmpShift, tmpIndexCutPosition+tmpShift0, false);
+                        tmpIndexCutPosition -= this.minCut;
+                        tmpIndexNextCutPosition -= this.minCut;
+                    }
+                    if (tmpIndexCutPosition+tmpShift % this.minCut != 0) {
+                        if (tmpIndexCutPosition+tmpShift >= this.minCut) {
+                            this.addBranchPart(this.fragmentsIndices, tmpBranchesIndex, tmpItemStart, tmpItemSize, 0,
+                                    tmpIndexCutPosition + tmpShift, false);
+                        } else {
+                            this.addBranchPart(this.remainder, tmpBranchesIndex, tmpItemStart, tmpItemSize, 0,
+                                    tmpIndexCutPosition + tmpShift + 1, true);
+                        }
+                    }
+                }
+            }
+        }
+        for (int tmpBranch = 0; tmpBranch < tmpBranchCount; tmpBranch++) {
+            if (this.branches.getSize(tmpBranch) > 0) {
+                tmpBranchingIndices[this.branches.getAtom(tmpBranch, 0)] = false;
+            }
+        }
+        this.branches.clear();
+    }
+
+    /**
+     * Returns the atom at a position of the part of a branch that cutChains is still cutting. The position is checked
+     * against the part, not against the whole branch.
+     * @param aBranch Index of the branch in this.branches.
+     * @param aStart Position of the part in the branch.
+     * @param aSize Number of atoms of the part.
+     * @param aPosition Position in the part.
+     * @return Atom index.
+     * @throws IndexOutOfBoundsException if aPosition is not a position of the part.
+     */
+    private int getBranchAtom(int aBranch, int aStart, int aSize, int aPosition) {
+        if (aPosition < 0 || aPosition >= aSize) {
+            throw new IndexOutOfBoundsException("Index " + aPosition + " out of bounds for length " + aSize);
+        }
+        return this.branches.getAtom(aBranch, aStart + aPosition);
+    }
+
+    /**
+     * Adds a range of the part of a branch that cutChains is still cutting as new sequence to a list of fragments or
+     * remainders. The range is checked against the part, not against the whole branch.
+     * @param aTarget List to add the range to.
+     * @param aBranch Index of the branch in this.branches.
+     * @param aStart Position of the part in the branch.
+     * @param aSize Number of atoms of the part.
+     * @param aFrom First position of the range in the part (inclusive).
+     * @param aTo Last position of the range in the part (exclusive).
+     * @param anIsReversed Whether to add the range from its last to its first atom.
+     * @throws IndexOutOfBoundsException if the range exceeds the part.
+     * @throws IllegalArgumentException if aFrom is greater than aTo.
+     */
+    private void addBranchPart(AtomSequenceList aTarget, int aBranch, int aStart, int aSize, int aFrom, int aTo,
+                               boolean anIsReversed) {
+        if (aFrom < 0 || aTo > aSize) {
+            throw new IndexOutOfBoundsException("Range [" + aFrom + ", " + aTo + ") out of bounds for length " + aSize);
+        }
+        if (aFrom > aTo) {
+            throw new IllegalArgumentException("From index " + aFrom + " > to index " + aTo);
+        }
+        aTarget.addAtoms(this.branches, aBranch, aStart + aFrom, aStart + aTo, anIsReversed);
+        aTarget.closeSequence();
+    }
+
+    /**
+     * During cutBranches all branches are separated from each other, but in order to preserve certain properties
+     * through the fragmentation process the methods cutRings and cutChains produce rest fragments that need to be
+     * added back to other branches, which is done by makeCorrections.
+     * Every remainder fragment also contains the index of its connecting atom in the adjacent branch.
+     * <p>
+     * The fragments are visited in a queue. A visited fragment takes over the first remainder (in the order of the
+     * remainder list) whose connecting atom it contains and is then queued again, because the atoms it just received
+     * may connect further remainders. The remainders connected to each fragment are looked up via an index from
+     * connecting atoms to remainders, and the remainders taken over by each fragment are only recorded. Finally, the
+     * fragments are assembled in the order in which they were last changed, so the result is the same as that of
+     * repeatedly scanning all fragments against all remainders.
+     * @throws IllegalStateException if a remainder is empty or cannot be connected to any fragment.
+     */
+    private void makeCorrections () {
+        int tmpRemainderCount = this.remainder.size();
+        if (tmpRemainderCount == 0) {
+            return;
+        }
+        /*
+        For every atom, the remainders connected to it form a linked list in the order of the remainder list. Empty
+        remainders have no connecting atom, so reaching one in the order of the remainder list is an error.
+         */
+        int[] tmpFirstRemainderAtAtom = new int[this.molecule.getAtomCount()];
+        Arrays.fill(tmpFirstRemainderAtAtom, -1);
+        int[] tmpNextRemainderAtAtom = new int[tmpRemainderCount];
+        int tmpFirstEmptyRemainder = tmpRemainderCount;
+        for (int tmpRestIndex = tmpRemainderCount - 1; tmpRestIndex >= 0; tmpRestIndex--) {
+            if (this.remainder.getSize(tmpRestIndex) == 0) {
+                tmpFirstEmptyRemainder = tmpRestIndex;
+                continue;
+            }
+            int tmpConnectingAtom = this.remainder.getAtom(tmpRestIndex, 0);
+            tmpNextRemainderAtAtom[tmpRestIndex] = tmpFirstRemainderAtAtom[tmpConnectingAtom];
+            tmpFirstRemainderAtAtom[tmpConnectingAtom] = tmpRestIndex;
+        }
+        /*
+        tmpCandidates holds for each fragment the indices of all remainders connected to one of its atoms in a min-heap,
+        or null as long as there are none. Remainders taken over by another fragment are skipped when they come up.
+         */
+        int tmpFragmentCount = this.fragmentsIndices.size();
+        IntHeap[] tmpCandidates = new IntHeap[tmpFragmentCount];
+        IntQueue tmpVisitQueue = new IntQueue(tmpFragmentCount + tmpRemainderCount);
+        for (int tmpFragmentIndex = 0; tmpFragmentIndex < tmpFragmentCount; tmpFragmentIndex++) {
+            addRemainders(this.fragmentsIndices, tmpFragmentIndex, 0, tmpFirstRemainderAtAtom, tmpNextRemainderAtAtom,
+                    tmpCandidates, tmpFragmentIndex);
+            tmpVisitQueue.addLast(tmpFragmentIndex);
+        }
+        BitSet tmpIsAttached = new BitSet(tmpRemainderCount);
+        /*
+        The remainders taken over by each fragment form a linked list in the order in which they were taken over.
+        Every change of a fragment takes over one remainder, so tmpChangedFragments cannot hold more entries than
+        there are remainders.
+         */
+        int[] tmpFirstAttached = new int[tmpFragmentCount];
+        int[] tmpLastAttached = new int[tmpFragmentCount];
+        int[] tmpNextAttached = new int[tmpRemainderCount];
+        Arrays.fill(tmpFirstAttached, -1);
+        int[] tmpChangedFragments = new int[tmpRemainderCount];
+        int tmpChangeCount = 0;
+        while (!tmpVisitQueue.isEmpty()) {
+            checkTimeLimit();
+            int tmpFragmentIndex = tmpVisitQueue.pollFirst();
+            IntHeap tmpFragmentCandidates = tmpCandidates[tmpFragmentIndex];
+            while (tmpFragmentCandidates != null && !tmpFragmentCandidates.isEmpty()
+                    && tmpIsAttached.get(tmpFragmentCandidates.peek())) {
+                tmpFragmentCandidates.poll();
+            }
+            int tmpRestIndex = tmpFragmentCandidates == null || tmpFragmentCandidates.isEmpty() ? tmpRemainderCount
+                    : tmpFragmentCandidates.poll();
+            if (tmpRestIndex > tmpFirstEmptyRemainder) {
+                throw new IllegalStateException("Fragment remainder " + tmpFirstEmptyRemainder
+                        + " is empty and cannot be connected to any fragment");
+            }
+            if (tmpRestIndex == tmpRemainderCount) {
+                continue;
+            }
+            if (tmpFirstAttached[tmpFragmentIndex] < 0) {
+                tmpFirstAttached[tmpFragmentIndex] = tmpRestIndex;
+            } else {
+                tmpNextAttached[tmpLastAttached[tmpFragmentIndex]] = tmpRestIndex;
+            }
+            tmpLastAttached[tmpFragmentIndex] = tmpRestIndex;
+            tmpNextAttached[tmpRestIndex] = -1;
+            tmpIsAttached.set(tmpRestIndex);
+            addRemainders(this.remainder, tmpRestIndex, 1, tmpFirstRemainderAtAtom, tmpNextRemainderAtAtom,
+                    tmpCandidates, tmpFragmentIndex);
+            tmpChangedFragments[tmpChangeCount++] = tmpFragmentIndex;
+            tmpVisitQueue.addLast(tmpFragmentIndex);
+        }
+        int tmpAttachedCount = tmpIsAttached.cardinality();
+        if (tmpAttachedCount < tmpRemainderCount) {
+            int tmpRestIndex = tmpIsAttached.nextClearBit(0);
+            if (tmpRestIndex == tmpFirstEmptyRemainder) {
+                throw new IllegalStateException("Fragment remainder " + tmpFirstEmptyRemainder
+                        + " is empty and cannot be connected to any fragment");
+            }
+            throw new IllegalStateException("Fragment remainder at atom " + this.remainder.getAtom(tmpRestIndex, 0)
+                    + " cannot be connected to any fragment");
+        }
+        this.mergedRemainderCount = tmpAttachedCount;
+        /*
+        Unchanged fragments keep their positions at the front, changed fragments follow in the order of their last
+        change, each followed by the atoms of its remainders without their connecting atoms.
+         */
+        int[] tmpLastChange = new int[tmpFragmentCount];
+        Arrays.fill(tmpLastChange, -1);
+        for (int i = 0; i < tmpChangeCount; i++) {
+            tmpLastChange[tmpChangedFragments[i]] = i;
+        }
+        AtomSequenceList tmpOrderedFragments = new AtomSequenceList(this.molecule.getAtomCount());
+        for (int tmpFragmentIndex = 0; tmpFragmentIndex < tmpFragmentCount; tmpFragmentIndex++) {
+            if (tmpLastChange[tmpFragmentIndex] < 0) {
+                tmpOrderedFragments.addAtoms(this.fragmentsIndices, tmpFragmentIndex, 0,
+                        this.fragmentsIndices.getSize(tmpFragmentIndex), false);
+                tmpOrderedFragments.closeSequence();
+            }
+        }
+        for (int i = 0; i < tmpChangeCount; i++) {
+            int tmpFragmentIndex = tmpChangedFragments[i];
+            if (tmpLastChange[tmpFragmentIndex] == i) {
+                tmpOrderedFragments.addAtoms(this.fragmentsIndices, tmpFragmentIndex, 0,
+                        this.fragmentsIndices.getSize(tmpFragmentIndex), false);
+                for (int tmpRestIndex = tmpFirstAttached[tmpFragmentIndex]; tmpRestIndex >= 0;
+                     tmpRestIndex = tmpNextAttached[tmpRestIndex]) {
+                    tmpOrderedFragments.addAtoms(this.remainder, tmpRestIndex, 1,
+                            this.remainder.getSize(tmpRestIndex), false);
+                }
+                tmpOrderedFragments.closeSequence();
+            }
+        }
+        this.fragmentsIndices = tmpOrderedFragments;
+        this.remainder.clear();
+    }
+
+    /**
+     * Adds the indices of all remainders connected to the atoms of a sequence to the candidate heap of a fragment of
+     * makeCorrections.
+     * @param anAtomSequences List holding the sequence.
+     * @param aSequence Index of the sequence.
+     * @param aStart Position of the first atom in the sequence to consider.
+     * @param aFirstRemainderAtAtom Index of the first remainder connected to each atom or -1.
+     * @param aNextRemainderAtAtom Index of the next remainder connected to the same atom or -1.
+     * @param aCandidates Candidate heap of each fragment or null; a missing heap is created.
+     * @param aFragment Index of the fragment whose candidate heap receives the remainder indices.
+     */
+    private static void addRemainders(AtomSequenceList anAtomSequences, int aSequence, int aStart,
+                                      int[] aFirstRemainderAtAtom, int[] aNextRemainderAtAtom, IntHeap[] aCandidates,
+                                      int aFragment) {
+        for (int i = aStart; i < anAtomSequences.getSize(aSequence); i++) {
+            for (int tmpRestIndex = aFirstRemainderAtAtom[anAtomSequences.getAtom(aSequence, i)]; tmpRestIndex >= 0;
+                 tmpRestIndex = aNextRemainderAtAtom[tmpRestIndex]) {
+                if (aCandidates[aFragment] == null) {
+                    aCandidates[aFragment] = new IntHeap(4);
+                }
+                aCandidates[aFragment].add(tmpRestIndex);
+            }
+        }
+    }
+
+    /**
+     * Checks whether two atoms are connected by a single bond, using the bond order table of this.connections instead
+     * of searching the bond in the IAtomContainer.
+     * @param anAtomIndex Index of the first atom.
+     * @param aNeighbourIndex Index of the second atom.
+     * @return True if the bond between the atoms is a single bond.
+     * @throws IllegalStateException if the atoms are not bonded.
+     */
+    private boolean isSingleBond(int anAtomIndex, int aNeighbourIndex) {
+        int tmpOrder = this.connections.getBondOrder(anAtomIndex, aNeighbourIndex);
+        if (tmpOrder < 0) {
+            throw new IllegalStateException("Atoms " + anAtomIndex + " and " + aNeighbourIndex + " are not bonded");
+        }
+        return tmpOrder == 1;
+    }
+
+    /**
+     * Resets the flags of the atom indices of a sequence, which is cheaper than resetting the whole array for short
+     * sequences.
+     * @param aFlags Array of atom flags to change.
+     * @param anAtomSequences List holding the sequence.
+     * @param aSequence Index of the sequence, anAtomSequences.size() for its open sequence.
+     */
+    private static void clearFlags(boolean[] aFlags, AtomSequenceList anAtomSequences, int aSequence) {
+        for (int i = 0; i < anAtomSequences.getSize(aSequence); i++) {
+            aFlags[anAtomSequences.getAtom(aSequence, i)] = false;
+        }
+    }
+
+    /**
+     * This method converts lists of atom indices into IAtomContainer objects. Because during the fragmentation
+     * algorithm only atom indices are used, the lists of fragments consisting of indices need to be converted back into
+     * IAtomContainer objects. Because bonds are broken during the fragmentation, the fragments also need to be
+     * saturated with hydrogen atoms. The conversion itself is carried out by FragmentContainerFactory in time linear in
+     * the size of the molecule and the fragments.
+     * @param aPartition FragmentPartition object containing the atom indices of fragment molecules of the molecule to
+     *                   be fragmented.
+     * @throws CDKException Is triggered when saturating fragment molecules with hydrogen where bonds were split.
+     */
+    private void genAtomContainer(FragmentPartition aPartition) throws CDKException {
+        this.fragmentsAtomContainer = FragmentationProcess.createAtomContainers(this.molecule, aPartition,
+                this.listener);
+    }
+    //</editor-fold>
+    //<editor-fold desc="nested classes">
+    /**
+     * Holder of the thread bean used to measure the allocation of the phases for the listener. The class is only
+     * initialized when getAllocatedBytes is first called, so fragmentations without listener never touch the
+     * management API. The JVM setting whether thread allocation is measured is left as it is; when it is disabled, the
+     * listener receives -1.
+     */
+    private static final class AllocationBeanHolder {
+        /**
+         * Thread bean of the JVM or null if it is not available or cannot measure the allocation of threads.
+         */
+        private static final com.sun.management.ThreadMXBean BEAN = AllocationBeanHolder.lookUpBean();
+
+        /**
+         * Returns the thread bean of the JVM if it can measure the allocation of threads. Failures of the lookup,
+         * e.g. a SecurityException, are treated like a missing bean.
+         * @return ThreadMXBean object or null.
+         */
+        private static com.sun.management.ThreadMXBean lookUpBean() {
+            try {
+                java.lang.management.ThreadMXBean tmpBean = ManagementFactory.getThreadMXBean();
+                if (tmpBean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) tmpBean).isThreadAllocatedMemorySupported()) {
+                    return (com.sun.management.ThreadMXBean) tmpBean;
+                }
+            } catch (SecurityException | UnsupportedOperationException | LinkageError anException) {
+                return null;
+            }
+            return null;
+        }
+    }
+    //</editor-fold>
+}
\ No newline at end of file
@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of the fragmentation of one molecule. It holds the fragments both as lists of atom indices of the
+ * fragmented molecule and as IAtomContainer objects, together with the settings that were used. Batch fragmentations
+ * do not stop at molecules that cannot be fragmented; for those, a result without fragments is created that carries
+ * the exception instead (see isSuccessful).
+ */
+public final class FragmentationResult {
+    //<editor-fold desc="result data">
+    /**
+     * The fragmented molecule.
+     */
+    private final IAtomContainer molecule;
+    /**
+     * Settings that were used for the fragmentation.
+     */
+    private final FragmentationSettings settings;
+    /**
+     * Atom indices of all fragments.
+     */
+    private final FragmentPartition partition;
+    /**
+     * Unmodifiable list of the atom indices of each fragment.
+     */
+    private final List<List<Integer>> fragmentsIndices;
+    /**
+     * Unmodifiable list of IAtomContainer objects of the fragments, in the same order as fragmentsIndices.
+     */
+    private final List<IAtomContainer> fragmentsAtomContainer;
+    /**
+     * Exception that was thrown during the fragmentation or null if the fragmentation was successful.
+     */
+    private final Exception exception;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new result. The list of fragment IAtomContainer objects is copied; the atom index lists are built
+     * from the partition, which is kept as it is.
+     * @param aMolecule The fragmented molecule.
+     * @param aSettings Settings that were used for the fragmentation.
+     * @param aPartition Atom indices of each fragment.
+     * @param aFragmentsAtomContainer List of IAtomContainer objects of the fragments.
+     */
+    FragmentationResult(IAtomContainer aMolecule, FragmentationSettings aSettings,
+                        FragmentPartition aPartition, List<IAtomContainer> aFragmentsAtomContainer) {
+        this.molecule = aMolecule;
+        this.settings = aSettings;
+        this.partition = aPartition;
+        List<List<Integer>> tmpFragmentsIndices = new ArrayList<>(aPartition.getFragmentCount());
+        for (int i = 0; i < aPartition.getFragmentCount(); i++) {
+            List<Integer> tmpFragment = new ArrayList<>(aPartition.getFragmentSize(i));
+            for (int j = 0; j < aPartition.getFragmentSize(i); j++) {
+                tmpFragment.add(aPartition.getAtomIndex(i, j));
+            }
+            tmpFragmentsIndices.add(Collections.unmodifiableList(tmpFragment));
+        }
+        this.fragmentsIndices = Collections.unmodifiableList(tmpFragmentsIndices);
+        this.fragmentsAtomContainer = Collections.unmodifiableList(new ArrayList<>(aFragmentsAtomContainer));
+        this.exception = null;
+    }
+
+    /**
+     * Creates a new result for a molecule whose fragmentation failed.
+     * @param aMolecule The molecule that could not be fragmented.
+     * @param aSettings Settings that were used for the fragmentation.
+     * @param anException Exception that was thrown during the fragmentation.
+     */
+    FragmentationResult(IAtomContainer aMolecule, FragmentationSettings aSettings, Exception anException) {
+        this.molecule = aMolecule;
+        this.settings = aSettings;
+        this.partition = new FragmentPartition(new int[1], new int[0]);
+        this.fragmentsIndices = Collections.emptyList();
+        this.fragmentsAtomContainer = Collections.emptyList();
+        this.exception = anException;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the fragmented molecule.
+     * @return IAtomContainer object of the fragmented molecule.
+     */
+    public IAtomContainer getMolecule() {
+        return this.molecule;
+    }
+
+    /**
+     * Returns the settings that were used for the fragmentation.
+     * @return FragmentationSettings object.
+     */
+    public FragmentationSettings getSettings() {
+        return this.settings;
+    }
+
+    /**
+     * Returns whether the molecule could be fragmented.
+     * @return True if the fragmentation was successful, false if getException returns the cause of the failure.
+     */
+    public boolean isSuccessful() {
+        return this.exception == null;
+    }
+
+    /**
+     * Returns the exception that was thrown during the fragmentation.
+     * @return Exception object or null if the fragmentation was successful.
+     */
+    public Exception getException() {
+        return this.exception;
+    }
+
+    /**
+     * Returns whether the fragmentation was cancelled because it exceeded the time limit (see
+     * AlkylFragmenter.setTimeLimit).
+     * @return True if getException returns a FragmentationTimeoutException.
+     */
+    public boolean isTimedOut() {
+        return this.exception instanceof FragmentationTimeoutException;
+    }
+
+    /**
+     * Returns the number of fragments.
+     * @return Number of fragments.
+     */
+    public int getFragmentCount() {
+        return this.fragmentsIndices.size();
+    }
+
+    /**
+     * Returns the atom indices of each fragment in the fragmented molecule.
+     * @return Unmodifiable list of unmodifiable Integer lists.
+     */
+    public List<List<Integer>> getFragmentsIndices() {
+        return this.fragmentsIndices;
+    }
+
+    /**
+     * Returns the atom indices of each fragment as a primitive partition, without boxing.
+     * @return FragmentPartition object, empty if the fragmentation failed.
+     */
+    public FragmentPartition getPartition() {
+        return this.partition;
+    }
+
+    /**
+     * Returns the fragment molecules as IAtomContainer objects.
+     * @return Unmodifiable list of IAtomContainer objects.
+     */
+    public List<IAtomContainer> getIAtomContainer() {
+        return this.fragmentsAtomContainer;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.util.Objects;
+
+/**
+ * Immutable set of user settings for the fragmentation of a molecule by the AlkylFragmenter. Because objects of this
+ * class cannot be changed, the same settings can be shared by any number of threads.
+ */
+public final class FragmentationSettings {
+    //<editor-fold desc="settings">
+    /**
+     * Minimum fragment size.
+     */
+    private final int minCut;
+    /**
+     * Maximum fragment size.
+     */
+    private final int maxCut;
+    /**
+     * Whether tertiary and quaternary carbon atoms are to be preserved during the fragmentation.
+     */
+    private final boolean isPreservingTertiaryQuaternaryCarbons;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new set of fragmentation settings.
+     * @param aMinCut Integer value for the minimal fragment size, 0 for no minimum.
+     * @param aMaxCut Integer value for the maximal fragment size, 0 for no maximum.
+     * @param aIsPreservingTertiaryQuaternaryCarbons Boolean for whether to preserve tertiary and quaternary carbons.
+     * @throws IllegalArgumentException if aMinCut or aMaxCut is negative.
+     */
+    public FragmentationSettings(int aMinCut, int aMaxCut, boolean aIsPreservingTertiaryQuaternaryCarbons) {
+        if (aMinCut < 0 || aMaxCut < 0) {
+            throw new IllegalArgumentException("Fragment sizes must not be negative: minCut=" + aMinCut + ", maxCut="
+                    + aMaxCut);
+        }
+        this.minCut = aMinCut;
+        this.maxCut = aMaxCut;
+        this.isPreservingTertiaryQuaternaryCarbons = aIsPreservingTertiaryQuaternaryCarbons;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the minimum fragment size.
+     * @return Minimum fragment size.
+     */
+    public int getMinCut() {
+        return this.minCut;
+    }
+
+    /**
+     * Returns the maximum fragment size.
+     * @return Maximum fragment size.
+     */
+    public int getMaxCut() {
+        return this.maxCut;
+    }
+
+    /**
+     * Returns whether tertiary and quaternary carbon atoms are preserved.
+     * @return True if tertiary and quaternary carbon atoms keep all their neighbouring atoms.
+     */
+    public boolean isPreservingTertiaryQuaternaryCarbons() {
+        return this.isPreservingTertiaryQuaternaryCarbons;
+    }
+
+    @Override
+    public boolean equals(Object anObject) {
+        if (this == anObject) {
+            return true;
+        }
+        if (!(anObject instanceof FragmentationSettings)) {
+            return false;
+        }
+        FragmentationSettings tmpSettings = (FragmentationSettings) anObject;
+        return this.minCut == tmpSettings.minCut && this.maxCut == tmpSettings.maxCut
+                && this.isPreservingTertiaryQuaternaryCarbons == tmpSettings.isPreservingTertiaryQuaternaryCarbons;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.minCut, this.maxCut, this.isPreservingTertiaryQuaternaryCarbons);
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentationSettings{minCut=" + this.minCut + ", maxCut=" + this.maxCut
+                + ", isPreservingTertiaryQuaternaryCarbons=" + this.isPreservingTertiaryQuaternaryCarbons + "}";
+    }
+    //</editor-fold>
+}
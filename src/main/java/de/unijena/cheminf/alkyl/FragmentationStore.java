@@ -0,0 +1,544 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.CDK;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Persistent store of fragment partitions in a directory on the local disk, so that a FragmentationCache can skip
+ * molecules that were already fragmented in an earlier run (see FragmentationCache(int, FragmentationStore)). The
+ * store consists of two files:
+ * <ul>
+ *     <li>fragments.dat, to which one record per entry is appended: the key (settings, canonical SMILES code and atom
+ *     order of the molecule, see FragmentationCache) followed by the offsets and atom indices of the partition;</li>
+ *     <li>fragments.idx, a memory-mapped open-addressing hash table with the 64-bit hash of each key and the position
+ *     of its record in the data file. It is rebuilt with twice the number of slots when it becomes half full.</li>
+ * </ul>
+ * Both files start with a header holding the file format version, AlkylFragmenter.ALGORITHM_VERSION and a hash of the
+ * CDK version, which determines the canonical SMILES codes. If any of these differ from the running code, or if the
+ * files are damaged, the store is emptied when it is opened. A lock file prevents two processes from opening the same
+ * store. All methods are thread-safe.
+ */
+public final class FragmentationStore implements Closeable {
+    //<editor-fold desc="constants">
+    /**
+     * Name of the data file.
+     */
+    private static final String DATA_FILE_NAME = "fragments.dat";
+    /**
+     * Name of the index file.
+     */
+    private static final String INDEX_FILE_NAME = "fragments.idx";
+    /**
+     * Name of the lock file.
+     */
+    private static final String LOCK_FILE_NAME = "fragments.lock";
+    /**
+     * First four bytes of both files ("ALKF").
+     */
+    private static final int MAGIC = 0x414C4B46;
+    /**
+     * Version of the file format.
+     */
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * Size of the header of the index file in bytes.
+     */
+    private static final int INDEX_HEADER_SIZE = 64;
+    /**
+     * Size of the header of the data file in bytes. Because no record starts at position 0, a slot with record
+     * position 0 is empty.
+     */
+    private static final int DATA_HEADER_SIZE = 16;
+    /**
+     * Size of one index slot in bytes: the hash of the key and the position of the record.
+     */
+    private static final int SLOT_SIZE = 16;
+    /**
+     * Number of index slots of a new store.
+     */
+    private static final int INITIAL_SLOT_COUNT = 1024;
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Directory of the store.
+     */
+    private final Path directory;
+    /**
+     * Hash of the CDK version the store is written with.
+     */
+    private final int cdkVersionHash;
+    /**
+     * Channel of the lock file, open as long as the store is open.
+     */
+    private final FileChannel lockChannel;
+    /**
+     * Lock held on the lock file.
+     */
+    private final FileLock lock;
+    /**
+     * Channel of the data file.
+     */
+    private final FileChannel dataChannel;
+    /**
+     * Mapped index file.
+     */
+    private MappedByteBuffer index;
+    /**
+     * Number of slots of the index, a power of two.
+     */
+    private int slotCount;
+    /**
+     * Number of entries.
+     */
+    private int entryCount;
+    /**
+     * Position after the last record in the data file.
+     */
+    private long dataEnd;
+    /**
+     * Whether close has been called.
+     */
+    private boolean isClosed;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Opens the store in the given directory, creating the directory and the files if necessary. Existing entries
+     * written by another algorithm, file format or CDK version are discarded.
+     * @param aDirectory Directory of the store.
+     * @throws IOException if the files cannot be opened or the store is used by another process.
+     */
+    public FragmentationStore(Path aDirectory) throws IOException {
+        this.directory = aDirectory;
+        this.cdkVersionHash = Objects.hashCode(CDK.getVersion());
+        Files.createDirectories(aDirectory);
+        this.lockChannel = FileChannel.open(aDirectory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock tmpLock;
+        try {
+            tmpLock = this.lockChannel.tryLock();
+        } catch (OverlappingFileLockException anException) {
+            tmpLock = null;
+        }
+        if (tmpLock == null) {
+            this.lockChannel.close();
+            throw new IOException("Fragmentation store " + aDirectory + " is used by another process");
+        }
+        this.lock = tmpLock;
+        this.dataChannel = FileChannel.open(aDirectory.resolve(DATA_FILE_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!this.openIndex()) {
+                this.reset();
+            }
+        } catch (IOException | RuntimeException anException) {
+            this.dataChannel.close();
+            this.lockChannel.close();
+            throw anException;
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the directory of the store.
+     * @return Path of the directory.
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return Number of stored partitions.
+     */
+    public synchronized int size() {
+        return this.entryCount;
+    }
+
+    /**
+     * Looks up the partition stored for a molecule in the given atom order and settings.
+     * @param aCanonicalSmiles Canonical SMILES code of the molecule.
+     * @param anAtomOrder Canonical ranks of the atoms and bond atoms of the molecule (see FragmentationCache).
+     * @param aSettings Fragmentation settings.
+     * @return FragmentPartition object or null if there is no entry.
+     * @throws IOException if the data file cannot be read.
+     */
+    public synchronized FragmentPartition get(String aCanonicalSmiles, int[] anAtomOrder,
+                                              FragmentationSettings aSettings) throws IOException {
+        this.ensureOpen();
+        byte[] tmpKey = FragmentationStore.createKey(aCanonicalSmiles, anAtomOrder, aSettings);
+        long tmpHash = FragmentationStore.hash(tmpKey);
+        int tmpMask = this.slotCount - 1;
+        for (int tmpSlot = (int) tmpHash & tmpMask; ; tmpSlot = (tmpSlot + 1) & tmpMask) {
+            int tmpPosition = INDEX_HEADER_SIZE + tmpSlot * SLOT_SIZE;
+            long tmpRecordPosition = this.index.getLong(tmpPosition + 8);
+            if (tmpRecordPosition == 0) {
+                return null;
+            }
+            if (this.index.getLong(tmpPosition) == tmpHash) {
+                FragmentPartition tmpPartition = this.readRecord(tmpRecordPosition, tmpKey);
+                if (tmpPartition != null) {
+                    return tmpPartition;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the partition of a molecule in the given atom order and settings. Nothing happens if there already is an
+     * entry.
+     * @param aCanonicalSmiles Canonical SMILES code of the molecule.
+     * @param anAtomOrder Canonical ranks of the atoms and bond atoms of the molecule (see FragmentationCache).
+     * @param aSettings Fragmentation settings.
+     * @param aPartition FragmentPartition object.
+     * @throws IOException if the files cannot be written.
+     */
+    public synchronized void put(String aCanonicalSmiles, int[] anAtomOrder, FragmentationSettings aSettings,
+                                 FragmentPartition aPartition) throws IOException {
+        if (this.get(aCanonicalSmiles, anAtomOrder, aSettings) != null) {
+            return;
+        }
+        if ((this.entryCount + 1) * 2 > this.slotCount) {
+            this.rebuildIndex(this.slotCount * 2);
+        }
+        byte[] tmpKey = FragmentationStore.createKey(aCanonicalSmiles, anAtomOrder, aSettings);
+        int[] tmpOffsets = aPartition.getOffsets();
+        int[] tmpAtomIndices = aPartition.getAtomIndices();
+        ByteBuffer tmpRecord = ByteBuffer.allocate(4 + tmpKey.length + 8 + 4 * tmpOffsets.length
+                + 4 * tmpAtomIndices.length);
+        tmpRecord.putInt(tmpKey.length).put(tmpKey).putInt(tmpOffsets.length).putInt(tmpAtomIndices.length);
+        tmpRecord.asIntBuffer().put(tmpOffsets).put(tmpAtomIndices);
+        tmpRecord.clear();
+        long tmpRecordPosition = this.dataEnd;
+        this.writeFully(tmpRecord, tmpRecordPosition);
+        this.dataEnd += tmpRecord.capacity();
+        //the record is written before the slot refers to it; a slot pointing to a lost record reads as a miss
+        this.insertSlot(this.index, this.slotCount, FragmentationStore.hash(tmpKey), tmpRecordPosition);
+        this.entryCount++;
+        this.index.putInt(20, this.entryCount);
+        this.index.putLong(24, this.dataEnd);
+    }
+
+    /**
+     * Removes all entries.
+     * @throws IOException if the files cannot be written.
+     */
+    public synchronized void clear() throws IOException {
+        this.ensureOpen();
+        this.reset();
+    }
+
+    /**
+     * Writes all changes to the disk and closes the files. Further calls of get and put fail.
+     * @throws IOException if the files cannot be written or closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        try {
+            this.index.force();
+            this.dataChannel.force(true);
+        } finally {
+            this.dataChannel.close();
+            this.lock.release();
+            this.lockChannel.close();
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Throws an exception if the store has been closed.
+     * @throws IOException if the store has been closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (this.isClosed) {
+            throw new IOException("Fragmentation store " + this.directory + " is closed");
+        }
+    }
+
+    /**
+     * Maps the existing index file if it and the data file are valid for the running code.
+     * @return True if the index has been mapped, false if the store must be reset.
+     * @throws IOException if the files cannot be read.
+     */
+    private boolean openIndex() throws IOException {
+        Path tmpIndexPath = this.directory.resolve(INDEX_FILE_NAME);
+        if (!Files.exists(tmpIndexPath) || Files.size(tmpIndexPath) < INDEX_HEADER_SIZE
+                || this.dataChannel.size() < DATA_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer tmpDataHeader = ByteBuffer.allocate(DATA_HEADER_SIZE);
+        this.readFully(tmpDataHeader, 0);
+        if (!this.hasValidHeader(tmpDataHeader)) {
+            return false;
+        }
+        try (FileChannel tmpChannel = FileChannel.open(tmpIndexPath, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer tmpIndex = tmpChannel.map(FileChannel.MapMode.READ_WRITE, 0, tmpChannel.size());
+            int tmpSlotCount = tmpIndex.getInt(16);
+            int tmpEntryCount = tmpIndex.getInt(20);
+            long tmpDataEnd = tmpIndex.getLong(24);
+            if (!this.hasValidHeader(tmpIndex) || tmpSlotCount < INITIAL_SLOT_COUNT
+                    || Integer.bitCount(tmpSlotCount) != 1
+                    || tmpChannel.size() != INDEX_HEADER_SIZE + (long) tmpSlotCount * SLOT_SIZE
+                    || tmpEntryCount < 0 || tmpEntryCount * 2L > tmpSlotCount
+                    || tmpDataEnd < DATA_HEADER_SIZE || tmpDataEnd > this.dataChannel.size()) {
+                return false;
+            }
+            this.index = tmpIndex;
+            this.slotCount = tmpSlotCount;
+            this.entryCount = tmpEntryCount;
+            this.dataEnd = tmpDataEnd;
+            return true;
+        }
+    }
+
+    /**
+     * Checks the magic number and the versions at the start of a file header.
+     * @param aHeader Buffer with the header at position 0.
+     * @return True if the header belongs to a store written by the running code.
+     */
+    private boolean hasValidHeader(ByteBuffer aHeader) {
+        return aHeader.getInt(0) == MAGIC && aHeader.getInt(4) == FORMAT_VERSION
+                && aHeader.getInt(8) == AlkylFragmenter.ALGORITHM_VERSION && aHeader.getInt(12) == this.cdkVersionHash;
+    }
+
+    /**
+     * Writes the magic number and the versions at the start of a file header.
+     * @param aHeader Buffer to write the header to at position 0.
+     */
+    private void putHeader(ByteBuffer aHeader) {
+        aHeader.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, AlkylFragmenter.ALGORITHM_VERSION)
+                .putInt(12, this.cdkVersionHash);
+    }
+
+    /**
+     * Empties the data file and creates a new empty index.
+     * @throws IOException if the files cannot be written.
+     */
+    private void reset() throws IOException {
+        this.dataChannel.truncate(0);
+        ByteBuffer tmpDataHeader = ByteBuffer.allocate(DATA_HEADER_SIZE);
+        this.putHeader(tmpDataHeader);
+        this.writeFully(tmpDataHeader, 0);
+        this.dataChannel.force(true);
+        this.dataEnd = DATA_HEADER_SIZE;
+        this.entryCount = 0;
+        this.writeIndex(INITIAL_SLOT_COUNT, new long[0], new long[0]);
+    }
+
+    /**
+     * Replaces the index by one with the given number of slots containing all current entries.
+     * @param aSlotCount New number of slots, a power of two.
+     * @throws IOException if the index file cannot be written.
+     */
+    private void rebuildIndex(int aSlotCount) throws IOException {
+        long[] tmpHashes = new long[this.entryCount];
+        long[] tmpRecordPositions = new long[this.entryCount];
+        int tmpCount = 0;
+        for (int tmpSlot = 0; tmpSlot < this.slotCount; tmpSlot++) {
+            int tmpPosition = INDEX_HEADER_SIZE + tmpSlot * SLOT_SIZE;
+            long tmpRecordPosition = this.index.getLong(tmpPosition + 8);
+            if (tmpRecordPosition != 0) {
+                tmpHashes[tmpCount] = this.index.getLong(tmpPosition);
+                tmpRecordPositions[tmpCount++] = tmpRecordPosition;
+            }
+        }
+        this.writeIndex(aSlotCount, Arrays.copyOf(tmpHashes, tmpCount), Arrays.copyOf(tmpRecordPositions, tmpCount));
+    }
+
+    /**
+     * Writes a new index file next to the current one, replaces the current one with it and maps it. Because the file
+     * is replaced in one step, an interrupted rebuild leaves the old index intact.
+     * @param aSlotCount Number of slots, a power of two.
+     * @param aHashes Key hashes of all entries.
+     * @param aRecordPositions Record positions of all entries.
+     * @throws IOException if the index file cannot be written.
+     */
+    private void writeIndex(int aSlotCount, long[] aHashes, long[] aRecordPositions) throws IOException {
+        Path tmpIndexPath = this.directory.resolve(INDEX_FILE_NAME);
+        Path tmpNewIndexPath = this.directory.resolve(INDEX_FILE_NAME + ".tmp");
+        try (FileChannel tmpChannel = FileChannel.open(tmpNewIndexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer tmpIndex = tmpChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    INDEX_HEADER_SIZE + (long) aSlotCount * SLOT_SIZE);
+            this.putHeader(tmpIndex);
+            tmpIndex.putInt(16, aSlotCount);
+            tmpIndex.putInt(20, aHashes.length);
+            tmpIndex.putLong(24, this.dataEnd);
+            for (int i = 0; i < aHashes.length; i++) {
+                this.insertSlot(tmpIndex, aSlotCount, aHashes[i], aRecordPositions[i]);
+            }
+            tmpIndex.force();
+        }
+        Files.move(tmpNewIndexPath, tmpIndexPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel tmpChannel = FileChannel.open(tmpIndexPath, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            this.index = tmpChannel.map(FileChannel.MapMode.READ_WRITE, 0, tmpChannel.size());
+        }
+        this.slotCount = aSlotCount;
+    }
+
+    /**
+     * Writes an entry into the first free slot of an index, starting at the slot given by the hash.
+     * @param anIndex Mapped index.
+     * @param aSlotCount Number of slots of the index.
+     * @param aHash Hash of the key.
+     * @param aRecordPosition Position of the record in the data file.
+     */
+    private void insertSlot(MappedByteBuffer anIndex, int aSlotCount, long aHash, long aRecordPosition) {
+        int tmpMask = aSlotCount - 1;
+        int tmpSlot = (int) aHash & tmpMask;
+        while (anIndex.getLong(INDEX_HEADER_SIZE + tmpSlot * SLOT_SIZE + 8) != 0) {
+            tmpSlot = (tmpSlot + 1) & tmpMask;
+        }
+        anIndex.putLong(INDEX_HEADER_SIZE + tmpSlot * SLOT_SIZE, aHash);
+        anIndex.putLong(INDEX_HEADER_SIZE + tmpSlot * SLOT_SIZE + 8, aRecordPosition);
+    }
+
+    /**
+     * Reads the record at the given position if it has the given key. Records that do not fit into the data file are
+     * treated as not matching, so that a damaged file never causes wrong results.
+     * @param aRecordPosition Position of the record in the data file.
+     * @param aKey Expected key.
+     * @return FragmentPartition object of the record or null if the key differs or the record is damaged.
+     * @throws IOException if the data file cannot be read.
+     */
+    private FragmentPartition readRecord(long aRecordPosition, byte[] aKey) throws IOException {
+        long tmpHeadSize = 4L + aKey.length + 8;
+        if (aRecordPosition < DATA_HEADER_SIZE || aRecordPosition + tmpHeadSize > this.dataEnd) {
+            return null;
+        }
+        ByteBuffer tmpHead = ByteBuffer.allocate((int) tmpHeadSize);
+        this.readFully(tmpHead, aRecordPosition);
+        if (tmpHead.getInt(0) != aKey.length) {
+            return null;
+        }
+        for (int i = 0; i < aKey.length; i++) {
+            if (tmpHead.get(4 + i) != aKey[i]) {
+                return null;
+            }
+        }
+        int tmpOffsetCount = tmpHead.getInt(4 + aKey.length);
+        int tmpIndexCount = tmpHead.getInt(8 + aKey.length);
+        long tmpBodySize = 4L * tmpOffsetCount + 4L * tmpIndexCount;
+        if (tmpOffsetCount < 1 || tmpIndexCount < 0 || aRecordPosition + tmpHeadSize + tmpBodySize > this.dataEnd) {
+            return null;
+        }
+        ByteBuffer tmpBody = ByteBuffer.allocate((int) tmpBodySize);
+        this.readFully(tmpBody, aRecordPosition + tmpHeadSize);
+        int[] tmpOffsets = new int[tmpOffsetCount];
+        int[] tmpAtomIndices = new int[tmpIndexCount];
+        tmpBody.asIntBuffer().get(tmpOffsets).get(tmpAtomIndices);
+        if (tmpOffsets[0] != 0 || tmpOffsets[tmpOffsetCount - 1] != tmpIndexCount) {
+            return null;
+        }
+        for (int i = 1; i < tmpOffsetCount; i++) {
+            if (tmpOffsets[i] < tmpOffsets[i - 1]) {
+                return null;
+            }
+        }
+        return new FragmentPartition(tmpOffsets, tmpAtomIndices);
+    }
+
+    /**
+     * Reads from the data file until the buffer is full.
+     * @param aBuffer Buffer to fill.
+     * @param aPosition Position in the data file.
+     * @throws IOException if the data file cannot be read or ends before the buffer is full.
+     */
+    private void readFully(ByteBuffer aBuffer, long aPosition) throws IOException {
+        long tmpPosition = aPosition;
+        while (aBuffer.hasRemaining()) {
+            int tmpRead = this.dataChannel.read(aBuffer, tmpPosition);
+            if (tmpRead < 0) {
+                throw new IOException("Unexpected end of " + this.directory.resolve(DATA_FILE_NAME));
+            }
+            tmpPosition += tmpRead;
+        }
+        aBuffer.flip();
+    }
+
+    /**
+     * Writes the whole buffer to the data file.
+     * @param aBuffer Buffer to write.
+     * @param aPosition Position in the data file.
+     * @throws IOException if the data file cannot be written.
+     */
+    private void writeFully(ByteBuffer aBuffer, long aPosition) throws IOException {
+        long tmpPosition = aPosition;
+        while (aBuffer.hasRemaining()) {
+            tmpPosition += this.dataChannel.write(aBuffer, tmpPosition);
+        }
+    }
+
+    /**
+     * Creates the key of an entry: the settings and the canonical SMILES code in UTF-8, followed by the atom order as
+     * big-endian ints.
+     * @param aCanonicalSmiles Canonical SMILES code of the molecule.
+     * @param anAtomOrder Canonical ranks of the atoms and bond atoms of the molecule.
+     * @param aSettings Fragmentation settings.
+     * @return Bytes of the key.
+     */
+    private static byte[] createKey(String aCanonicalSmiles, int[] anAtomOrder, FragmentationSettings aSettings) {
+        byte[] tmpText = (aSettings.getMinCut() + "," + aSettings.getMaxCut() + ","
+                + (aSettings.isPreservingTertiaryQuaternaryCarbons() ? 1 : 0) + " " + aCanonicalSmiles + " ")
+                .getBytes(StandardCharsets.UTF_8);
+        ByteBuffer tmpKey = ByteBuffer.allocate(tmpText.length + 4 * anAtomOrder.length);
+        tmpKey.put(tmpText).asIntBuffer().put(anAtomOrder);
+        return tmpKey.array();
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of a key.
+     * @param aKey Key bytes.
+     * @return Hash value.
+     */
+    private static long hash(byte[] aKey) {
+        long tmpHash = 0xCBF29CE484222325L;
+        for (byte tmpByte : aKey) {
+            tmpHash ^= tmpByte & 0xFF;
+            tmpHash *= 0x100000001B3L;
+        }
+        return tmpHash ^ (tmpHash >>> 32);
+    }
+    //</editor-fold>
+}
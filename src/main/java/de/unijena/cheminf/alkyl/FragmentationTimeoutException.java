@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.time.Duration;
+
+/**
+ * Thrown when the fragmentation of a molecule exceeds the time limit set with AlkylFragmenter.setTimeLimit. The
+ * fragmentation steps check the limit cooperatively, so the exception is thrown shortly after the limit has passed and
+ * the worker thread is free for the next molecule. tryFragment and the batch and file fragmenters report such
+ * molecules as results that are not successful and timed out (see FragmentationResult.isTimedOut).
+ */
+public final class FragmentationTimeoutException extends RuntimeException {
+    //<editor-fold desc="private fields">
+    /**
+     * Exceeded time limit in nanoseconds.
+     */
+    private final long timeLimitNanos;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new exception for the given time limit.
+     * @param aTimeLimitNanos Exceeded time limit in nanoseconds.
+     */
+    FragmentationTimeoutException(long aTimeLimitNanos) {
+        super("Fragmentation timed out after " + Duration.ofNanos(aTimeLimitNanos).toMillis() + " ms");
+        this.timeLimitNanos = aTimeLimitNanos;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the exceeded time limit.
+     * @return Duration object of the time limit.
+     */
+    public Duration getTimeLimit() {
+        return Duration.ofNanos(this.timeLimitNanos);
+    }
+    //</editor-fold>
+}
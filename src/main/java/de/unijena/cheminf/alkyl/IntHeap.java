@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min-heap of int values in a growable array, used by FragmentationProcess instead of a PriorityQueue of
+ * Integer objects, so that adding and removing values does not box them. Equal values may be added more than once.
+ * Objects of this class are not thread-safe.
+ */
+final class IntHeap {
+    //<editor-fold desc="private fields">
+    /**
+     * Heap array; the children of position i are at positions 2i+1 and 2i+2.
+     */
+    private int[] values;
+    /**
+     * Number of values in the heap.
+     */
+    private int size;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new empty heap.
+     * @param aCapacity Initial number of values that can be added without growing.
+     */
+    IntHeap(int aCapacity) {
+        this.values = new int[Math.max(aCapacity, 4)];
+    }
+    //</editor-fold>
+    //<editor-fold desc="methods">
+    /**
+     * Checks whether the heap is empty.
+     * @return True if the heap holds no value.
+     */
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Adds a value to the heap in O(log n).
+     * @param aValue Value to add.
+     */
+    void add(int aValue) {
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        int tmpPosition = this.size++;
+        while (tmpPosition > 0) {
+            int tmpParent = (tmpPosition - 1) >>> 1;
+            if (this.values[tmpParent] <= aValue) {
+                break;
+            }
+            this.values[tmpPosition] = this.values[tmpParent];
+            tmpPosition = tmpParent;
+        }
+        this.values[tmpPosition] = aValue;
+    }
+
+    /**
+     * Returns the smallest value without removing it.
+     * @return Smallest value.
+     * @throws NoSuchElementException if the heap is empty.
+     */
+    int peek() {
+        if (this.size == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        return this.values[0];
+    }
+
+    /**
+     * Removes and returns the smallest value in O(log n).
+     * @return Smallest value.
+     * @throws NoSuchElementException if the heap is empty.
+     */
+    int poll() {
+        int tmpSmallest = this.peek();
+        int tmpLast = this.values[--this.size];
+        int tmpPosition = 0;
+        while (true) {
+            int tmpChild = 2 * tmpPosition + 1;
+            if (tmpChild >= this.size) {
+                break;
+            }
+            if (tmpChild + 1 < this.size && this.values[tmpChild + 1] < this.values[tmpChild]) {
+                tmpChild++;
+            }
+            if (tmpLast <= this.values[tmpChild]) {
+                break;
+            }
+            this.values[tmpPosition] = this.values[tmpChild];
+            tmpPosition = tmpChild;
+        }
+        this.values[tmpPosition] = tmpLast;
+        return tmpSmallest;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.util.NoSuchElementException;
+
+/**
+ * First-in-first-out queue of int values in a growable ring buffer, used for the work queues of FragmentationProcess
+ * so that queued atom and fragment indices are not boxed. Objects of this class are not thread-safe.
+ */
+final class IntQueue {
+    //<editor-fold desc="private fields">
+    /**
+     * Ring buffer holding the queued values; its length is always a power of two.
+     */
+    private int[] values;
+    /**
+     * Position of the first queued value in the ring buffer.
+     */
+    private int head;
+    /**
+     * Number of queued values.
+     */
+    private int size;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new empty queue.
+     * @param aCapacity Initial number of values that can be queued without growing.
+     */
+    IntQueue(int aCapacity) {
+        this.values = new int[Math.max(Integer.highestOneBit(Math.max(aCapacity, 8) - 1) << 1, 8)];
+    }
+    //</editor-fold>
+    //<editor-fold desc="methods">
+    /**
+     * Checks whether the queue is empty.
+     * @return True if no value is queued.
+     */
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Appends a value at the end of the queue.
+     * @param aValue Value to append.
+     */
+    void addLast(int aValue) {
+        if (this.size == this.values.length) {
+            int[] tmpValues = new int[this.values.length * 2];
+            int tmpFirstPart = this.values.length - this.head;
+            System.arraycopy(this.values, this.head, tmpValues, 0, tmpFirstPart);
+            System.arraycopy(this.values, 0, tmpValues, tmpFirstPart, this.head);
+            this.values = tmpValues;
+            this.head = 0;
+        }
+        this.values[(this.head + this.size++) & (this.values.length - 1)] = aValue;
+    }
+
+    /**
+     * Returns the first value of the queue without removing it.
+     * @return First value.
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    int peekFirst() {
+        if (this.size == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        return this.values[this.head];
+    }
+
+    /**
+     * Removes and returns the first value of the queue.
+     * @return First value.
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    int pollFirst() {
+        int tmpValue = this.peekFirst();
+        this.head = (this.head + 1) & (this.values.length - 1);
+        this.size--;
+        return tmpValue;
+    }
+    //</editor-fold>
+}
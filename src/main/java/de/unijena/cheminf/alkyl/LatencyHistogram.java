@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of durations with buckets whose upper bounds are powers of two, from 2^10 ns (about one
+ * microsecond) to 2^36 ns (about 69 seconds), plus one bucket for all longer durations. Recording a duration only
+ * increments two LongAdder counters, so any number of threads can record at the same time. Quantiles are estimated as
+ * the upper bound of the bucket they fall into, i.e. they are at most a factor of two too high.
+ */
+public final class LatencyHistogram {
+    //<editor-fold desc="constants">
+    /**
+     * Exponent of the upper bound of the first bucket.
+     */
+    private static final int FIRST_EXPONENT = 10;
+    /**
+     * Exponent of the upper bound of the last bounded bucket.
+     */
+    private static final int LAST_EXPONENT = 36;
+    /**
+     * Number of buckets including the overflow bucket.
+     */
+    public static final int BUCKET_COUNT = LAST_EXPONENT - FIRST_EXPONENT + 2;
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Number of recorded durations per bucket.
+     */
+    private final LongAdder[] buckets;
+    /**
+     * Sum of all recorded durations in nanoseconds.
+     */
+    private final LongAdder sumNanos;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.buckets = new LongAdder[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+        this.sumNanos = new LongAdder();
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Records a duration. Negative durations are counted as zero.
+     * @param aDurationNanos Duration in nanoseconds.
+     */
+    public void record(long aDurationNanos) {
+        long tmpDuration = Math.max(aDurationNanos, 0L);
+        this.buckets[LatencyHistogram.getBucketIndex(tmpDuration)].increment();
+        this.sumNanos.add(tmpDuration);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     * @return Number of durations.
+     */
+    public long getCount() {
+        long tmpCount = 0;
+        for (LongAdder tmpBucket : this.buckets) {
+            tmpCount += tmpBucket.sum();
+        }
+        return tmpCount;
+    }
+
+    /**
+     * Returns the sum of all recorded durations.
+     * @return Sum in nanoseconds.
+     */
+    public long getSumNanos() {
+        return this.sumNanos.sum();
+    }
+
+    /**
+     * Returns the number of recorded durations of each bucket. The last entry is the overflow bucket.
+     * @return New array of length BUCKET_COUNT.
+     */
+    public long[] getBucketCounts() {
+        long[] tmpCounts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            tmpCounts[i] = this.buckets[i].sum();
+        }
+        return tmpCounts;
+    }
+
+    /**
+     * Returns the estimated quantile of the recorded durations, i.e. the upper bound of the bucket that contains it.
+     * @param aQuantile Quantile between 0 and 1, e.g. 0.99.
+     * @return Duration in nanoseconds, 0 if no duration has been recorded or Long.MAX_VALUE if the quantile lies in
+     * the overflow bucket.
+     * @throws IllegalArgumentException if the quantile is not between 0 and 1.
+     */
+    public long getQuantileNanos(double aQuantile) {
+        if (!(aQuantile >= 0.0 && aQuantile <= 1.0)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + aQuantile);
+        }
+        long[] tmpCounts = this.getBucketCounts();
+        long tmpTotal = 0;
+        for (long tmpCount : tmpCounts) {
+            tmpTotal += tmpCount;
+        }
+        if (tmpTotal == 0) {
+            return 0;
+        }
+        long tmpRank = Math.max(1L, (long) Math.ceil(aQuantile * tmpTotal));
+        long tmpCumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            tmpCumulative += tmpCounts[i];
+            if (tmpCumulative >= tmpRank) {
+                return LatencyHistogram.getUpperBoundNanos(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the inclusive upper bound of the given bucket.
+     * @param aBucket Index of the bucket.
+     * @return Upper bound in nanoseconds or Long.MAX_VALUE for the overflow bucket.
+     * @throws IndexOutOfBoundsException if there is no bucket with the given index.
+     */
+    public static long getUpperBoundNanos(int aBucket) {
+        if (aBucket < 0 || aBucket >= BUCKET_COUNT) {
+            throw new IndexOutOfBoundsException("Bucket " + aBucket + " out of bounds for " + BUCKET_COUNT
+                    + " buckets");
+        }
+        return aBucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << (FIRST_EXPONENT + aBucket);
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Returns the bucket of the given duration.
+     * @param aDurationNanos Non-negative duration in nanoseconds.
+     * @return Index of the bucket.
+     */
+    private static int getBucketIndex(long aDurationNanos) {
+        if (aDurationNanos <= 1L << FIRST_EXPONENT) {
+            return 0;
+        }
+        int tmpExponent = 64 - Long.numberOfLeadingZeros(aDurationNanos - 1);
+        return Math.min(tmpExponent - FIRST_EXPONENT, BUCKET_COUNT - 1);
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * One fragment of a LazyFragmentationResult. Its atom indices are known from the start; its IAtomContainer, SMILES
+ * code and molecular formula are created on first access and then kept.
+ */
+public final class LazyFragment {
+    //<editor-fold desc="fragment data">
+    /**
+     * The result this fragment belongs to. It is also the lock for all lazily created values.
+     */
+    private final LazyFragmentationResult result;
+    /**
+     * Index of the fragment in the result.
+     */
+    private final int index;
+    /**
+     * IAtomContainer object of the fragment or null if it has not been created yet.
+     */
+    private IAtomContainer atomContainer;
+    /**
+     * Generic SMILES code of the fragment or null if it has not been created yet.
+     */
+    private String smiles;
+    /**
+     * Molecular formula of the fragment or null if it has not been created yet.
+     */
+    private String molecularFormula;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new lazy fragment.
+     * @param aResult The result the fragment belongs to.
+     * @param anIndex Index of the fragment in the result.
+     */
+    LazyFragment(LazyFragmentationResult aResult, int anIndex) {
+        this.result = aResult;
+        this.index = anIndex;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the index of the fragment in its result.
+     * @return Index of the fragment.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Returns the number of atoms of the fragment.
+     * @return Number of atoms.
+     */
+    public int getAtomCount() {
+        return this.result.getPartition().getFragmentSize(this.index);
+    }
+
+    /**
+     * Returns the atom indices of the fragment in the fragmented molecule.
+     * @return New int array with the atom indices.
+     */
+    public int[] getAtomIndices() {
+        return this.result.getPartition().getFragmentAtomIndices(this.index);
+    }
+
+    /**
+     * Returns the fragment as IAtomContainer saturated with hydrogen atoms. It is created on the first call.
+     * @return IAtomContainer object of the fragment, the same object on every call.
+     * @throws CDKException Is triggered when saturating the fragment with hydrogen atoms.
+     */
+    public IAtomContainer getAtomContainer() throws CDKException {
+        synchronized (this.result) {
+            if (this.atomContainer == null) {
+                this.atomContainer = this.result.createAtomContainer(this.index);
+            }
+            return this.atomContainer;
+        }
+    }
+
+    /**
+     * Returns the generic SMILES code of the fragment. It is created on the first call.
+     * @return SMILES code.
+     * @throws CDKException Is triggered when the fragment cannot be created or converted into SMILES.
+     */
+    public String getSmiles() throws CDKException {
+        synchronized (this.result) {
+            if (this.smiles == null) {
+                this.smiles = SmilesGenerator.generic().create(this.getAtomContainer());
+            }
+            return this.smiles;
+        }
+    }
+
+    /**
+     * Returns the molecular formula of the fragment including its implicit hydrogen atoms, e.g. "C3H8". It is created
+     * on the first call.
+     * @return Molecular formula string.
+     * @throws CDKException Is triggered when the fragment cannot be created.
+     */
+    public String getMolecularFormula() throws CDKException {
+        synchronized (this.result) {
+            if (this.molecularFormula == null) {
+                this.molecularFormula = MolecularFormulaManipulator.getString(
+                        MolecularFormulaManipulator.getMolecularFormula(this.getAtomContainer()));
+            }
+            return this.molecularFormula;
+        }
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the fragmentation of one molecule whose fragments are only turned into IAtomContainer objects when they
+ * are accessed. The atom indices of all fragments are available at once (see getPartition), while each LazyFragment
+ * creates its IAtomContainer, SMILES code and molecular formula on first access and keeps them for later calls. This
+ * saves the conversion of all fragments that are never looked at, e.g. when only the largest fragment is of interest.
+ * <p>
+ * The fragments share their atoms with the fragmented molecule, and creating a fragment sets the atom types and
+ * implicit hydrogen counts of its atoms. The lazy fragments of one result therefore synchronise on the result object,
+ * so that they can be accessed from several threads.
+ */
+public final class LazyFragmentationResult {
+    //<editor-fold desc="result data">
+    /**
+     * The fragmented molecule.
+     */
+    private final IAtomContainer molecule;
+    /**
+     * Settings that were used for the fragmentation.
+     */
+    private final FragmentationSettings settings;
+    /**
+     * Atom indices of all fragments.
+     */
+    private final FragmentPartition partition;
+    /**
+     * Factory creating the IAtomContainer objects of the fragments on demand.
+     */
+    private final FragmentContainerFactory factory;
+    /**
+     * Unmodifiable list of the lazy fragments.
+     */
+    private final List<LazyFragment> fragments;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new lazy result. No fragment IAtomContainer is created here.
+     * @param aMolecule The fragmented molecule.
+     * @param aSettings Settings that were used for the fragmentation.
+     * @param aPartition Atom indices of each fragment.
+     */
+    LazyFragmentationResult(IAtomContainer aMolecule, FragmentationSettings aSettings, FragmentPartition aPartition) {
+        this.molecule = aMolecule;
+        this.settings = aSettings;
+        this.partition = aPartition;
+        this.factory = new FragmentContainerFactory(aMolecule, aPartition);
+        List<LazyFragment> tmpFragments = new ArrayList<>(aPartition.getFragmentCount());
+        for (int i = 0; i < aPartition.getFragmentCount(); i++) {
+            tmpFragments.add(new LazyFragment(this, i));
+        }
+        this.fragments = Collections.unmodifiableList(tmpFragments);
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Returns the fragmented molecule.
+     * @return IAtomContainer object of the fragmented molecule.
+     */
+    public IAtomContainer getMolecule() {
+        return this.molecule;
+    }
+
+    /**
+     * Returns the settings that were used for the fragmentation.
+     * @return FragmentationSettings object.
+     */
+    public FragmentationSettings getSettings() {
+        return this.settings;
+    }
+
+    /**
+     * Returns the atom indices of all fragments.
+     * @return FragmentPartition object.
+     */
+    public FragmentPartition getPartition() {
+        return this.partition;
+    }
+
+    /**
+     * Returns the number of fragments.
+     * @return Number of fragments.
+     */
+    public int getFragmentCount() {
+        return this.fragments.size();
+    }
+
+    /**
+     * Returns a fragment.
+     * @param aFragment Index of the fragment.
+     * @return LazyFragment object.
+     */
+    public LazyFragment getFragment(int aFragment) {
+        return this.fragments.get(aFragment);
+    }
+
+    /**
+     * Returns all fragments. None of them is converted into an IAtomContainer by this method.
+     * @return Unmodifiable list of LazyFragment objects.
+     */
+    public List<LazyFragment> getFragments() {
+        return this.fragments;
+    }
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Creates the IAtomContainer object of a fragment. Must be called while holding the lock of this object.
+     * @param aFragment Index of the fragment.
+     * @return New IAtomContainer object of the fragment.
+     * @throws CDKException Is triggered when saturating the fragment with hydrogen atoms.
+     */
+    IAtomContainer createAtomContainer(int aFragment) throws CDKException {
+        return this.factory.create(aFragment);
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,201 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The class MappedSmilesFileReader splits a SMILES / CSV file into chunks of whole lines and memory-maps each chunk,
+ * so that the lines can be decoded by several worker threads directly from the mapped bytes instead of being read
+ * into String objects by one thread. A chunk ends after the first line break ('\n', '\r' or "\r\n") at or behind the
+ * chunk size, so no line is split between two chunks. Chunks are returned in file order, which is the only ordering
+ * information the callers use; only the short search for the line break at the end of a chunk is done by the thread
+ * calling next. Files larger than 2 GB are supported as long as no single line is.
+ */
+class MappedSmilesFileReader implements Iterator<MappedSmilesFileReader.Chunk>, Closeable {
+    //<editor-fold desc="nested classes">
+    /**
+     * Memory-mapped chunk of whole lines of the file.
+     */
+    static final class Chunk {
+        /**
+         * Read-only buffer with the bytes of the chunk, from position 0 to its limit.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Creates a new chunk.
+         * @param aBuffer Buffer with the bytes of the chunk.
+         */
+        private Chunk(ByteBuffer aBuffer) {
+            this.buffer = aBuffer;
+        }
+
+        /**
+         * Returns the buffer with the bytes of the chunk. Its absolute get methods may be used by any thread.
+         * @return ByteBuffer object.
+         */
+        ByteBuffer getBuffer() {
+            return this.buffer;
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="constants">
+    /**
+     * Default number of bytes per chunk.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    /**
+     * Number of bytes read at once while searching the line break at the end of a chunk.
+     */
+    private static final int SEARCH_WINDOW_SIZE = 1 << 12;
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Channel of the file.
+     */
+    private final FileChannel channel;
+    /**
+     * Size of the file in bytes.
+     */
+    private final long size;
+    /**
+     * Minimum number of bytes per chunk.
+     */
+    private final int chunkSize;
+    /**
+     * Buffer for the search of line breaks.
+     */
+    private final ByteBuffer searchWindow;
+    /**
+     * Offset of the next chunk.
+     */
+    private long position;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Opens a file for reading in chunks.
+     * @param aFile Path of the SMILES / CSV file.
+     * @param aChunkSize Minimum number of bytes per chunk.
+     * @param aIsSkippingFirstLine Whether the first line is a header line that is not part of any chunk.
+     * @throws IOException if the file cannot be opened or read.
+     * @throws IllegalArgumentException if aChunkSize is smaller than 1.
+     */
+    MappedSmilesFileReader(Path aFile, int aChunkSize, boolean aIsSkippingFirstLine) throws IOException {
+        if (aChunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + aChunkSize);
+        }
+        this.channel = FileChannel.open(aFile, StandardOpenOption.READ);
+        try {
+            this.size = this.channel.size();
+            this.chunkSize = aChunkSize;
+            this.searchWindow = ByteBuffer.allocate(SEARCH_WINDOW_SIZE);
+            this.position = aIsSkippingFirstLine ? this.findLineEnd(0) : 0;
+        } catch (IOException | RuntimeException anException) {
+            this.channel.close();
+            throw anException;
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    @Override
+    public boolean hasNext() {
+        return this.position < this.size;
+    }
+
+    /**
+     * Maps the next chunk of the file.
+     * @return Chunk object.
+     * @throws NoSuchElementException if the end of the file has been reached.
+     * @throws UncheckedIOException if the file cannot be read or a line is longer than 2 GB.
+     */
+    @Override
+    public Chunk next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            long tmpEnd = this.position + this.chunkSize >= this.size ? this.size
+                    : this.findLineEnd(this.position + this.chunkSize - 1);
+            if (tmpEnd - this.position > Integer.MAX_VALUE) {
+                throw new IOException("Line starting in chunk at offset " + this.position + " is longer than 2 GB");
+            }
+            Chunk tmpChunk = new Chunk(this.channel.map(FileChannel.MapMode.READ_ONLY, this.position,
+                    tmpEnd - this.position));
+            this.position = tmpEnd;
+            return tmpChunk;
+        } catch (IOException anException) {
+            throw new UncheckedIOException(anException);
+        }
+    }
+
+    /**
+     * Closes the file. Chunks that have already been mapped stay valid.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Searches the first line break at or behind the given offset.
+     * @param anOffset Offset to start the search at.
+     * @return Offset behind the line break, "\r\n" counting as one line break, or the file size if there is none.
+     * @throws IOException if the file cannot be read.
+     */
+    private long findLineEnd(long anOffset) throws IOException {
+        long tmpWindowOffset = anOffset;
+        boolean tmpIsAfterCarriageReturn = false;
+        while (tmpWindowOffset < this.size) {
+            this.searchWindow.clear();
+            int tmpLength = this.channel.read(this.searchWindow, tmpWindowOffset);
+            if (tmpLength <= 0) {
+                break;
+            }
+            for (int i = 0; i < tmpLength; i++) {
+                byte tmpByte = this.searchWindow.get(i);
+                if (tmpIsAfterCarriageReturn) {
+                    return tmpWindowOffset + i + (tmpByte == '\n' ? 1 : 0);
+                }
+                if (tmpByte == '\n') {
+                    return tmpWindowOffset + i + 1;
+                }
+                tmpIsAfterCarriageReturn = tmpByte == '\r';
+            }
+            tmpWindowOffset += tmpLength;
+        }
+        return this.size;
+    }
+    //</editor-fold>
+}
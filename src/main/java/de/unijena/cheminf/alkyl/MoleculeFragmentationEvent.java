@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/**
+ * JDK Flight Recorder event of the fragmentation of one molecule by fragment, tryFragment, partition or
+ * fragmentLazily of AlkylFragmenter. It is emitted independently of any FragmentationListener as soon as a recording
+ * is running, e.g. one started with "jcmd &lt;pid&gt; JFR.start". By default, only molecules that take at least one
+ * millisecond are recorded, so that the outliers of a batch stand out; the threshold can be changed in the recording
+ * settings. The ring atoms are only counted for molecules that are actually recorded.
+ */
+@Name("de.unijena.cheminf.alkyl.MoleculeFragmentation")
+@Label("Molecule Fragmentation")
+@Category({"Alkyl Fragmentation"})
+@Description("Fragmentation of one molecule")
+@Threshold("1 ms")
+@StackTrace(false)
+final class MoleculeFragmentationEvent extends Event {
+    //<editor-fold desc="event fields">
+    /**
+     * Number of atoms of the molecule.
+     */
+    @Label("Atom Count")
+    int atomCount;
+    /**
+     * Number of ring atoms of the molecule.
+     */
+    @Label("Ring Atom Count")
+    int ringAtomCount;
+    /**
+     * Number of fragments, 0 if the fragmentation failed.
+     */
+    @Label("Fragment Count")
+    int fragmentCount;
+    /**
+     * Minimal fragment size of the settings.
+     */
+    @Label("Minimum Cut")
+    int minCut;
+    /**
+     * Maximal fragment size of the settings.
+     */
+    @Label("Maximum Cut")
+    int maxCut;
+    /**
+     * Whether tertiary and quaternary carbon atoms are preserved.
+     */
+    @Label("Preserving Tertiary Quaternary Carbons")
+    boolean preservingTertiaryQuaternaryCarbons;
+    /**
+     * Whether the molecule was fragmented successfully.
+     */
+    @Label("Successful")
+    boolean successful;
+    /**
+     * Class of the exception the fragmentation failed with or null.
+     */
+    @Label("Exception Class")
+    Class<?> exceptionClass;
+    /**
+     * Message of the exception the fragmentation failed with or null.
+     */
+    @Label("Exception Message")
+    String exceptionMessage;
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Ends the event and commits it with the given outcome if the recording asks for it.
+     * @param aMolecule The fragmented molecule.
+     * @param aSettings Fragmentation settings.
+     * @param aFragmentCount Number of fragments.
+     * @param anException The cause of the failure or null if the molecule was fragmented successfully.
+     */
+    void commit(IAtomContainer aMolecule, FragmentationSettings aSettings, int aFragmentCount,
+                Exception anException) {
+        this.end();
+        if (!this.shouldCommit()) {
+            return;
+        }
+        this.atomCount = aMolecule.getAtomCount();
+        try {
+            this.ringAtomCount = new MoleculeGraph(aMolecule).findRingAtoms().cardinality();
+        } catch (RuntimeException anIgnoredException) {
+            this.ringAtomCount = -1;
+        }
+        this.fragmentCount = aFragmentCount;
+        this.minCut = aSettings.getMinCut();
+        this.maxCut = aSettings.getMaxCut();
+        this.preservingTertiaryQuaternaryCarbons = aSettings.isPreservingTertiaryQuaternaryCarbons();
+        this.successful = anException == null;
+        if (anException != null) {
+            this.exceptionClass = anException.getClass();
+            this.exceptionMessage = anException.getMessage();
+        }
+        this.commit();
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,400 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The class MoleculeGraph stores the connectivity of a molecule as primitive int arrays in compressed sparse row
+ * layout: the neighbours of atom i are found in the neighbours array between offsets[i] (inclusive) and offsets[i+1]
+ * (exclusive), in the order of the bonds in the IAtomContainer, together with the order of the bond. Every entry of
+ * the neighbours array is a directed half-edge that can be removed individually by setting its bit in the removed
+ * edges bitmask, so that the fragmentation methods can consume the graph step by step without allocating any objects.
+ * The topology arrays are never changed after construction and are shared between a graph and all graphs derived from
+ * it via restrictTo. A graph derived via restrictTo only contains the bonds between its member atoms, and it can be
+ * reused for the next restriction, so that restricting a graph costs time in the size of the molecule part and not of
+ * the molecule.
+ */
+class MoleculeGraph {
+    //<editor-fold desc="topology">
+    /**
+     * Number of atoms in the molecule.
+     */
+    private final int atomCount;
+    /**
+     * Array of length atomCount + 1. The neighbours of atom i are stored in the neighbours array from offsets[i] to
+     * offsets[i+1] - 1.
+     */
+    private final int[] offsets;
+    /**
+     * Concatenated neighbour atom indices of all atoms. Every bond appears twice, once for each direction.
+     */
+    private final int[] neighbours;
+    /**
+     * Numeric bond order (see IBond.Order.numeric, 0 if unset) of the bond behind each entry of the neighbours array.
+     */
+    private final byte[] bondOrders;
+    //</editor-fold>
+    //<editor-fold desc="edge state">
+    /**
+     * Bitmask with one bit per entry of the neighbours array. A set bit means that the half-edge has been removed.
+     */
+    private final long[] removedEdges;
+    /**
+     * Number of half-edges of each atom that have not been removed yet.
+     */
+    private final int[] degrees;
+    //</editor-fold>
+    //<editor-fold desc="restriction">
+    /**
+     * Ascending indices of the atoms a graph created by restrictTo is restricted to or null for a graph of the whole
+     * molecule.
+     */
+    private int[] memberAtoms;
+    /**
+     * Number of valid entries of memberAtoms or the number of atoms of the molecule if memberAtoms is null.
+     */
+    private int memberCount;
+    /**
+     * Scratch flags used by restrictTo for membership tests; all flags are reset between two calls. A boolean array
+     * is used because BitSet.clear rescans all lower words whenever its highest set word becomes empty.
+     */
+    private boolean[] memberFlags;
+    //</editor-fold>
+    //<editor-fold desc="constructors">
+    /**
+     * Builds the graph of the given molecule with all bonds present.
+     * @param aMolecule IAtomContainer object of the molecule.
+     */
+    MoleculeGraph(IAtomContainer aMolecule) {
+        this.atomCount = aMolecule.getAtomCount();
+        this.offsets = new int[this.atomCount + 1];
+        for (IBond tmpBond : aMolecule.bonds()) {
+            this.offsets[tmpBond.getAtom(0).getIndex() + 1]++;
+            this.offsets[tmpBond.getAtom(1).getIndex() + 1]++;
+        }
+        for (int i = 0; i < this.atomCount; i++) {
+            this.offsets[i + 1] += this.offsets[i];
+        }
+        this.neighbours = new int[this.offsets[this.atomCount]];
+        this.bondOrders = new byte[this.neighbours.length];
+        int[] tmpFillPositions = Arrays.copyOf(this.offsets, this.atomCount);
+        for (IBond tmpBond : aMolecule.bonds()) {
+            int tmpAtom0 = tmpBond.getAtom(0).getIndex();
+            int tmpAtom1 = tmpBond.getAtom(1).getIndex();
+            byte tmpOrder = tmpBond.getOrder() == null ? 0 : (byte) tmpBond.getOrder().numeric().intValue();
+            this.bondOrders[tmpFillPositions[tmpAtom0]] = tmpOrder;
+            this.neighbours[tmpFillPositions[tmpAtom0]++] = tmpAtom1;
+            this.bondOrders[tmpFillPositions[tmpAtom1]] = tmpOrder;
+            this.neighbours[tmpFillPositions[tmpAtom1]++] = tmpAtom0;
+        }
+        this.removedEdges = new long[(this.neighbours.length + 63) >>> 6];
+        this.degrees = new int[this.atomCount];
+        this.memberCount = this.atomCount;
+        this.reset();
+    }
+
+    /**
+     * Creates a graph sharing the topology of the given graph with all half-edges removed.
+     * @param aGraph Graph whose topology arrays are shared.
+     */
+    private MoleculeGraph(MoleculeGraph aGraph) {
+        this.atomCount = aGraph.atomCount;
+        this.offsets = aGraph.offsets;
+        this.neighbours = aGraph.neighbours;
+        this.bondOrders = aGraph.bondOrders;
+        this.removedEdges = new long[aGraph.removedEdges.length];
+        Arrays.fill(this.removedEdges, -1L);
+        this.degrees = new int[this.atomCount];
+        this.memberAtoms = new int[0];
+        this.memberCount = 0;
+        this.memberFlags = new boolean[this.atomCount];
+    }
+    //</editor-fold>
+    //<editor-fold desc="methods">
+    /**
+     * Restores all half-edges of the molecule. Only meant for graphs of the whole molecule.
+     */
+    void reset() {
+        Arrays.fill(this.removedEdges, 0L);
+        for (int i = 0; i < this.atomCount; i++) {
+            this.degrees[i] = this.offsets[i + 1] - this.offsets[i];
+        }
+    }
+
+    /**
+     * Returns a graph on the same topology that only contains the bonds between the given atoms. The state of this
+     * graph is not changed. To avoid allocating arrays of the size of the molecule for every molecule part, a graph
+     * returned by an earlier call can be passed in; it is then cleared and reused. The time needed is proportional to
+     * the number of given atoms and their bonds (plus sorting), not to the size of the molecule.
+     * @param anAtomSequences List holding the indices of the atoms of the molecule part, duplicates are ignored.
+     * @param aSequence Index of the sequence of anAtomSequences with the atom indices, anAtomSequences.size() for its
+     *                  open sequence.
+     * @param aReusableGraph Graph returned by an earlier call of restrictTo on a graph of the same molecule that is no
+     *                       longer needed, or null.
+     * @return MoleculeGraph object of the molecule part, either aReusableGraph or a new one.
+     */
+    MoleculeGraph restrictTo(AtomSequenceList anAtomSequences, int aSequence, MoleculeGraph aReusableGraph) {
+        MoleculeGraph tmpGraph;
+        if (aReusableGraph != null && aReusableGraph.neighbours == this.neighbours
+                && aReusableGraph.memberAtoms != null) {
+            tmpGraph = aReusableGraph;
+            tmpGraph.clearMembers();
+        } else {
+            tmpGraph = new MoleculeGraph(this);
+        }
+        int tmpSize = anAtomSequences.getSize(aSequence);
+        int[] tmpMembers = tmpGraph.memberAtoms.length >= tmpSize ? tmpGraph.memberAtoms : new int[tmpSize];
+        int tmpMemberCount = 0;
+        for (int tmpPosition = 0; tmpPosition < tmpSize; tmpPosition++) {
+            int tmpAtomIndex = anAtomSequences.getAtom(aSequence, tmpPosition);
+            if (!tmpGraph.memberFlags[tmpAtomIndex]) {
+                tmpGraph.memberFlags[tmpAtomIndex] = true;
+                tmpMembers[tmpMemberCount++] = tmpAtomIndex;
+            }
+        }
+        Arrays.sort(tmpMembers, 0, tmpMemberCount);
+        tmpGraph.memberAtoms = tmpMembers;
+        tmpGraph.memberCount = tmpMemberCount;
+        for (int i = 0; i < tmpMemberCount; i++) {
+            int tmpAtom = tmpMembers[i];
+            for (int tmpSlot = this.offsets[tmpAtom]; tmpSlot < this.offsets[tmpAtom + 1]; tmpSlot++) {
+                if (tmpGraph.memberFlags[this.neighbours[tmpSlot]]) {
+                    tmpGraph.removedEdges[tmpSlot >>> 6] &= ~(1L << tmpSlot);
+                    tmpGraph.degrees[tmpAtom]++;
+                }
+            }
+        }
+        for (int i = 0; i < tmpMemberCount; i++) {
+            tmpGraph.memberFlags[tmpMembers[i]] = false;
+        }
+        return tmpGraph;
+    }
+
+    /**
+     * Determines the ring atoms of the molecule, i.e. the atoms that are part of at least one bond that is not a
+     * bridge, in O(atoms + bonds) with a single iterative depth-first search for bridges. The search uses the full
+     * topology regardless of removed half-edges and gives the same atoms as Cycles.markRingAtomsAndBonds, but neither
+     * changes the IAtomContainer nor allocates more than a few int arrays.
+     * @return BitSet with the indices of all ring atoms set; the other atoms are ring linker or chain atoms.
+     */
+    BitSet findRingAtoms() {
+        BitSet tmpRingAtoms = new BitSet(this.atomCount);
+        int[] tmpDiscoveryTimes = new int[this.atomCount];
+        int[] tmpLowLinks = new int[this.atomCount];
+        int[] tmpParents = new int[this.atomCount];
+        int[] tmpNextSlots = new int[this.atomCount];
+        boolean[] tmpIsParentEdgeSkipped = new boolean[this.atomCount];
+        int[] tmpStack = new int[this.atomCount];
+        int tmpTime = 0;
+        for (int tmpRoot = 0; tmpRoot < this.atomCount; tmpRoot++) {
+            if (tmpDiscoveryTimes[tmpRoot] != 0) {
+                continue;
+            }
+            int tmpStackSize = 0;
+            tmpStack[tmpStackSize++] = tmpRoot;
+            tmpDiscoveryTimes[tmpRoot] = tmpLowLinks[tmpRoot] = ++tmpTime;
+            tmpParents[tmpRoot] = -1;
+            tmpNextSlots[tmpRoot] = this.offsets[tmpRoot];
+            while (tmpStackSize > 0) {
+                int tmpAtom = tmpStack[tmpStackSize - 1];
+                if (tmpNextSlots[tmpAtom] < this.offsets[tmpAtom + 1]) {
+                    int tmpNeighbour = this.neighbours[tmpNextSlots[tmpAtom]++];
+                    if (tmpNeighbour == tmpParents[tmpAtom] && !tmpIsParentEdgeSkipped[tmpAtom]) {
+                        //the tree edge to the parent is passed once, a second bond to the parent closes a ring
+                        tmpIsParentEdgeSkipped[tmpAtom] = true;
+                    } else if (tmpDiscoveryTimes[tmpNeighbour] == 0) {
+                        tmpParents[tmpNeighbour] = tmpAtom;
+                        tmpDiscoveryTimes[tmpNeighbour] = tmpLowLinks[tmpNeighbour] = ++tmpTime;
+                        tmpNextSlots[tmpNeighbour] = this.offsets[tmpNeighbour];
+                        tmpStack[tmpStackSize++] = tmpNeighbour;
+                    } else {
+                        //back edges are never bridges
+                        tmpLowLinks[tmpAtom] = Math.min(tmpLowLinks[tmpAtom], tmpDiscoveryTimes[tmpNeighbour]);
+                        tmpRingAtoms.set(tmpAtom);
+                        tmpRingAtoms.set(tmpNeighbour);
+                    }
+                } else {
+                    tmpStackSize--;
+                    int tmpParent = tmpParents[tmpAtom];
+                    if (tmpParent >= 0) {
+                        tmpLowLinks[tmpParent] = Math.min(tmpLowLinks[tmpParent], tmpLowLinks[tmpAtom]);
+                        if (tmpLowLinks[tmpAtom] <= tmpDiscoveryTimes[tmpParent]) {
+                            tmpRingAtoms.set(tmpAtom);
+                            tmpRingAtoms.set(tmpParent);
+                        }
+                    }
+                }
+            }
+        }
+        return tmpRingAtoms;
+    }
+
+    /**
+     * Returns the number of atoms of the molecule.
+     * @return Number of atoms.
+     */
+    int getAtomCount() {
+        return this.atomCount;
+    }
+
+    /**
+     * Returns the number of atoms whose bonds this graph contains: all atoms of the molecule or the member atoms of a
+     * graph created by restrictTo. Together with getMemberAtom, it allows iterating only the atoms of a molecule part.
+     * @return Number of member atoms.
+     */
+    int getMemberCount() {
+        return this.memberCount;
+    }
+
+    /**
+     * Returns the member atom at the given position. The member atoms are sorted by ascending atom index.
+     * @param aPosition Position smaller than getMemberCount.
+     * @return Index of the atom.
+     */
+    int getMemberAtom(int aPosition) {
+        return this.memberAtoms == null ? aPosition : this.memberAtoms[aPosition];
+    }
+
+    /**
+     * Returns the number of remaining neighbours of an atom.
+     * @param anAtomIndex Index of the atom.
+     * @return Number of half-edges of the atom that have not been removed.
+     */
+    int getDegree(int anAtomIndex) {
+        return this.degrees[anAtomIndex];
+    }
+
+    /**
+     * Returns the remaining neighbour of an atom at the given position. The positions follow the order of the bonds in
+     * the molecule, skipping removed half-edges.
+     * @param anAtomIndex Index of the atom.
+     * @param aPosition Position among the remaining neighbours, must be smaller than getDegree(anAtomIndex).
+     * @return Index of the neighbouring atom.
+     */
+    int getNeighbour(int anAtomIndex, int aPosition) {
+        int tmpPosition = aPosition;
+        for (int tmpSlot = this.offsets[anAtomIndex]; tmpSlot < this.offsets[anAtomIndex + 1]; tmpSlot++) {
+            if (!this.isRemoved(tmpSlot) && tmpPosition-- == 0) {
+                return this.neighbours[tmpSlot];
+            }
+        }
+        throw new IndexOutOfBoundsException("Position " + aPosition + " exceeds the degree of atom " + anAtomIndex);
+    }
+
+    /**
+     * Returns the array position of the first half-edge of an atom. Together with getSlotEnd, isRemoved and
+     * getNeighbourAt it allows iterating the neighbours of an atom without allocation.
+     * @param anAtomIndex Index of the atom.
+     * @return First position of the atom in the neighbours array.
+     */
+    int getSlotStart(int anAtomIndex) {
+        return this.offsets[anAtomIndex];
+    }
+
+    /**
+     * Returns the array position after the last half-edge of an atom.
+     * @param anAtomIndex Index of the atom.
+     * @return Position after the last neighbour of the atom in the neighbours array.
+     */
+    int getSlotEnd(int anAtomIndex) {
+        return this.offsets[anAtomIndex + 1];
+    }
+
+    /**
+     * Returns the neighbour atom index stored at the given position of the neighbours array.
+     * @param aSlot Position in the neighbours array.
+     * @return Index of the neighbouring atom.
+     */
+    int getNeighbourAt(int aSlot) {
+        return this.neighbours[aSlot];
+    }
+
+    /**
+     * Returns the order of the bond between two atoms in the molecule, regardless of removed half-edges. Like
+     * IAtomContainer.getBond, the first of several bonds between the same atoms counts; unlike it, only the few
+     * neighbours of the first atom are scanned.
+     * @param anAtomIndex Index of the first atom.
+     * @param aNeighbourIndex Index of the second atom.
+     * @return Numeric bond order (see IBond.Order.numeric), 0 if the order is unset and -1 if there is no bond.
+     */
+    int getBondOrder(int anAtomIndex, int aNeighbourIndex) {
+        for (int tmpSlot = this.offsets[anAtomIndex]; tmpSlot < this.offsets[anAtomIndex + 1]; tmpSlot++) {
+            if (this.neighbours[tmpSlot] == aNeighbourIndex) {
+                return this.bondOrders[tmpSlot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether the half-edge at the given position of the neighbours array has been removed.
+     * @param aSlot Position in the neighbours array.
+     * @return True if the half-edge has been removed.
+     */
+    boolean isRemoved(int aSlot) {
+        return (this.removedEdges[aSlot >>> 6] & (1L << aSlot)) != 0;
+    }
+
+    /**
+     * Removes the half-edge from one atom to another, so that the second atom is no longer listed as neighbour of the
+     * first one. The opposite half-edge is not changed. Nothing happens if the half-edge has already been removed.
+     * @param anAtomIndex Index of the atom whose neighbour is removed.
+     * @param aNeighbourIndex Index of the neighbour to remove.
+     */
+    void removeEdge(int anAtomIndex, int aNeighbourIndex) {
+        for (int tmpSlot = this.offsets[anAtomIndex]; tmpSlot < this.offsets[anAtomIndex + 1]; tmpSlot++) {
+            if (this.neighbours[tmpSlot] == aNeighbourIndex && !this.isRemoved(tmpSlot)) {
+                this.removedEdges[tmpSlot >>> 6] |= 1L << tmpSlot;
+                this.degrees[anAtomIndex]--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all half-edges starting at the given atom. Half-edges pointing to the atom are not changed.
+     * @param anAtomIndex Index of the atom.
+     */
+    void clearNeighbours(int anAtomIndex) {
+        for (int tmpSlot = this.offsets[anAtomIndex]; tmpSlot < this.offsets[anAtomIndex + 1]; tmpSlot++) {
+            this.removedEdges[tmpSlot >>> 6] |= 1L << tmpSlot;
+        }
+        this.degrees[anAtomIndex] = 0;
+    }
+
+    /**
+     * Removes all half-edges of the member atoms of a graph created by restrictTo, so that it can be reused.
+     */
+    private void clearMembers() {
+        for (int i = 0; i < this.memberCount; i++) {
+            this.clearNeighbours(this.memberAtoms[i]);
+        }
+        this.memberCount = 0;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,310 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The class OrderedPipeline processes a stream of records in three stages: one reader thread takes the records from
+ * a source iterator and puts them into a bounded queue, a number of worker threads take them from the queue and
+ * process them, and the calling thread writes the processed records in their original order. At most capacity
+ * records are in flight at any time (queued, being processed or waiting for their predecessors to be written), so
+ * the memory use does not depend on the length of the stream, and a slow writer slows down the reader instead of
+ * filling the heap.
+ * @param <I> Type of the input records.
+ * @param <O> Type of the processed records.
+ */
+class OrderedPipeline<I, O> {
+    //<editor-fold desc="interfaces">
+    /**
+     * Final stage of the pipeline that writes the processed records.
+     * @param <O> Type of the processed records.
+     */
+    interface Writer<O> {
+        /**
+         * Writes one processed record. Records are passed in their original order.
+         * @param aRecord Processed record.
+         * @throws IOException if the record cannot be written.
+         */
+        void write(O aRecord) throws IOException;
+    }
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Number of worker threads.
+     */
+    private final int threadCount;
+    /**
+     * Maximum number of records in flight.
+     */
+    private final int capacity;
+    /**
+     * Permits for records in flight. The reader acquires one per record, the writer releases it after writing.
+     */
+    private final Semaphore inFlightPermits;
+    /**
+     * Queue between the reader and the workers.
+     */
+    private final BlockingQueue<Object> inputQueue;
+    /**
+     * Ring buffer of processed records waiting to be written, indexed by sequence number modulo capacity.
+     */
+    private final Object[] outputSlots;
+    /**
+     * Lock guarding outputSlots, totalCount and failure.
+     */
+    private final ReentrantLock lock;
+    /**
+     * Signalled whenever a record is put into outputSlots, the reader finishes or a stage fails.
+     */
+    private final Condition outputChanged;
+    /**
+     * Number of records read by the reader, -1 while the reader is still running.
+     */
+    private long totalCount;
+    /**
+     * First exception thrown by a stage.
+     */
+    private Throwable failure;
+    //</editor-fold>
+    //<editor-fold desc="constants">
+    /**
+     * Marker put into the input queue once per worker when the source is exhausted.
+     */
+    private static final Object END_OF_INPUT = new Object();
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new pipeline. A pipeline can only be run once.
+     * @param aThreadCount Number of worker threads.
+     * @param aCapacity Maximum number of records in flight.
+     * @throws IllegalArgumentException if aThreadCount or aCapacity is smaller than 1.
+     */
+    OrderedPipeline(int aThreadCount, int aCapacity) {
+        if (aThreadCount < 1 || aCapacity < 1) {
+            throw new IllegalArgumentException("Thread count and capacity must be positive: threadCount="
+                    + aThreadCount + ", capacity=" + aCapacity);
+        }
+        this.threadCount = aThreadCount;
+        this.capacity = aCapacity;
+        this.inFlightPermits = new Semaphore(aCapacity);
+        this.inputQueue = new ArrayBlockingQueue<>(aCapacity + aThreadCount);
+        this.outputSlots = new Object[aCapacity];
+        this.lock = new ReentrantLock();
+        this.outputChanged = this.lock.newCondition();
+        this.totalCount = -1;
+    }
+    //</editor-fold>
+    //<editor-fold desc="package-private methods">
+    /**
+     * Runs the pipeline until the source is exhausted and all records are written. If any stage throws, all threads
+     * are stopped and the exception is rethrown.
+     * @param aSource Iterator of input records; it is only accessed by the reader thread.
+     * @param aWorker Function processing one record; it is called concurrently by all worker threads.
+     * @param aWriter Writer for the processed records; it is called on the calling thread.
+     * @return Number of records written.
+     * @throws IOException if the source or the writer throws an IOException.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    long run(Iterator<I> aSource, Function<I, O> aWorker, Writer<O> aWriter) throws IOException,
+            InterruptedException {
+        Thread[] tmpThreads = new Thread[this.threadCount + 1];
+        tmpThreads[0] = new Thread(() -> this.read(aSource), "alkyl-pipeline-reader");
+        for (int i = 1; i < tmpThreads.length; i++) {
+            tmpThreads[i] = new Thread(() -> this.work(aWorker), "alkyl-pipeline-worker-" + i);
+        }
+        for (Thread tmpThread : tmpThreads) {
+            tmpThread.setDaemon(true);
+            tmpThread.start();
+        }
+        long tmpWritten = 0;
+        try {
+            while (true) {
+                O tmpRecord;
+                this.lock.lock();
+                try {
+                    int tmpSlot = (int) (tmpWritten % this.capacity);
+                    while (this.failure == null && this.outputSlots[tmpSlot] == null && this.totalCount != tmpWritten) {
+                        this.outputChanged.await();
+                    }
+                    if (this.failure != null) {
+                        break;
+                    }
+                    if (this.outputSlots[tmpSlot] == null) {
+                        break;
+                    }
+                    @SuppressWarnings("unchecked")
+                    O tmpCast = (O) this.outputSlots[tmpSlot];
+                    tmpRecord = tmpCast;
+                    this.outputSlots[tmpSlot] = null;
+                } finally {
+                    this.lock.unlock();
+                }
+                aWriter.write(tmpRecord);
+                tmpWritten++;
+                this.inFlightPermits.release();
+            }
+        } catch (IOException | RuntimeException | InterruptedException anException) {
+            this.fail(anException);
+        } finally {
+            for (Thread tmpThread : tmpThreads) {
+                tmpThread.interrupt();
+            }
+        }
+        for (Thread tmpThread : tmpThreads) {
+            tmpThread.join();
+        }
+        if (this.failure != null) {
+            if (this.failure instanceof IOException) {
+                throw (IOException) this.failure;
+            }
+            if (this.failure instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) this.failure).getCause();
+            }
+            if (this.failure instanceof InterruptedException) {
+                throw (InterruptedException) this.failure;
+            }
+            if (this.failure instanceof RuntimeException) {
+                throw (RuntimeException) this.failure;
+            }
+            if (this.failure instanceof Error) {
+                throw (Error) this.failure;
+            }
+            throw new IOException(this.failure);
+        }
+        return tmpWritten;
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Reader stage: numbers the records of the source and puts them into the input queue.
+     * @param aSource Iterator of input records.
+     */
+    private void read(Iterator<I> aSource) {
+        long tmpCount = 0;
+        try {
+            while (aSource.hasNext()) {
+                I tmpRecord = aSource.next();
+                this.inFlightPermits.acquire();
+                this.inputQueue.put(new SequencedRecord(tmpCount++, tmpRecord));
+            }
+            this.lock.lock();
+            try {
+                this.totalCount = tmpCount;
+                this.outputChanged.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+            for (int i = 0; i < this.threadCount; i++) {
+                this.inputQueue.put(END_OF_INPUT);
+            }
+        } catch (InterruptedException anException) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable aThrowable) {
+            this.fail(aThrowable);
+        }
+    }
+
+    /**
+     * Worker stage: processes records from the input queue and puts the results into their output slots.
+     * @param aWorker Function processing one record.
+     */
+    private void work(Function<I, O> aWorker) {
+        try {
+            while (true) {
+                Object tmpItem = this.inputQueue.take();
+                if (tmpItem == END_OF_INPUT) {
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                SequencedRecord tmpRecord = (SequencedRecord) tmpItem;
+                O tmpResult = aWorker.apply(tmpRecord.record);
+                if (tmpResult == null) {
+                    throw new NullPointerException("Pipeline worker returned null for record " + tmpRecord.sequence);
+                }
+                this.lock.lock();
+                try {
+                    this.outputSlots[(int) (tmpRecord.sequence % this.capacity)] = tmpResult;
+                    this.outputChanged.signalAll();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+        } catch (InterruptedException anException) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable aThrowable) {
+            this.fail(aThrowable);
+        }
+    }
+
+    /**
+     * Records the first failure of a stage and wakes up the writer.
+     * @param aThrowable Exception or error thrown by a stage.
+     */
+    private void fail(Throwable aThrowable) {
+        this.lock.lock();
+        try {
+            if (this.failure == null) {
+                this.failure = aThrowable;
+            }
+            this.outputChanged.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="SequencedRecord">
+    /**
+     * Input record together with its position in the source.
+     */
+    private class SequencedRecord {
+        /**
+         * Position of the record in the source.
+         */
+        private final long sequence;
+        /**
+         * The input record.
+         */
+        private final I record;
+
+        /**
+         * Creates a new sequenced record.
+         * @param aSequence Position of the record in the source.
+         * @param aRecord The input record.
+         */
+        SequencedRecord(long aSequence, I aRecord) {
+            this.sequence = aSequence;
+            this.record = aRecord;
+        }
+    }
+    //</editor-fold>
+}
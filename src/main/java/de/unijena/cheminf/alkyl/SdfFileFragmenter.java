@@ -0,0 +1,246 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.SDFWriter;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The class SdfFileFragmenter fragments all molecules of an SD file and writes the fragments to an output SD file.
+ * The input is parsed by CDK's IteratingSDFReader on one reader thread, while the fragmentation and the conversion of
+ * the fragments into SD records are done by several worker threads of an OrderedPipeline. Only a bounded number of
+ * records is held in memory, so a slow writer slows down the reader instead of filling the heap.
+ * <p>
+ * Every fragment is written as its own record, in the order of the input molecules. A fragment record carries the
+ * title and all properties of its input molecule plus the property FRAGMENT_PROPERTY with its position among the
+ * fragments of the molecule (e.g. "2/3"). Because the fragments share their atoms with the input molecule, they also
+ * keep its atom coordinates. A molecule that cannot be fragmented is written unchanged with the property
+ * ERROR_PROPERTY containing the reason. Input records that cannot be parsed are skipped by the reader.
+ */
+public class SdfFileFragmenter {
+    //<editor-fold desc="constants">
+    /**
+     * Name of the SD property holding the position of a fragment among the fragments of its molecule.
+     */
+    public static final String FRAGMENT_PROPERTY = "AlkylFragment";
+    /**
+     * Name of the SD property holding the reason why a molecule could not be fragmented.
+     */
+    public static final String ERROR_PROPERTY = "AlkylFragmentationError";
+    /**
+     * Default number of records in flight per worker thread.
+     */
+    private static final int DEFAULT_CAPACITY_PER_THREAD = 64;
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Stateless fragmenter shared by all worker threads.
+     */
+    private final AlkylFragmenter fragmenter;
+    /**
+     * Fragmentation settings for all molecules.
+     */
+    private final FragmentationSettings settings;
+    /**
+     * Number of worker threads.
+     */
+    private final int threadCount;
+    /**
+     * Maximum number of records in flight.
+     */
+    private int capacity;
+    /**
+     * Counter the fragments of all molecules are added to or null.
+     */
+    private FragmentFrequencyCounter frequencyCounter;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new SdfFileFragmenter.
+     * @param aSettings Fragmentation settings for all molecules.
+     * @param aThreadCount Number of worker threads.
+     * @throws IllegalArgumentException if aThreadCount is smaller than 1.
+     */
+    public SdfFileFragmenter(FragmentationSettings aSettings, int aThreadCount) {
+        if (aThreadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + aThreadCount);
+        }
+        this.fragmenter = new AlkylFragmenter();
+        this.settings = aSettings;
+        this.threadCount = aThreadCount;
+        this.capacity = aThreadCount * DEFAULT_CAPACITY_PER_THREAD;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Sets the maximum number of molecules held in memory at the same time.
+     * @param aCapacity Maximum number of records in flight.
+     * @throws IllegalArgumentException if aCapacity is smaller than 1.
+     */
+    public void setCapacity(int aCapacity) {
+        if (aCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + aCapacity);
+        }
+        this.capacity = aCapacity;
+    }
+
+    /**
+     * Sets a cache so that duplicate structures are fragmented only once (see AlkylFragmenter.setCache). Must not be
+     * called during a fragmentation.
+     * @param aCache FragmentationCache object or null for no caching.
+     */
+    public void setCache(FragmentationCache aCache) {
+        this.fragmenter.setCache(aCache);
+    }
+
+    /**
+     * Sets a listener that is notified about every molecule and fragmentation phase (see
+     * AlkylFragmenter.setListener). It is called from all worker threads. Must not be called during a fragmentation.
+     * @param aListener FragmentationListener object or null.
+     */
+    public void setListener(FragmentationListener aListener) {
+        this.fragmenter.setListener(aListener);
+    }
+
+    /**
+     * Sets the maximum wall time per molecule (see AlkylFragmenter.setTimeLimit). Molecules that exceed it are reported
+     * as timed out instead of blocking a worker thread. Must not be called during a fragmentation.
+     * @param aTimeLimit Duration object or null for no limit.
+     */
+    public void setTimeLimit(Duration aTimeLimit) {
+        this.fragmenter.setTimeLimit(aTimeLimit);
+    }
+
+    /**
+     * Sets a counter the fragments of all successfully parsed molecules are added to by the worker threads, so that
+     * the fragment frequencies of the whole file are available after the fragmentation. Must not be called during a
+     * fragmentation.
+     * @param aCounter FragmentFrequencyCounter object or null for no counting.
+     */
+    public void setFrequencyCounter(FragmentFrequencyCounter aCounter) {
+        this.frequencyCounter = aCounter;
+    }
+
+    /**
+     * Fragments all molecules of the input SD file and writes the fragments to the output SD file.
+     * @param anInputFile Path of the input SD file.
+     * @param anOutputFile Path of the output SD file; an existing file is overwritten.
+     * @return Number of input molecules processed.
+     * @throws IOException if the files cannot be read or written or the processing is interrupted.
+     */
+    public long fragment(Path anInputFile, Path anOutputFile) throws IOException {
+        try (BufferedReader tmpReader = Files.newBufferedReader(anInputFile, StandardCharsets.UTF_8);
+             BufferedWriter tmpWriter = Files.newBufferedWriter(anOutputFile, StandardCharsets.UTF_8)) {
+            return this.fragment(tmpReader, tmpWriter);
+        }
+    }
+
+    /**
+     * Fragments all molecules read from the given reader and writes the fragments to the given writer. Neither is
+     * closed by this method.
+     * @param aReader Reader of SD records.
+     * @param aWriter Writer for the output SD records.
+     * @return Number of input molecules processed.
+     * @throws IOException if reading or writing fails or the processing is interrupted.
+     */
+    public long fragment(Reader aReader, Writer aWriter) throws IOException {
+        IteratingSDFReader tmpSdfReader = new IteratingSDFReader(aReader, DefaultChemObjectBuilder.getInstance());
+        tmpSdfReader.setSkip(true);
+        OrderedPipeline<IAtomContainer, String> tmpPipeline = new OrderedPipeline<>(this.threadCount, this.capacity);
+        try {
+            return tmpPipeline.run(tmpSdfReader, this::processMolecule, aWriter::write);
+        } catch (InterruptedException anException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fragmentation of SD file was interrupted");
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Fragments one molecule and converts its fragments into SD records. Errors are reported as a property of the
+     * written input molecule instead of being thrown.
+     * @param aMolecule Input molecule.
+     * @return SD records of the fragments or of the input molecule, or an empty String if not even the input molecule
+     * can be written.
+     */
+    private String processMolecule(IAtomContainer aMolecule) {
+        FragmentationResult tmpResult = this.fragmenter.tryFragment(aMolecule, this.settings);
+        if (this.frequencyCounter != null) {
+            this.frequencyCounter.add(tmpResult);
+        }
+        String tmpError;
+        if (tmpResult.isSuccessful()) {
+            List<IAtomContainer> tmpFragments = tmpResult.getIAtomContainer();
+            StringWriter tmpStringWriter = new StringWriter();
+            try (SDFWriter tmpSdfWriter = new SDFWriter(tmpStringWriter)) {
+                for (int i = 0; i < tmpFragments.size(); i++) {
+                    IAtomContainer tmpFragment = tmpFragments.get(i);
+                    tmpFragment.setProperties(new LinkedHashMap<>(aMolecule.getProperties()));
+                    tmpFragment.setProperty(FRAGMENT_PROPERTY, (i + 1) + "/" + tmpFragments.size());
+                    tmpSdfWriter.write(tmpFragment);
+                }
+            } catch (CDKException | IOException anException) {
+                tmpError = anException.toString();
+                return this.writeFailedMolecule(aMolecule, tmpError);
+            }
+            return tmpStringWriter.toString();
+        }
+        tmpError = String.valueOf(tmpResult.getException());
+        return this.writeFailedMolecule(aMolecule, tmpError);
+    }
+
+    /**
+     * Converts a molecule that could not be fragmented into an SD record with the error property.
+     * @param aMolecule Input molecule.
+     * @param anError Reason of the failure.
+     * @return SD record or an empty String if the molecule cannot be written.
+     */
+    private String writeFailedMolecule(IAtomContainer aMolecule, String anError) {
+        aMolecule.setProperty(ERROR_PROPERTY, anError);
+        StringWriter tmpStringWriter = new StringWriter();
+        try (SDFWriter tmpSdfWriter = new SDFWriter(tmpStringWriter)) {
+            tmpSdfWriter.write(aMolecule);
+        } catch (CDKException | IOException anException) {
+            return "";
+        }
+        return tmpStringWriter.toString();
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,643 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Baensch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * The class SmilesFileFragmenter fragments all molecules of a SMILES / CSV file and writes the fragment SMILES of
+ * each record to an output file. Each input line holds one molecule; its SMILES code and ID are read from
+ * configurable columns (by default SMILES in the first and ID in the second column, separated by a comma). Blank
+ * lines are skipped. The file is streamed through an OrderedPipeline: one thread reads the lines, several worker
+ * threads parse, fragment and convert them into output lines, and the output lines are written in input order. Only
+ * a bounded number of records is held in memory, independent of the file size.
+ * <p>
+ * Input files given as a Path are not read line by line but memory-mapped in chunks of whole lines (see
+ * MappedSmilesFileReader). Each worker thread takes a whole chunk and decodes the SMILES and ID columns directly from
+ * the mapped bytes, so that reading does not limit the throughput of many worker threads. The chunks, and thereby
+ * all records, are written in file order. The file has to be encoded in UTF-8 (or ASCII).
+ * <p>
+ * Instead of text, the fragments can be written to a binary file with fragmentToBinary (see FragmentBinaryWriter),
+ * which is faster to produce and to read for downstream jobs.
+ * <p>
+ * Each output line contains the ID, the fragment SMILES codes joined by '.' and an error message column that is
+ * empty for successfully fragmented molecules.
+ */
+public class SmilesFileFragmenter {
+    //<editor-fold desc="constants">
+    /**
+     * Default number of records in flight per worker thread.
+     */
+    private static final int DEFAULT_CAPACITY_PER_THREAD = 64;
+    /**
+     * Number of memory-mapped chunks in flight per worker thread.
+     */
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 4;
+    //</editor-fold>
+    //<editor-fold desc="private fields">
+    /**
+     * Stateless fragmenter shared by all worker threads.
+     */
+    private final AlkylFragmenter fragmenter;
+    /**
+     * Fragmentation settings for all molecules.
+     */
+    private final FragmentationSettings settings;
+    /**
+     * Number of worker threads.
+     */
+    private final int threadCount;
+    /**
+     * Column separator of the input and output files.
+     */
+    private char separator;
+    /**
+     * Index of the input column containing the SMILES codes.
+     */
+    private int smilesColumn;
+    /**
+     * Index of the input column containing the IDs, -1 if there is no ID column.
+     */
+    private int idColumn;
+    /**
+     * Whether the first input line is a header line that is skipped.
+     */
+    private boolean hasHeader;
+    /**
+     * Maximum number of records in flight when reading from a BufferedReader.
+     */
+    private int capacity;
+    /**
+     * SmilesParser object per worker thread, because SmilesParser is not thread-safe.
+     */
+    private final ThreadLocal<SmilesParser> smilesParser;
+    /**
+     * Counter the fragments of all molecules are added to or null.
+     */
+    private FragmentFrequencyCounter frequencyCounter;
+    /**
+     * Minimum number of bytes per memory-mapped chunk of an input file.
+     */
+    private int chunkSize;
+    /**
+     * Buffer per worker thread the bytes of a column are copied to for decoding.
+     */
+    private final ThreadLocal<byte[]> columnBytes;
+    //</editor-fold>
+    //<editor-fold desc="constructor">
+    /**
+     * Creates a new SmilesFileFragmenter with comma separated columns, SMILES in the first and ID in the second
+     * column and no header line.
+     * @param aSettings Fragmentation settings for all molecules.
+     * @param aThreadCount Number of worker threads.
+     * @throws IllegalArgumentException if aThreadCount is smaller than 1.
+     */
+    public SmilesFileFragmenter(FragmentationSettings aSettings, int aThreadCount) {
+        if (aThreadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + aThreadCount);
+        }
+        this.fragmenter = new AlkylFragmenter();
+        this.settings = aSettings;
+        this.threadCount = aThreadCount;
+        this.separator = ',';
+        this.smilesColumn = 0;
+        this.idColumn = 1;
+        this.hasHeader = false;
+        this.capacity = aThreadCount * DEFAULT_CAPACITY_PER_THREAD;
+        this.smilesParser = ThreadLocal.withInitial(() -> new SmilesParser(DefaultChemObjectBuilder.getInstance()));
+        this.chunkSize = MappedSmilesFileReader.DEFAULT_CHUNK_SIZE;
+        this.columnBytes = ThreadLocal.withInitial(() -> new byte[256]);
+    }
+    //</editor-fold>
+    //<editor-fold desc="public properties">
+    /**
+     * Sets the column separator of the input and output files.
+     * @param aSeparator Separator character, e.g. ',', ';', '\t' or ' '.
+     */
+    public void setSeparator(char aSeparator) {
+        this.separator = aSeparator;
+    }
+
+    /**
+     * Sets the input columns of the SMILES codes and IDs.
+     * @param aSmilesColumn Index of the SMILES column, starting at 0.
+     * @param anIdColumn Index of the ID column, starting at 0, or -1 if there is no ID column.
+     * @throws IllegalArgumentException if aSmilesColumn is negative or anIdColumn is smaller than -1.
+     */
+    public void setColumns(int aSmilesColumn, int anIdColumn) {
+        if (aSmilesColumn < 0 || anIdColumn < -1) {
+            throw new IllegalArgumentException("Invalid columns: smilesColumn=" + aSmilesColumn + ", idColumn="
+                    + anIdColumn);
+        }
+        this.smilesColumn = aSmilesColumn;
+        this.idColumn = anIdColumn;
+    }
+
+    /**
+     * Sets whether the first input line is a header line that is skipped.
+     * @param aHasHeader True if the input file starts with a header line.
+     */
+    public void setHasHeader(boolean aHasHeader) {
+        this.hasHeader = aHasHeader;
+    }
+
+    /**
+     * Sets the maximum number of records held in memory at the same time by fragment(BufferedReader, Writer). Input
+     * files given as a Path are processed in memory-mapped chunks instead, of which at most four per worker thread are
+     * in flight (see setChunkSize), so the capacity does not apply to them.
+     * @param aCapacity Maximum number of records in flight.
+     * @throws IllegalArgumentException if aCapacity is smaller than 1.
+     */
+    public void setCapacity(int aCapacity) {
+        if (aCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + aCapacity);
+        }
+        this.capacity = aCapacity;
+    }
+
+    /**
+     * Sets a cache so that duplicate structures are fragmented only once (see AlkylFragmenter.setCache). Must not be
+     * called during a fragmentation.
+     * @param aCache FragmentationCache object or null for no caching.
+     */
+    public void setCache(FragmentationCache aCache) {
+        this.fragmenter.setCache(aCache);
+    }
+
+    /**
+     * Sets a listener that is notified about every molecule and fragmentation phase (see
+     * AlkylFragmenter.setListener). It is called from all worker threads. Must not be called during a fragmentation.
+     * @param aListener FragmentationListener object or null.
+     */
+    public void setListener(FragmentationListener aListener) {
+        this.fragmenter.setListener(aListener);
+    }
+
+    /**
+     * Sets the maximum wall time per molecule (see AlkylFragmenter.setTimeLimit). Molecules that exceed it are reported
+     * as timed out instead of blocking a worker thread. Must not be called during a fragmentation.
+     * @param aTimeLimit Duration object or null for no limit.
+     */
+    public void setTimeLimit(Duration aTimeLimit) {
+        this.fragmenter.setTimeLimit(aTimeLimit);
+    }
+
+    /**
+     * Sets a counter the fragments of all successfully parsed molecules are added to by the worker threads, so that
+     * the fragment frequencies of the whole file are available after the fragmentation. Must not be called during a
+     * fragmentation.
+     * @param aCounter FragmentFrequencyCounter object or null for no counting.
+     */
+    public void setFrequencyCounter(FragmentFrequencyCounter aCounter) {
+        this.frequencyCounter = aCounter;
+    }
+
+    /**
+     * Sets the minimum number of bytes per memory-mapped chunk of an input file given as a Path. Each chunk is
+     * processed by one worker thread, so files smaller than the chunk size are fragmented by a single thread. At most
+     * four chunks per worker thread are in flight, which bounds the memory used for the records of a Path input.
+     * @param aChunkSize Minimum number of bytes per chunk.
+     * @throws IllegalArgumentException if aChunkSize is smaller than 1.
+     */
+    public void setChunkSize(int aChunkSize) {
+        if (aChunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + aChunkSize);
+        }
+        this.chunkSize = aChunkSize;
+    }
+    //</editor-fold>
+    //<editor-fold desc="public methods">
+    /**
+     * Fragments all molecules of the input file and writes the results to the output file. The input file is
+     * memory-mapped in chunks that are processed by the worker threads, unless the separator is not an ASCII
+     * character.
+     * @param anInputFile Path of the SMILES / CSV file.
+     * @param anOutputFile Path of the output file; an existing file is overwritten.
+     * @return Number of records written.
+     * @throws IOException if the files cannot be read or written or the processing is interrupted.
+     */
+    public long fragment(Path anInputFile, Path anOutputFile) throws IOException {
+        if (this.separator > 0x7F) {
+            try (BufferedReader tmpReader = Files.newBufferedReader(anInputFile, StandardCharsets.UTF_8);
+                 BufferedWriter tmpWriter = Files.newBufferedWriter(anOutputFile, StandardCharsets.UTF_8)) {
+                return this.fragment(tmpReader, tmpWriter);
+            }
+        }
+        try (MappedSmilesFileReader tmpChunks = new MappedSmilesFileReader(anInputFile, this.chunkSize,
+                this.hasHeader);
+             BufferedWriter tmpWriter = Files.newBufferedWriter(anOutputFile, StandardCharsets.UTF_8)) {
+            tmpWriter.write("ID" + this.separator + "Fragments" + this.separator + "Error\n");
+            OrderedPipeline<MappedSmilesFileReader.Chunk, ChunkOutput> tmpPipeline = new OrderedPipeline<>(
+                    this.threadCount, this.threadCount * CHUNKS_IN_FLIGHT_PER_THREAD);
+            long[] tmpRecordCount = new long[1];
+            tmpPipeline.run(tmpChunks, this::processChunk, aChunkOutput -> {
+                tmpWriter.write(aChunkOutput.lines);
+                tmpRecordCount[0] += aChunkOutput.recordCount;
+            });
+            return tmpRecordCount[0];
+        } catch (InterruptedException anException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fragmentation of SMILES file was interrupted");
+        }
+    }
+
+    /**
+     * Fragments all molecules of the input file and writes the results to a binary file (see FragmentBinaryWriter)
+     * instead of a text file. Records whose molecule cannot be parsed are written with the status
+     * FragmentBinaryWriter.STATUS_INVALID_INPUT. Without fragment dictionary, no IAtomContainer objects and SMILES
+     * codes are created for the fragments at all. If the processing fails or is interrupted, the output file is deleted
+     * instead of being left incomplete.
+     * @param anInputFile Path of the SMILES / CSV file.
+     * @param anOutputFile Path of the binary output file; an existing file is overwritten.
+     * @param anIsInterningFragments Whether to write a dictionary of the canonical SMILES codes of the fragments.
+     * @return Number of records written.
+     * @throws IOException if the files cannot be read or written or the processing is interrupted.
+     * @throws IllegalStateException if the separator is not an ASCII character.
+     */
+    public long fragmentToBinary(Path anInputFile, Path anOutputFile, boolean anIsInterningFragments)
+            throws IOException {
+        if (this.separator > 0x7F) {
+            throw new IllegalStateException("Binary output requires an ASCII separator: " + this.separator);
+        }
+        try (MappedSmilesFileReader tmpChunks = new MappedSmilesFileReader(anInputFile, this.chunkSize,
+                this.hasHeader);
+             FragmentBinaryWriter tmpWriter = new FragmentBinaryWriter(anOutputFile, anIsInterningFragments)) {
+            OrderedPipeline<MappedSmilesFileReader.Chunk, List<BinaryRecord>> tmpPipeline = new OrderedPipeline<>(
+                    this.threadCount, this.threadCount * CHUNKS_IN_FLIGHT_PER_THREAD);
+            try {
+                tmpPipeline.run(tmpChunks, aChunk -> this.processChunkToBinary(aChunk, anIsInterningFragments),
+                        aRecords -> {
+                            for (BinaryRecord tmpRecord : aRecords) {
+                                tmpWriter.write(tmpRecord.id, this.settings, tmpRecord.status, tmpRecord.partition,
+                                        tmpRecord.fragmentSmiles);
+                            }
+                        });
+            } catch (Throwable aThrowable) {
+                //the records written so far must not end up in a file that looks complete
+                try {
+                    tmpWriter.abort();
+                } catch (IOException anAbortException) {
+                    aThrowable.addSuppressed(anAbortException);
+                }
+                throw aThrowable;
+            }
+            return tmpWriter.getRecordCount();
+        } catch (InterruptedException anException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fragmentation of SMILES file was interrupted");
+        }
+    }
+
+    /**
+     * Fragments all molecules read from the given reader and writes the results to the given writer. Neither is
+     * closed by this method.
+     * @param aReader Reader of SMILES / CSV lines.
+     * @param aWriter Writer for the output lines.
+     * @return Number of records written.
+     * @throws IOException if reading or writing fails or the processing is interrupted.
+     */
+    public long fragment(BufferedReader aReader, Writer aWriter) throws IOException {
+        if (this.hasHeader) {
+            aReader.readLine();
+        }
+        aWriter.write("ID" + this.separator + "Fragments" + this.separator + "Error\n");
+        Iterator<String> tmpLines = aReader.lines().filter(aLine -> !aLine.isBlank()).iterator();
+        OrderedPipeline<String, String> tmpPipeline = new OrderedPipeline<>(this.threadCount, this.capacity);
+        try {
+            return tmpPipeline.run(tmpLines, this::processLine, aWriter::write);
+        } catch (InterruptedException anException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fragmentation of SMILES file was interrupted");
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="private methods">
+    /**
+     * Parses and fragments the molecule of one input line and creates its output line. Errors are reported in the
+     * output line instead of being thrown.
+     * @param aLine Input line.
+     * @return Output line including the line break.
+     */
+    private String processLine(String aLine) {
+        String tmpId = this.idColumn < 0 ? "" : getColumn(aLine, this.idColumn);
+        StringBuilder tmpOutput = new StringBuilder(aLine.length() * 2);
+        this.processRecord(tmpId, getColumn(aLine, this.smilesColumn), tmpOutput);
+        return tmpOutput.toString();
+    }
+
+    /**
+     * Parses and fragments the molecules of all non-blank lines of a memory-mapped chunk and creates their output
+     * lines.
+     * @param aChunk Chunk of whole input lines.
+     * @return Output lines of the chunk and their number.
+     */
+    private ChunkOutput processChunk(MappedSmilesFileReader.Chunk aChunk) {
+        StringBuilder tmpOutput = new StringBuilder(aChunk.getBuffer().limit() * 2);
+        int[] tmpRecordCount = new int[1];
+        this.forEachRecord(aChunk, (anId, aSmiles) -> {
+            this.processRecord(anId, aSmiles, tmpOutput);
+            tmpRecordCount[0]++;
+        });
+        return new ChunkOutput(tmpOutput.toString(), tmpRecordCount[0]);
+    }
+
+    /**
+     * Parses and fragments the molecules of all non-blank lines of a memory-mapped chunk for the binary output.
+     * @param aChunk Chunk of whole input lines.
+     * @param anIsInterningFragments Whether the canonical SMILES codes of the fragments are needed.
+     * @return Records of the chunk in file order.
+     */
+    private List<BinaryRecord> processChunkToBinary(MappedSmilesFileReader.Chunk aChunk,
+                                                    boolean anIsInterningFragments) {
+        List<BinaryRecord> tmpRecords = new ArrayList<>();
+        this.forEachRecord(aChunk, (anId, aSmiles) -> tmpRecords.add(this.processBinaryRecord(anId, aSmiles,
+                anIsInterningFragments)));
+        return tmpRecords;
+    }
+
+    /**
+     * Decodes the ID and SMILES column of all non-blank lines of a memory-mapped chunk directly from the mapped bytes
+     * and passes them to a consumer in file order.
+     * @param aChunk Chunk of whole input lines.
+     * @param aConsumer Consumer of the ID and SMILES code of each record.
+     */
+    private void forEachRecord(MappedSmilesFileReader.Chunk aChunk, BiConsumer<String, String> aConsumer) {
+        ByteBuffer tmpBuffer = aChunk.getBuffer();
+        int tmpLimit = tmpBuffer.limit();
+        int tmpLineStart = 0;
+        while (tmpLineStart < tmpLimit) {
+            int tmpLineEnd = tmpLineStart;
+            byte tmpByte = 0;
+            while (tmpLineEnd < tmpLimit && (tmpByte = tmpBuffer.get(tmpLineEnd)) != '\n' && tmpByte != '\r') {
+                tmpLineEnd++;
+            }
+            if (!isBlank(tmpBuffer, tmpLineStart, tmpLineEnd)) {
+                String tmpId = this.idColumn < 0 ? "" : this.getColumn(tmpBuffer, tmpLineStart, tmpLineEnd,
+                        this.idColumn);
+                aConsumer.accept(tmpId, this.getColumn(tmpBuffer, tmpLineStart, tmpLineEnd, this.smilesColumn));
+            }
+            tmpLineStart = tmpLineEnd + 1;
+            if (tmpByte == '\r' && tmpLineStart < tmpLimit && tmpBuffer.get(tmpLineStart) == '\n') {
+                tmpLineStart++;
+            }
+        }
+    }
+
+    /**
+     * Parses and fragments the molecule of one record for the binary output. Errors are reported by the status of
+     * the record instead of being thrown.
+     * @param anId ID of the record.
+     * @param aSmiles SMILES code of the record.
+     * @param anIsInterningFragments Whether the canonical SMILES codes of the fragments are needed.
+     * @return BinaryRecord object.
+     */
+    private BinaryRecord processBinaryRecord(String anId, String aSmiles, boolean anIsInterningFragments) {
+        IAtomContainer tmpMolecule;
+        try {
+            tmpMolecule = this.smilesParser.get().parseSmiles(aSmiles);
+        } catch (CDKException | RuntimeException anException) {
+            return new BinaryRecord(anId, FragmentBinaryWriter.STATUS_INVALID_INPUT, null, null);
+        }
+        if (!anIsInterningFragments && this.frequencyCounter == null) {
+            try {
+                return new BinaryRecord(anId, FragmentBinaryWriter.STATUS_SUCCESSFUL,
+                        this.fragmenter.partition(tmpMolecule, this.settings), null);
+            } catch (FragmentationTimeoutException anException) {
+                return new BinaryRecord(anId, FragmentBinaryWriter.STATUS_TIMED_OUT, null, null);
+            } catch (RuntimeException anException) {
+                return new BinaryRecord(anId, FragmentBinaryWriter.STATUS_FAILED, null, null);
+            }
+        }
+        FragmentationResult tmpResult = this.fragmenter.tryFragment(tmpMolecule, this.settings);
+        if (this.frequencyCounter != null) {
+            this.frequencyCounter.add(tmpResult);
+        }
+        if (!tmpResult.isSuccessful()) {
+            return new BinaryRecord(anId, tmpResult.isTimedOut() ? FragmentBinaryWriter.STATUS_TIMED_OUT
+                    : FragmentBinaryWriter.STATUS_FAILED, null, null);
+        }
+        return new BinaryRecord(anId, FragmentBinaryWriter.STATUS_SUCCESSFUL,
+                tmpResult.getPartition(), anIsInterningFragments
+                ? FragmentBinaryWriter.getCanonicalSmiles(tmpResult.getIAtomContainer()) : null);
+    }
+
+    /**
+     * Parses and fragments the molecule of one record and appends its output line. Errors are reported in the
+     * output line instead of being thrown.
+     * @param anId ID of the record.
+     * @param aSmiles SMILES code of the record.
+     * @param anOutput StringBuilder the output line including the line break is appended to.
+     */
+    private void processRecord(String anId, String aSmiles, StringBuilder anOutput) {
+        int tmpRecordStart = anOutput.length();
+        anOutput.append(anId).append(this.separator);
+        String tmpError = "";
+        try {
+            IAtomContainer tmpMolecule = this.smilesParser.get().parseSmiles(aSmiles);
+            FragmentationResult tmpResult = this.fragmenter.tryFragment(tmpMolecule, this.settings);
+            if (this.frequencyCounter != null) {
+                this.frequencyCounter.add(tmpResult);
+            }
+            if (tmpResult.isSuccessful()) {
+                SmilesGenerator tmpSmilesGenerator = SmilesGenerator.generic();
+                int tmpFragmentIndex = 0;
+                for (IAtomContainer tmpFragment : tmpResult.getIAtomContainer()) {
+                    if (tmpFragmentIndex++ > 0) {
+                        anOutput.append('.');
+                    }
+                    anOutput.append(tmpSmilesGenerator.create(tmpFragment));
+                }
+            } else {
+                tmpError = String.valueOf(tmpResult.getException());
+            }
+        } catch (CDKException | RuntimeException anException) {
+            anOutput.setLength(tmpRecordStart + anId.length() + 1);
+            tmpError = anException.toString();
+        }
+        anOutput.append(this.separator).append(this.sanitize(tmpError)).append('\n');
+    }
+
+    /**
+     * Returns the column of a line with the given index.
+     * @param aLine Input line.
+     * @param aColumn Index of the column, starting at 0.
+     * @return Trimmed column content or an empty String if the line has fewer columns.
+     */
+    private String getColumn(String aLine, int aColumn) {
+        int tmpStart = 0;
+        for (int i = 0; i < aColumn; i++) {
+            tmpStart = aLine.indexOf(this.separator, tmpStart) + 1;
+            if (tmpStart == 0) {
+                return "";
+            }
+        }
+        int tmpEnd = aLine.indexOf(this.separator, tmpStart);
+        return (tmpEnd < 0 ? aLine.substring(tmpStart) : aLine.substring(tmpStart, tmpEnd)).trim();
+    }
+
+    /**
+     * Decodes the column of a line in a buffer with the given index.
+     * @param aBuffer Buffer containing the line.
+     * @param aLineStart Index of the first byte of the line.
+     * @param aLineEnd Index behind the last byte of the line.
+     * @param aColumn Index of the column, starting at 0.
+     * @return Trimmed column content or an empty String if the line has fewer columns.
+     */
+    private String getColumn(ByteBuffer aBuffer, int aLineStart, int aLineEnd, int aColumn) {
+        int tmpStart = aLineStart;
+        for (int i = 0; i < aColumn; i++) {
+            while (tmpStart < aLineEnd && aBuffer.get(tmpStart) != this.separator) {
+                tmpStart++;
+            }
+            if (tmpStart == aLineEnd) {
+                return "";
+            }
+            tmpStart++;
+        }
+        int tmpEnd = tmpStart;
+        while (tmpEnd < aLineEnd && aBuffer.get(tmpEnd) != this.separator) {
+            tmpEnd++;
+        }
+        //same trimming as String.trim
+        while (tmpStart < tmpEnd && (aBuffer.get(tmpStart) & 0xFF) <= ' ') {
+            tmpStart++;
+        }
+        while (tmpEnd > tmpStart && (aBuffer.get(tmpEnd - 1) & 0xFF) <= ' ') {
+            tmpEnd--;
+        }
+        byte[] tmpBytes = this.columnBytes.get();
+        if (tmpBytes.length < tmpEnd - tmpStart) {
+            tmpBytes = new byte[Math.max(tmpEnd - tmpStart, tmpBytes.length * 2)];
+            this.columnBytes.set(tmpBytes);
+        }
+        aBuffer.get(tmpStart, tmpBytes, 0, tmpEnd - tmpStart);
+        return new String(tmpBytes, 0, tmpEnd - tmpStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether a line in a buffer consists of whitespace only, like String.isBlank for ASCII lines.
+     * @param aBuffer Buffer containing the line.
+     * @param aLineStart Index of the first byte of the line.
+     * @param aLineEnd Index behind the last byte of the line.
+     * @return True if the line is empty or contains only whitespace characters.
+     */
+    private static boolean isBlank(ByteBuffer aBuffer, int aLineStart, int aLineEnd) {
+        for (int i = aLineStart; i < aLineEnd; i++) {
+            byte tmpByte = aBuffer.get(i);
+            if (tmpByte < 0 || !Character.isWhitespace((char) tmpByte)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces line breaks and separators in an error message, so that it fits into one output column.
+     * @param aMessage Error message.
+     * @return Message without line breaks and separators.
+     */
+    private String sanitize(String aMessage) {
+        return aMessage.replace('\r', ' ').replace('\n', ' ').replace(this.separator, ' ');
+    }
+    //</editor-fold>
+    //<editor-fold desc="nested classes">
+    /**
+     * Output lines of a memory-mapped chunk.
+     */
+    private static final class ChunkOutput {
+        /**
+         * Output lines including their line breaks.
+         */
+        private final String lines;
+        /**
+         * Number of records, i.e. output lines.
+         */
+        private final int recordCount;
+
+        /**
+         * Creates a new chunk output.
+         * @param aLines Output lines including their line breaks.
+         * @param aRecordCount Number of records.
+         */
+        private ChunkOutput(String aLines, int aRecordCount) {
+            this.lines = aLines;
+            this.recordCount = aRecordCount;
+        }
+    }
+
+    /**
+     * Fragmented record for the binary output.
+     */
+    private static final class BinaryRecord {
+        /**
+         * ID of the record.
+         */
+        private final String id;
+        /**
+         * Status of the record, one of the FragmentBinaryWriter.STATUS constants.
+         */
+        private final byte status;
+        /**
+         * Fragments of the record or null if it was not fragmented successfully.
+         */
+        private final FragmentPartition partition;
+        /**
+         * Canonical SMILES codes of the fragments or null if they are not needed.
+         */
+        private final String[] fragmentSmiles;
+
+        /**
+         * Creates a new record.
+         * @param anId ID of the record.
+         * @param aStatus Status of the record.
+         * @param aPartition Fragments of the record or null.
+         * @param aFragmentSmiles Canonical SMILES codes of the fragments or null.
+         */
+        private BinaryRecord(String anId, byte aStatus, FragmentPartition aPartition, String[] aFragmentSmiles) {
+            this.id = anId;
+            this.status = aStatus;
+            this.partition = aPartition;
+            this.fragmentSmiles = aFragmentSmiles;
+        }
+    }
+    //</editor-fold>
+}
@@ -25,16 +25,31 @@
 package de.unijena.cheminf.alkyl;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.openscience.cdk.DefaultChemObjectBuilder;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.smiles.SmilesGenerator;
 import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.CDKHydrogenAdder;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -155,6 +170,25 @@ public class AlkylFragmenterTest extends AlkylFragmenter {
         }
         Assert.assertEquals(this.fragmenter.getMolecule().getAtomCount(), tmpNumberOfAtomsInFragmentList);
     }
+
+    private void assertPerceivedAtomTypes (FragmentationResult aResult) throws Exception {
+        for (IAtomContainer tmpFragment : aResult.getIAtomContainer()) {
+            IAtomContainer tmpPerceived = tmpFragment.clone();
+            for (IAtom tmpAtom : tmpPerceived.atoms()) {
+                tmpAtom.setImplicitHydrogenCount(null);
+            }
+            AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(tmpPerceived);
+            CDKHydrogenAdder.getInstance(tmpPerceived.getBuilder()).addImplicitHydrogens(tmpPerceived);
+            for (int i = 0; i < tmpFragment.getAtomCount(); i++) {
+                Assert.assertEquals(tmpPerceived.getAtom(i).getAtomTypeName(),
+                        tmpFragment.getAtom(i).getAtomTypeName());
+                Assert.assertEquals(tmpPerceived.getAtom(i).getHybridization(),
+                        tmpFragment.getAtom(i).getHybridization());
+                Assert.assertEquals(tmpPerceived.getAtom(i).getImplicitHydrogenCount(),
+                        tmpFragment.getAtom(i).getImplicitHydrogenCount());
+            }
+        }
+    }
     //</editor-fold>
     //<editor-fold desc="Test Fragmentation Methods">
     //<editor-fold desc="cutBranches">
@@ -305,6 +339,242 @@ public class AlkylFragmenterTest extends AlkylFragmenter {
                 getSmiles(this.fragmenter.getIAtomContainer())));
     }
     //</editor-fold>
+    //<editor-fold desc="fragment">
+    /**
+     * Test method to examine that one AlkylFragmenter object gives independent results for consecutive molecules.
+     * @throws CDKException Is triggered when a fragment cannot be converted into SMILES.
+     */
+    @Test
+    public void testFragmentIsReusable () throws CDKException {
+        FragmentationResult tmpResult1 = this.fragmenter.fragment(this.sp.parseSmiles("CCCCCCCCCCCC"),
+                new FragmentationSettings(3,3,false));
+        FragmentationResult tmpResult2 = this.fragmenter.fragment(this.sp.parseSmiles("C2CCC(CCCCCC1CCCCC1)CC2"),
+                new FragmentationSettings(2,3,true));
+        Assert.assertTrue(compareLists(new String[]{"CCC", "CCC", "CCC", "CCC"},
+                getSmiles(tmpResult1.getIAtomContainer())));
+        Assert.assertTrue(compareLists(new String[]{"C1CCC(C)CC1", "CC1CCCCC1", "CCC"},
+                getSmiles(tmpResult2.getIAtomContainer())));
+        Assert.assertEquals(tmpResult2.getFragmentCount(), tmpResult2.getFragmentsIndices().size());
+    }
+    /**
+     * Test method to examine that setFragmentationSettings can be called repeatedly for the same molecule.
+     * @throws CDKException Is triggered when a fragment cannot be converted into SMILES.
+     */
+    @Test
+    public void testSetFragmentationSettingsRepeatedly () throws CDKException {
+        IAtomContainer mol1 = this.sp.parseSmiles("CCCCCCCCCCC");
+        this.fragmenter.setMolecule(mol1);
+        this.fragmenter.setFragmentationSettings(0,3,false);
+        this.fragmenter.setFragmentationSettings(2,5,false);
+        Assert.assertTrue(compareLists(new String[]{"CCCCC", "C(C)CCCC"},
+                getSmiles(this.fragmenter.getIAtomContainer())));
+    }
+    /**
+     * Test method to examine that partition returns the same atom indices as fragment without creating fragments.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or fragmented.
+     */
+    @Test
+    public void testPartition () throws CDKException {
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        for (String tmpSmiles : new String[]{"CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C", "C2CCC(CCCCCC1CCCCC1)CC2"}) {
+            IAtomContainer tmpMolecule = this.sp.parseSmiles(tmpSmiles);
+            FragmentPartition tmpPartition = this.fragmenter.partition(tmpMolecule, tmpSettings);
+            Assert.assertNull(tmpMolecule.getAtom(0).getAtomTypeName());
+            List<List<Integer>> tmpExpected = this.fragmenter.fragment(tmpMolecule, tmpSettings).getFragmentsIndices();
+            Assert.assertEquals(tmpExpected.size(), tmpPartition.getFragmentCount());
+            for (int i = 0; i < tmpExpected.size(); i++) {
+                Assert.assertEquals(tmpExpected.get(i).size(), tmpPartition.getFragmentSize(i));
+                for (int j = 0; j < tmpExpected.get(i).size(); j++) {
+                    Assert.assertEquals((int) tmpExpected.get(i).get(j), tmpPartition.getAtomIndex(i, j));
+                }
+            }
+        }
+    }
+    /**
+     * Test method to examine that fragmentLazily creates a fragment only on access and gives the same fragments as
+     * fragment.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or fragmented.
+     */
+    @Test
+    public void testFragmentLazily () throws CDKException {
+        IAtomContainer tmpMolecule = this.sp.parseSmiles("CCCCCCCCCCCC");
+        LazyFragmentationResult tmpResult = this.fragmenter.fragmentLazily(tmpMolecule,
+                new FragmentationSettings(3,3,false));
+        Assert.assertEquals(4, tmpResult.getFragmentCount());
+        LazyFragment tmpFragment = tmpResult.getFragment(2);
+        Assert.assertNull(tmpMolecule.getAtom(tmpFragment.getAtomIndices()[0]).getAtomTypeName());
+        Assert.assertEquals("CCC", tmpFragment.getSmiles());
+        Assert.assertEquals("C3H8", tmpFragment.getMolecularFormula());
+        Assert.assertSame(tmpFragment.getAtomContainer(), tmpFragment.getAtomContainer());
+        Assert.assertNull(tmpMolecule.getAtom(tmpResult.getFragment(1).getAtomIndices()[0]).getAtomTypeName());
+        List<String> tmpSmilesList = new ArrayList<>();
+        for (LazyFragment tmpLazyFragment : tmpResult.getFragments()) {
+            tmpSmilesList.add(tmpLazyFragment.getSmiles());
+        }
+        Assert.assertEquals(getSmiles(this.fragmenter.fragment(this.sp.parseSmiles("CCCCCCCCCCCC"),
+                new FragmentationSettings(3,3,false)).getIAtomContainer()), tmpSmilesList);
+    }
+    /**
+     * Test method to examine that the atom types and implicit hydrogen counts set for hydrocarbon fragments equal
+     * those of the CDK atom type perception.
+     * @throws Exception Is triggered when a molecule cannot be parsed, fragmented or cloned.
+     */
+    @Test
+    public void testFragmentAtomTypes () throws Exception {
+        for (String tmpSmiles : new String[]{"C=C=CCC#CCCCC(C)C", "CCCC(=C)C=CCC#C", "CC[C-](C)CCCC"}) {
+            FragmentationResult tmpResult = this.fragmenter.fragment(this.sp.parseSmiles(tmpSmiles),
+                    new FragmentationSettings(2,3,false));
+            assertPerceivedAtomTypes(tmpResult);
+        }
+    }
+    /**
+     * Test method to examine that fragments with unset bond orders, as read from SD files with query or aromatic bond
+     * types, get the atom types and implicit hydrogen counts of the CDK atom type perception.
+     * @throws Exception Is triggered when a molecule cannot be parsed, fragmented or cloned.
+     */
+    @Test
+    public void testFragmentUnsetBondOrder () throws Exception {
+        IAtomContainer tmpMolecule = this.sp.parseSmiles("CCCC=CCCCC");
+        tmpMolecule.getBond(3).setOrder(IBond.Order.UNSET);
+        FragmentationResult tmpResult = this.fragmenter.fragment(tmpMolecule, new FragmentationSettings(3,3,false));
+        Assert.assertTrue(tmpResult.getFragmentCount() > 0);
+        assertPerceivedAtomTypes(tmpResult);
+    }
+    /**
+     * Test method to examine that the ring detection of cutRings does not set ring flags on the input molecule.
+     * @throws Exception Is triggered when the molecule cannot be parsed.
+     */
+    @Test
+    public void testRingFlagsUnchanged () throws Exception {
+        IAtomContainer tmpMolecule = this.sp.parseSmiles("C2CCC(CCCCCC1CCCCC1)CC2");
+        FragmentPartition tmpPartition = this.fragmenter.partition(tmpMolecule, new FragmentationSettings(2,3,true));
+        Assert.assertTrue(tmpPartition.getFragmentCount() > 0);
+        for (IAtom tmpAtom : tmpMolecule.atoms()) {
+            Assert.assertFalse(tmpAtom.isInRing());
+        }
+        for (IBond tmpBond : tmpMolecule.bonds()) {
+            Assert.assertFalse(tmpBond.isInRing());
+        }
+    }
+    /**
+     * Test method to examine that a remainder that cannot be connected to any fragment is reported instead of making
+     * the fragmentation loop forever.
+     * @throws Exception Is triggered when the molecule cannot be parsed.
+     */
+    @Test(timeout = 10000)
+    public void testUnconnectedRemainderFails () throws Exception {
+        FragmentationResult tmpResult = this.fragmenter.tryFragment(this.sp.parseSmiles("CC"),
+                new FragmentationSettings(2,3,true));
+        Assert.assertFalse(tmpResult.isSuccessful());
+        Assert.assertTrue(tmpResult.getException() instanceof IllegalStateException);
+    }
+    /**
+     * Test method to examine that one AlkylFragmenter object can be shared by several threads.
+     * @throws Exception Is triggered when a molecule cannot be parsed or fragmented.
+     */
+    @Test
+    public void testFragmentConcurrently () throws Exception {
+        String[] tmpSmilesArray = new String[]{"CCCCCCCCCCCC", "CCCCCCC(=CCCCC)CCCCCCC", "CCC(CC)(CCC)CC(C)CC",
+                "C2CCC(CCCCCC1CCCCC1)CC2", "C=CC=CCC#CCC", "CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C"};
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        List<List<String>> tmpExpected = new ArrayList<>(tmpSmilesArray.length);
+        for (String tmpSmiles : tmpSmilesArray) {
+            tmpExpected.add(getSmiles(new AlkylFragmenter().fragment(this.sp.parseSmiles(tmpSmiles), tmpSettings)
+                    .getIAtomContainer()));
+        }
+        ExecutorService tmpExecutor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> tmpFutures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String tmpSmiles = tmpSmilesArray[i % tmpSmilesArray.length];
+                tmpFutures.add(tmpExecutor.submit(() -> getSmiles(this.fragmenter.fragment(
+                        new SmilesParser(DefaultChemObjectBuilder.getInstance()).parseSmiles(tmpSmiles), tmpSettings)
+                        .getIAtomContainer())));
+            }
+            for (int i = 0; i < tmpFutures.size(); i++) {
+                Assert.assertEquals(tmpExpected.get(i % tmpSmilesArray.length), tmpFutures.get(i).get());
+            }
+        } finally {
+            tmpExecutor.shutdown();
+        }
+    }
+    /**
+     * Test method to examine that a running flight recording receives the molecule and phase events.
+     * @throws Exception Is triggered when the molecule cannot be parsed or the recording cannot be written.
+     */
+    @Test
+    public void testFlightRecorderEvents () throws Exception {
+        IAtomContainer tmpMolecule = this.sp.parseSmiles("C2CCC(CCCCCC1CCCCC1)CC2");
+        Path tmpFile = Files.createTempFile("alkyl", ".jfr");
+        List<RecordedEvent> tmpEvents;
+        try {
+            try (Recording tmpRecording = new Recording()) {
+                tmpRecording.enable("de.unijena.cheminf.alkyl.MoleculeFragmentation").withThreshold(Duration.ZERO);
+                tmpRecording.enable("de.unijena.cheminf.alkyl.FragmentationPhase");
+                tmpRecording.start();
+                this.fragmenter.fragment(tmpMolecule, new FragmentationSettings(2,3,true));
+                tmpRecording.stop();
+                tmpRecording.dump(tmpFile);
+            }
+            tmpEvents = RecordingFile.readAllEvents(tmpFile);
+        } finally {
+            Files.delete(tmpFile);
+        }
+        RecordedEvent tmpMoleculeEvent = null;
+        List<String> tmpPhases = new ArrayList<>();
+        for (RecordedEvent tmpEvent : tmpEvents) {
+            String tmpName = tmpEvent.getEventType().getName();
+            if (tmpName.equals("de.unijena.cheminf.alkyl.MoleculeFragmentation")) {
+                tmpMoleculeEvent = tmpEvent;
+            } else if (tmpName.equals("de.unijena.cheminf.alkyl.FragmentationPhase")) {
+                tmpPhases.add(tmpEvent.getString("phase"));
+            }
+        }
+        Assert.assertNotNull(tmpMoleculeEvent);
+        Assert.assertEquals(tmpMolecule.getAtomCount(), tmpMoleculeEvent.getInt("atomCount"));
+        Assert.assertEquals(12, tmpMoleculeEvent.getInt("ringAtomCount"));
+        Assert.assertEquals(2, tmpMoleculeEvent.getInt("minCut"));
+        Assert.assertEquals(3, tmpMoleculeEvent.getInt("maxCut"));
+        Assert.assertTrue(tmpMoleculeEvent.getBoolean("successful"));
+        Assert.assertTrue(tmpMoleculeEvent.getInt("fragmentCount") > 0);
+        Assert.assertEquals(5, tmpPhases.size());
+        Assert.assertTrue(tmpPhases.contains("GEN_ATOM_CONTAINER"));
+    }
+
+    /**
+     * Test method to examine that the listener receives -1 as allocated bytes while the JVM does not measure thread
+     * allocation, and that the fragmenter does not switch the measurement on.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or fragmented.
+     */
+    @Test
+    public void testListenerDoesNotEnableAllocationMeasurement () throws CDKException {
+        java.lang.management.ThreadMXBean tmpBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(tmpBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean tmpAllocationBean = (com.sun.management.ThreadMXBean) tmpBean;
+        Assume.assumeTrue(tmpAllocationBean.isThreadAllocatedMemorySupported());
+        boolean tmpWasEnabled = tmpAllocationBean.isThreadAllocatedMemoryEnabled();
+        List<Long> tmpAllocatedBytes = new ArrayList<>();
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        tmpFragmenter.setListener(new FragmentationListener() {
+            @Override
+            public void phaseCompleted(FragmentationPhase aPhase, long aDurationNanos, long anAllocatedBytes,
+                                       int anItemCount) {
+                tmpAllocatedBytes.add(anAllocatedBytes);
+            }
+        });
+        try {
+            tmpAllocationBean.setThreadAllocatedMemoryEnabled(false);
+            tmpFragmenter.fragment(this.sp.parseSmiles("C2CCC(CCCCCC1CCCCC1)CC2"), new FragmentationSettings(2,3,true));
+            Assert.assertFalse(tmpAllocationBean.isThreadAllocatedMemoryEnabled());
+            Assert.assertEquals(5, tmpAllocatedBytes.size());
+            for (long tmpBytes : tmpAllocatedBytes) {
+                Assert.assertEquals(-1, tmpBytes);
+            }
+        } finally {
+            tmpAllocationBean.setThreadAllocatedMemoryEnabled(tmpWasEnabled);
+        }
+    }
+    //</editor-fold>
     //</editor-fold>
     //<editor-fold desc="Test Example Molecules">
 
@@ -0,0 +1,268 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Bänsch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test class for the BatchFragmenter.
+ */
+public class BatchFragmenterTest {
+    //<editor-fold desc="Definition and Declaration of Private Objects">
+    /**
+     * SMILES codes of the test molecules.
+     */
+    private static final String[] SMILES = new String[]{"CCCCCCCCCCCC", "CCCCCCC(=CCCCC)CCCCCCC",
+            "CCC(CC)(CCC)CC(C)CC", "C2CCC(CCCCCC1CCCCC1)CC2", "C=CC=CCC#CCC", "CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C"};
+    private SmilesParser sp;
+    public BatchFragmenterTest () {
+        this.sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+    }
+    //</editor-fold>
+    //<editor-fold desc="Private Methods">
+    /**
+     * Parses aCount molecules, cycling through the test SMILES codes.
+     * @param aCount Number of molecules.
+     * @return List of IAtomContainer objects.
+     * @throws CDKException Is triggered when a SMILES code does not translate into a molecule.
+     */
+    private List<IAtomContainer> parseMolecules(int aCount) throws CDKException {
+        List<IAtomContainer> tmpMolecules = new ArrayList<>(aCount);
+        for (int i = 0; i < aCount; i++) {
+            tmpMolecules.add(this.sp.parseSmiles(SMILES[i % SMILES.length]));
+        }
+        return tmpMolecules;
+    }
+
+    /**
+     * Converts a result into a list of fragment SMILES codes.
+     * @param aResult FragmentationResult object.
+     * @return List of SMILES codes.
+     * @throws CDKException Is triggered when a fragment cannot be converted into SMILES.
+     */
+    private List<String> getSmiles(FragmentationResult aResult) throws CDKException {
+        List<String> tmpSmilesList = new ArrayList<>(aResult.getFragmentCount());
+        for (IAtomContainer tmpFragment : aResult.getIAtomContainer()) {
+            tmpSmilesList.add(SmilesGenerator.generic().create(tmpFragment));
+        }
+        return tmpSmilesList;
+    }
+    //</editor-fold>
+    //<editor-fold desc="Tests">
+    /**
+     * Test method to examine that the batch results equal the sequential results and keep the input order.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or a fragment cannot be converted into SMILES.
+     */
+    @Test
+    public void testBatchEqualsSequential () throws CDKException {
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        List<IAtomContainer> tmpMolecules = parseMolecules(1100);
+        List<IAtomContainer> tmpSequentialMolecules = parseMolecules(1100);
+        ForkJoinPool tmpPool = new ForkJoinPool(4);
+        //one worker thread so that the input exceeds the window of blocks in flight
+        ForkJoinPool tmpSinglePool = new ForkJoinPool(1);
+        try {
+            List<FragmentationResult> tmpResults = new BatchFragmenter(tmpPool, 3).fragment(tmpMolecules, tmpSettings);
+            List<FragmentationResult> tmpIterableResults = new BatchFragmenter(tmpSinglePool)
+                    .fragment((Iterable<IAtomContainer>) parseMolecules(1100), tmpSettings);
+            AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+            Assert.assertEquals(tmpMolecules.size(), tmpResults.size());
+            Assert.assertEquals(tmpMolecules.size(), tmpIterableResults.size());
+            for (int i = 0; i < tmpMolecules.size(); i++) {
+                Assert.assertSame(tmpMolecules.get(i), tmpResults.get(i).getMolecule());
+                List<String> tmpExpected = getSmiles(tmpFragmenter.fragment(tmpSequentialMolecules.get(i), tmpSettings));
+                Assert.assertEquals(tmpExpected, getSmiles(tmpResults.get(i)));
+                Assert.assertEquals(tmpExpected, getSmiles(tmpIterableResults.get(i)));
+            }
+        } finally {
+            tmpPool.shutdown();
+            tmpSinglePool.shutdown();
+        }
+    }
+
+    /**
+     * Test method to examine that a molecule that cannot be fragmented does not stop the batch.
+     * @throws CDKException Is triggered when a molecule cannot be parsed.
+     */
+    @Test
+    public void testFailedMoleculeIsReported () throws CDKException {
+        List<IAtomContainer> tmpMolecules = parseMolecules(3);
+        tmpMolecules.add(1, this.sp.parseSmiles("CCC(C)C1=CC(C)(CC)C=C(C)C1C(C)(C)C"));
+        List<FragmentationResult> tmpResults = new BatchFragmenter().fragment(tmpMolecules,
+                new FragmentationSettings(2,3,true));
+        Assert.assertEquals(4, tmpResults.size());
+        Assert.assertTrue(tmpResults.get(0).isSuccessful());
+        Assert.assertFalse(tmpResults.get(1).isSuccessful());
+        Assert.assertNotNull(tmpResults.get(1).getException());
+        Assert.assertEquals(0, tmpResults.get(1).getFragmentCount());
+        Assert.assertTrue(tmpResults.get(2).isSuccessful());
+        Assert.assertTrue(tmpResults.get(3).isSuccessful());
+    }
+
+    /**
+     * Test method to examine that counting the fragments of a batch gives the same frequencies as counting the
+     * sequential results.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or a fragment cannot be converted into SMILES.
+     * @throws IOException Is triggered when the frequency table cannot be written.
+     */
+    @Test
+    public void testCount () throws CDKException, IOException {
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        List<IAtomContainer> tmpMolecules = parseMolecules(300);
+        tmpMolecules.add(this.sp.parseSmiles("CCC(C)C1=CC(C)(CC)C=C(C)C1C(C)(C)C"));
+        FragmentFrequencyCounter tmpCounter = new FragmentFrequencyCounter();
+        ForkJoinPool tmpPool = new ForkJoinPool(4);
+        try {
+            new BatchFragmenter(tmpPool, 3).count(tmpMolecules, tmpSettings, tmpCounter);
+        } finally {
+            tmpPool.shutdown();
+        }
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        SmilesGenerator tmpSmilesGenerator = new SmilesGenerator(SmiFlavor.Unique);
+        Map<String, Long> tmpExpected = new HashMap<>();
+        Map<String, Long> tmpExpectedMolecules = new HashMap<>();
+        long tmpFragmentCount = 0;
+        for (IAtomContainer tmpMolecule : parseMolecules(300)) {
+            Set<String> tmpMoleculeFragments = new HashSet<>();
+            for (IAtomContainer tmpFragment : tmpFragmenter.fragment(tmpMolecule, tmpSettings).getIAtomContainer()) {
+                String tmpSmiles = tmpSmilesGenerator.create(tmpFragment);
+                tmpExpected.merge(tmpSmiles, 1L, Long::sum);
+                if (tmpMoleculeFragments.add(tmpSmiles)) {
+                    tmpExpectedMolecules.merge(tmpSmiles, 1L, Long::sum);
+                }
+                tmpFragmentCount++;
+            }
+        }
+        Assert.assertEquals(301, tmpCounter.getMoleculeCount());
+        Assert.assertEquals(1, tmpCounter.getFailedMoleculeCount());
+        Assert.assertEquals(tmpFragmentCount, tmpCounter.getFragmentCount());
+        Assert.assertEquals(tmpExpected, tmpCounter.getOccurrenceCounts());
+        for (Map.Entry<String, Long> tmpEntry : tmpExpectedMolecules.entrySet()) {
+            Assert.assertEquals((long) tmpEntry.getValue(), tmpCounter.getMoleculeCount(tmpEntry.getKey()));
+        }
+        StringWriter tmpWriter = new StringWriter();
+        tmpCounter.write(tmpWriter);
+        String[] tmpLines = tmpWriter.toString().split("\n");
+        Assert.assertEquals("SMILES\tOccurrences\tMolecules", tmpLines[0]);
+        Assert.assertEquals(tmpExpected.size() + 1, tmpLines.length);
+    }
+
+    /**
+     * Test method to examine that the metrics of a batch count every molecule, phase and fragment.
+     * @throws CDKException Is triggered when a molecule cannot be parsed.
+     * @throws IOException Is triggered when the metrics cannot be written.
+     */
+    @Test
+    public void testMetrics () throws CDKException, IOException {
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        List<IAtomContainer> tmpMolecules = parseMolecules(60);
+        tmpMolecules.add(this.sp.parseSmiles("CCC(C)C1=CC(C)(CC)C=C(C)C1C(C)(C)C"));
+        FragmentationMetrics tmpMetrics = new FragmentationMetrics();
+        ForkJoinPool tmpPool = new ForkJoinPool(4);
+        List<FragmentationResult> tmpResults;
+        try {
+            BatchFragmenter tmpBatchFragmenter = new BatchFragmenter(tmpPool, 3);
+            tmpBatchFragmenter.setListener(tmpMetrics);
+            tmpResults = tmpBatchFragmenter.fragment(tmpMolecules, tmpSettings);
+        } finally {
+            tmpPool.shutdown();
+        }
+        long tmpFragmentCount = 0;
+        for (FragmentationResult tmpResult : tmpResults) {
+            tmpFragmentCount += tmpResult.getFragmentCount();
+        }
+        Assert.assertEquals(60, tmpMetrics.getMoleculeCount());
+        Assert.assertEquals(1, tmpMetrics.getFailedMoleculeCount());
+        Assert.assertEquals(tmpFragmentCount, tmpMetrics.getFragmentCount());
+        Assert.assertEquals(61, tmpMetrics.getMoleculeHistogram().getCount());
+        Assert.assertEquals(61, tmpMetrics.getPhaseHistogram(FragmentationPhase.CUT_BRANCHES).getCount());
+        Assert.assertEquals(60, tmpMetrics.getPhaseHistogram(FragmentationPhase.GEN_ATOM_CONTAINER).getCount());
+        Assert.assertEquals(tmpFragmentCount, tmpMetrics.getItemCount(FragmentationPhase.GEN_ATOM_CONTAINER));
+        //two ring clusters in each sixth molecule, the failing one does not get that far
+        Assert.assertEquals(60, tmpMetrics.getPhaseHistogram(FragmentationPhase.CUT_RINGS).getCount());
+        Assert.assertEquals(20, tmpMetrics.getRingClusterCount());
+        Assert.assertTrue(tmpMetrics.getMergedRemainderCount() > 0);
+        Assert.assertTrue(tmpMetrics.getMoleculeHistogram().getQuantileNanos(0.5) > 0);
+        StringWriter tmpWriter = new StringWriter();
+        tmpMetrics.writePrometheus(tmpWriter);
+        String tmpText = tmpWriter.toString();
+        Assert.assertTrue(tmpText.contains("alkyl_fragmentation_phase_seconds_count{phase=\"cut_rings\"} 60\n"));
+        Assert.assertTrue(tmpText.contains("alkyl_fragmentation_molecule_seconds_bucket{le=\"+Inf\"} 61\n"));
+        Assert.assertTrue(tmpText.contains("alkyl_fragmentation_molecules_total 60\n"));
+    }
+
+    /**
+     * Test method to examine that molecules exceeding the time limit are reported as timed out while all others are
+     * fragmented as without limit.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or a fragment cannot be converted into SMILES.
+     */
+    @Test(timeout = 60000)
+    public void testTimeLimit () throws CDKException {
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        StringBuilder tmpLongChain = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            tmpLongChain.append('C');
+        }
+        List<IAtomContainer> tmpMolecules = parseMolecules(12);
+        tmpMolecules.add(this.sp.parseSmiles(tmpLongChain.toString()));
+        FragmentationMetrics tmpMetrics = new FragmentationMetrics();
+        BatchFragmenter tmpBatchFragmenter = new BatchFragmenter();
+        tmpBatchFragmenter.setListener(tmpMetrics);
+        tmpBatchFragmenter.setTimeLimit(Duration.ofNanos(1));
+        List<FragmentationResult> tmpResults = tmpBatchFragmenter.fragment(tmpMolecules, tmpSettings);
+        Assert.assertTrue(tmpResults.get(12).isTimedOut());
+        Assert.assertFalse(tmpResults.get(12).isSuccessful());
+        Assert.assertTrue(tmpResults.get(12).getException().getMessage().contains("timed out"));
+        Assert.assertTrue(tmpMetrics.getTimedOutMoleculeCount() >= 1);
+        tmpBatchFragmenter.setTimeLimit(Duration.ofMinutes(1));
+        tmpResults = tmpBatchFragmenter.fragment(parseMolecules(12), tmpSettings);
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        List<IAtomContainer> tmpSequentialMolecules = parseMolecules(12);
+        for (int i = 0; i < tmpResults.size(); i++) {
+            Assert.assertFalse(tmpResults.get(i).isTimedOut());
+            Assert.assertEquals(getSmiles(tmpFragmenter.fragment(tmpSequentialMolecules.get(i), tmpSettings)),
+                    getSmiles(tmpResults.get(i)));
+        }
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Bänsch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * Test class for the FragmentBinaryWriter and FragmentBinaryReader.
+ */
+public class FragmentBinaryFileTest {
+    //<editor-fold desc="Definition and Declaration of Private Objects">
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private SmilesParser sp;
+    public FragmentBinaryFileTest () {
+        this.sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+    }
+    //</editor-fold>
+    //<editor-fold desc="Tests">
+    /**
+     * Test method to examine that records written from fragmentation results are read back with their IDs, settings,
+     * statuses, atom indices and interned fragment SMILES codes.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or a fragment converted into SMILES.
+     * @throws IOException Is triggered when the file cannot be written or read.
+     */
+    @Test
+    public void testRoundTrip () throws CDKException, IOException {
+        String[] tmpSmiles = new String[]{"CCCCCC(C)CC(C)(C)CC", "CCCCCCCCCCCC", "CCCCCCC1CCC(CC1)CCCCC", "CC=CC#CC"};
+        FragmentationSettings[] tmpSettings = new FragmentationSettings[]{new FragmentationSettings(2,3,true),
+                new FragmentationSettings(3,3,false)};
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        FragmentationResult[] tmpResults = new FragmentationResult[tmpSmiles.length];
+        Path tmpFile = this.folder.getRoot().toPath().resolve("fragments.alkb");
+        try (FragmentBinaryWriter tmpWriter = new FragmentBinaryWriter(tmpFile, true)) {
+            for (int i = 0; i < tmpSmiles.length; i++) {
+                tmpResults[i] = tmpFragmenter.tryFragment(this.sp.parseSmiles(tmpSmiles[i]), tmpSettings[i % 2]);
+                tmpWriter.write("molecül " + i, tmpResults[i]);
+            }
+            tmpWriter.writeFailure("invalid", tmpSettings[0], FragmentBinaryWriter.STATUS_INVALID_INPUT);
+            Assert.assertEquals(5, tmpWriter.getRecordCount());
+        }
+        Assert.assertTrue(tmpResults[0].isSuccessful());
+        Assert.assertFalse(tmpResults[2].isSuccessful());
+        SmilesGenerator tmpSmilesGenerator = new SmilesGenerator(SmiFlavor.Unique);
+        try (FragmentBinaryReader tmpReader = new FragmentBinaryReader(tmpFile)) {
+            Assert.assertEquals(5, tmpReader.getRecordCount());
+            Assert.assertTrue(tmpReader.hasFragmentDictionary());
+            long tmpAtomCount = 0;
+            for (int i = 0; i < tmpSmiles.length; i++) {
+                Assert.assertEquals("molecül " + i, tmpReader.getId(i));
+                Assert.assertEquals(tmpSettings[i % 2], tmpReader.getSettings(i));
+                Assert.assertEquals(tmpResults[i].isSuccessful(), tmpReader.isSuccessful(i));
+                Assert.assertEquals(tmpResults[i].getFragmentCount(), tmpReader.getFragmentCount(i));
+                Assert.assertEquals(new FragmentPartition(tmpResults[i].getFragmentsIndices()),
+                        tmpReader.getPartition(i));
+                for (int j = 0; j < tmpReader.getFragmentCount(i); j++) {
+                    IAtomContainer tmpFragment = tmpResults[i].getIAtomContainer().get(j);
+                    Assert.assertEquals(tmpFragment.getAtomCount(), tmpReader.getFragmentSize(i, j));
+                    Assert.assertEquals((int) tmpResults[i].getFragmentsIndices().get(j).get(0),
+                            tmpReader.getAtomIndex(i, j, 0));
+                    Assert.assertEquals(tmpSmilesGenerator.create(tmpFragment),
+                            tmpReader.getFragmentSmiles(tmpReader.getFragmentId(i, j)));
+                    tmpAtomCount += tmpFragment.getAtomCount();
+                }
+            }
+            Assert.assertEquals(FragmentBinaryWriter.STATUS_FAILED, tmpReader.getStatus(2));
+            Assert.assertEquals(FragmentBinaryWriter.STATUS_INVALID_INPUT, tmpReader.getStatus(4));
+            Assert.assertEquals(0, tmpReader.getFragmentCount(4));
+            Assert.assertEquals(tmpAtomCount, tmpReader.getAtomIndices().remaining());
+            //the four propyl fragments of dodecane share one dictionary entry
+            Assert.assertEquals(tmpReader.getFragmentId(1, 0), tmpReader.getFragmentId(1, 3));
+            Assert.assertTrue(tmpReader.getDictionarySize() < tmpAtomCount);
+        }
+        try (FileChannel tmpChannel = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+            tmpChannel.write(ByteBuffer.allocate(4), 0);
+        }
+        try {
+            new FragmentBinaryReader(tmpFile).close();
+            Assert.fail("Expected an IOException for a file without valid header");
+        } catch (IOException anException) {
+            Assert.assertTrue(anException.getMessage().contains("not a complete binary fragment file"));
+        }
+    }
+
+    /**
+     * Test method to examine that a SMILES file fragmented into a binary file holds the same partitions as
+     * AlkylFragmenter.partition, in input order and with the statuses of invalid and failing molecules.
+     * @throws CDKException Is triggered when a molecule cannot be parsed.
+     * @throws IOException Is triggered when the files cannot be written or read.
+     */
+    @Test
+    public void testSmilesFileToBinary () throws CDKException, IOException {
+        String[] tmpSmiles = new String[]{"CCCCCC(C)CC(C)(C)CC", "CCCCCCCCCCCC", "C1CC", "CCCCCCC1CCC(CC1)CCCCC",
+                "CC(C)C(C)(C)CCC=CCCC", "C1CCCCC1CCCC"};
+        StringBuilder tmpInput = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            tmpInput.append(tmpSmiles[i % tmpSmiles.length]).append(",id").append(i).append('\n');
+        }
+        Path tmpInputFile = this.folder.getRoot().toPath().resolve("input.smi");
+        Path tmpOutputFile = this.folder.getRoot().toPath().resolve("output.alkb");
+        Files.write(tmpInputFile, tmpInput.toString().getBytes(StandardCharsets.UTF_8));
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,4,true);
+        SmilesFileFragmenter tmpFileFragmenter = new SmilesFileFragmenter(tmpSettings, 3);
+        tmpFileFragmenter.setChunkSize(100);
+        Assert.assertEquals(300, tmpFileFragmenter.fragmentToBinary(tmpInputFile, tmpOutputFile, false));
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        try (FragmentBinaryReader tmpReader = new FragmentBinaryReader(tmpOutputFile)) {
+            Assert.assertEquals(300, tmpReader.getRecordCount());
+            Assert.assertFalse(tmpReader.hasFragmentDictionary());
+            for (int i = 0; i < 300; i++) {
+                Assert.assertEquals("id" + i, tmpReader.getId(i));
+                Assert.assertEquals(tmpSettings, tmpReader.getSettings(i));
+                if (i % tmpSmiles.length == 2) {
+                    Assert.assertEquals(FragmentBinaryWriter.STATUS_INVALID_INPUT, tmpReader.getStatus(i));
+                    continue;
+                }
+                FragmentPartition tmpExpected;
+                try {
+                    tmpExpected = tmpFragmenter.partition(this.sp.parseSmiles(tmpSmiles[i % tmpSmiles.length]),
+                            tmpSettings);
+                } catch (RuntimeException anException) {
+                    Assert.assertEquals(FragmentBinaryWriter.STATUS_FAILED, tmpReader.getStatus(i));
+                    continue;
+                }
+                Assert.assertTrue(tmpReader.isSuccessful(i));
+                Assert.assertEquals(tmpExpected, tmpReader.getPartition(i));
+            }
+        }
+        //the temporary column files are deleted
+        try (Stream<Path> tmpFiles = Files.list(this.folder.getRoot().toPath())) {
+            Assert.assertEquals(2, tmpFiles.count());
+        }
+    }
+
+    /**
+     * Test method to examine that a binary file whose writing fails in the middle is deleted instead of being left
+     * with a valid header, also when a complete file of an earlier run exists at the same path.
+     * @throws IOException Is triggered when the files cannot be written or read.
+     */
+    @Test
+    public void testFailedFragmentationLeavesNoFile () throws IOException {
+        StringBuilder tmpInput = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            tmpInput.append("CCCCCCCCCCCC,id").append(i).append('\n');
+        }
+        Path tmpInputFile = this.folder.getRoot().toPath().resolve("input.smi");
+        Path tmpOutputFile = this.folder.getRoot().toPath().resolve("output.alkb");
+        Files.write(tmpInputFile, tmpInput.toString().getBytes(StandardCharsets.UTF_8));
+        FragmentationSettings tmpSettings = new FragmentationSettings(3,3,false);
+        SmilesFileFragmenter tmpFileFragmenter = new SmilesFileFragmenter(tmpSettings, 1);
+        tmpFileFragmenter.setChunkSize(64);
+        Assert.assertEquals(2000, tmpFileFragmenter.fragmentToBinary(tmpInputFile, tmpOutputFile, false));
+        //the first fragmented molecule interrupts the thread that writes the records
+        Thread tmpWritingThread = Thread.currentThread();
+        tmpFileFragmenter.setListener(new FragmentationListener() {
+            @Override
+            public void moleculeFragmented(int anAtomCount, int aFragmentCount, long aDurationNanos) {
+                tmpWritingThread.interrupt();
+            }
+        });
+        try {
+            tmpFileFragmenter.fragmentToBinary(tmpInputFile, tmpOutputFile, false);
+            Assert.fail("Expected an InterruptedIOException");
+        } catch (InterruptedIOException anException) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        Assert.assertFalse(Files.exists(tmpOutputFile));
+        try (Stream<Path> tmpFiles = Files.list(this.folder.getRoot().toPath())) {
+            Assert.assertEquals(1, tmpFiles.count());
+        }
+        try (FragmentBinaryReader tmpReader = new FragmentBinaryReader(tmpOutputFile)) {
+            Assert.fail("Expected an IOException instead of " + tmpReader.getRecordCount() + " records");
+        } catch (IOException anException) {
+            Assert.assertFalse(anException instanceof InterruptedIOException);
+        }
+        //an aborted writer does not create the file
+        try (FragmentBinaryWriter tmpWriter = new FragmentBinaryWriter(tmpOutputFile, false)) {
+            tmpWriter.writeFailure("invalid", tmpSettings, FragmentBinaryWriter.STATUS_INVALID_INPUT);
+            tmpWriter.abort();
+        }
+        Assert.assertFalse(Files.exists(tmpOutputFile));
+    }
+    //</editor-fold>
+}
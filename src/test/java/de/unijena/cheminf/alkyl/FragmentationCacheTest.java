@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Bänsch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for the FragmentationCache.
+ */
+public class FragmentationCacheTest {
+    //<editor-fold desc="Definition and Declaration of Private Objects">
+    private SmilesParser sp;
+    public FragmentationCacheTest () {
+        this.sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+    }
+    //</editor-fold>
+    //<editor-fold desc="Private Methods">
+    /**
+     * Converts a result into a sorted list of canonical fragment SMILES codes.
+     * @param aResult FragmentationResult object.
+     * @return Sorted list of SMILES codes.
+     * @throws CDKException Is triggered when a fragment cannot be converted into SMILES.
+     */
+    private List<String> getCanonicalSmiles(FragmentationResult aResult) throws CDKException {
+        List<String> tmpSmilesList = new ArrayList<>(aResult.getFragmentCount());
+        for (IAtomContainer tmpFragment : aResult.getIAtomContainer()) {
+            tmpSmilesList.add(new SmilesGenerator(SmiFlavor.Unique).create(tmpFragment));
+        }
+        Collections.sort(tmpSmilesList);
+        return tmpSmilesList;
+    }
+    //</editor-fold>
+    //<editor-fold desc="Tests">
+    /**
+     * Test method to examine that an AlkylFragmenter with a cache gives the same fragments as one without, both when
+     * a molecule is fragmented for the first time and when its result is taken from the cache, also for the same
+     * structure given in different atom orders.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or a fragment cannot be converted into SMILES.
+     */
+    @Test
+    public void testCacheIsTransparent () throws CDKException {
+        String[] tmpSmilesCodes = new String[]{"CC(C)CCCC(C)CC", "CCC(CC)CCC(C)CCCC", "CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C",
+                "CC(C)(C)CC(C)C(C)(CC)C(CCC)CCCC", "CCCC(=C)C=CCC#C", "C2CCC(CCCCCC1CCCCC1)CC2", "CCC(C)(CC)CCC(CC)CCC",
+                "CCCCCCCCCCCC"};
+        FragmentationSettings[] tmpSettingsArray = new FragmentationSettings[]{new FragmentationSettings(1,3,true),
+                new FragmentationSettings(2,3,false), new FragmentationSettings(3,3,false),
+                new FragmentationSettings(3,3,true), new FragmentationSettings(2,5,true)};
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        AlkylFragmenter tmpCachingFragmenter = new AlkylFragmenter();
+        tmpCachingFragmenter.setCache(new FragmentationCache(100));
+        SmilesGenerator tmpSmilesGenerator = SmilesGenerator.generic();
+        for (FragmentationSettings tmpSettings : tmpSettingsArray) {
+            for (String tmpSmiles : tmpSmilesCodes) {
+                FragmentationResult tmpExpected = tmpFragmenter.tryFragment(this.sp.parseSmiles(tmpSmiles),
+                        tmpSettings);
+                //the first call fills the cache, the second one is answered from it
+                for (int i = 0; i < 2; i++) {
+                    FragmentationResult tmpActual = tmpCachingFragmenter.tryFragment(this.sp.parseSmiles(tmpSmiles),
+                            tmpSettings);
+                    String tmpMessage = tmpSmiles + " " + tmpSettings;
+                    Assert.assertEquals(tmpMessage, tmpExpected.isSuccessful(), tmpActual.isSuccessful());
+                    if (!tmpExpected.isSuccessful()) {
+                        continue;
+                    }
+                    Assert.assertEquals(tmpMessage, tmpExpected.getFragmentsIndices(),
+                            tmpActual.getFragmentsIndices());
+                    for (int j = 0; j < tmpExpected.getFragmentCount(); j++) {
+                        Assert.assertEquals(tmpMessage,
+                                tmpSmilesGenerator.create(tmpExpected.getIAtomContainer().get(j)),
+                                tmpSmilesGenerator.create(tmpActual.getIAtomContainer().get(j)));
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(tmpCachingFragmenter.getCache().getHitCount() > 0);
+    }
+
+    /**
+     * Test method to examine that the same structure in another atom order is a separate cache entry, while the same
+     * structure in the same order is answered from the cache.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or fragmented.
+     */
+    @Test
+    public void testReorderedMoleculeIsSeparateEntry () throws CDKException {
+        FragmentationCache tmpCache = new FragmentationCache(10);
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        tmpFragmenter.setCache(tmpCache);
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        FragmentationResult tmpResult1 = tmpFragmenter.fragment(
+                this.sp.parseSmiles("CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C"), tmpSettings);
+        tmpFragmenter.fragment(this.sp.parseSmiles("CC(C)(C)CC(C)C(C)(CC)C(CCC)CCCC"), tmpSettings);
+        Assert.assertEquals(2, tmpCache.getMissCount());
+        Assert.assertEquals(0, tmpCache.getHitCount());
+        FragmentationResult tmpResult2 = tmpFragmenter.fragment(
+                this.sp.parseSmiles("CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C"), tmpSettings);
+        Assert.assertEquals(1, tmpCache.getHitCount());
+        Assert.assertEquals(tmpResult1.getFragmentsIndices(), tmpResult2.getFragmentsIndices());
+        Assert.assertEquals(getCanonicalSmiles(tmpResult1), getCanonicalSmiles(tmpResult2));
+        Assert.assertSame(tmpResult1.getPartition(), tmpResult2.getPartition());
+        Assert.assertSame(tmpResult1.getPartition(), tmpFragmenter.partition(
+                this.sp.parseSmiles("CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C"), tmpSettings));
+        tmpFragmenter.fragment(this.sp.parseSmiles("CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C"),
+                new FragmentationSettings(2,3,false));
+        Assert.assertEquals(3, tmpCache.getMissCount());
+        Assert.assertEquals(3, tmpCache.size());
+    }
+
+    /**
+     * Test method to examine that the least recently used entry is evicted when the cache is full.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or fragmented.
+     */
+    @Test
+    public void testEviction () throws CDKException {
+        FragmentationCache tmpCache = new FragmentationCache(2);
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        tmpFragmenter.setCache(tmpCache);
+        FragmentationSettings tmpSettings = new FragmentationSettings(3,3,false);
+        for (String tmpSmiles : new String[]{"CCCCCCCCCCCC", "CCCCCCCCC", "CCCCCCCCCCCC", "CCCCCC", "CCCCCCCCC"}) {
+            tmpFragmenter.partition(this.sp.parseSmiles(tmpSmiles), tmpSettings);
+        }
+        Assert.assertEquals(2, tmpCache.size());
+        Assert.assertEquals(1, tmpCache.getHitCount());
+        Assert.assertEquals(4, tmpCache.getMissCount());
+        Assert.assertEquals(2, tmpCache.getEvictionCount());
+    }
+    //</editor-fold>
+}
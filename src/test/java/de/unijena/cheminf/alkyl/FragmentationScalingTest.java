@@ -0,0 +1,244 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Bänsch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+import java.util.function.Function;
+
+/**
+ * Test class examining that the fragmentation time grows near-linearly with the size of very large molecules.
+ */
+public class FragmentationScalingTest {
+    //<editor-fold desc="Definition and Declaration of Private Objects">
+    /**
+     * Atom count of the smallest molecule of each family, doubled three times.
+     */
+    private static final int SMALLEST_ATOM_COUNT = 50000;
+    /**
+     * Number of doublings of the atom count.
+     */
+    private static final int DOUBLING_COUNT = 3;
+    /**
+     * Number of timed runs per molecule, of which the fastest is taken.
+     */
+    private static final int RUN_COUNT = 7;
+    /**
+     * Upper limit for the time growth of each doubling of the atom count; linear growth gives 2, quadratic growth 4.
+     */
+    private static final double MAX_DOUBLING_GROWTH = 3.0;
+    //</editor-fold>
+    //<editor-fold desc="Private Methods">
+    /**
+     * Creates a molecule of unconnected carbon atoms without implicit hydrogens.
+     * @param anAtomCount Number of carbon atoms.
+     * @return IAtomContainer object.
+     */
+    private IAtomContainer createCarbons(int anAtomCount) {
+        IAtom[] tmpAtoms = new IAtom[anAtomCount];
+        for (int i = 0; i < anAtomCount; i++) {
+            tmpAtoms[i] = SilentChemObjectBuilder.getInstance().newAtom();
+            tmpAtoms[i].setSymbol("C");
+            tmpAtoms[i].setAtomicNumber(6);
+            tmpAtoms[i].setImplicitHydrogenCount(0);
+        }
+        //setAtoms avoids the linear duplicate check of addAtom
+        IAtomContainer tmpMolecule = SilentChemObjectBuilder.getInstance().newAtomContainer();
+        tmpMolecule.setAtoms(tmpAtoms);
+        return tmpMolecule;
+    }
+
+    /**
+     * Creates a linear alkane chain.
+     * @param anAtomCount Number of carbon atoms.
+     * @return IAtomContainer object.
+     */
+    private IAtomContainer createChain(int anAtomCount) {
+        IAtomContainer tmpMolecule = this.createCarbons(anAtomCount);
+        for (int i = 1; i < anAtomCount; i++) {
+            tmpMolecule.addBond(i - 1, i, IBond.Order.SINGLE);
+        }
+        return tmpMolecule;
+    }
+
+    /**
+     * Creates a comb-like alkane, i.e. a main chain carrying an ethyl branch at every other atom.
+     * @param anAtomCount Number of carbon atoms, a multiple of three.
+     * @return IAtomContainer object.
+     */
+    private IAtomContainer createComb(int anAtomCount) {
+        IAtomContainer tmpMolecule = this.createCarbons(anAtomCount);
+        for (int i = 0; i < anAtomCount; i += 3) {
+            if (i > 0) {
+                tmpMolecule.addBond(i - 3, i, IBond.Order.SINGLE);
+            }
+            tmpMolecule.addBond(i, i + 1, IBond.Order.SINGLE);
+            tmpMolecule.addBond(i + 1, i + 2, IBond.Order.SINGLE);
+        }
+        return tmpMolecule;
+    }
+
+    /**
+     * Creates a ladder of fused four-membered rings, i.e. a single ring cluster spanning the whole molecule.
+     * @param anAtomCount Number of carbon atoms, an even number.
+     * @return IAtomContainer object.
+     */
+    private IAtomContainer createLadder(int anAtomCount) {
+        IAtomContainer tmpMolecule = this.createCarbons(anAtomCount);
+        for (int i = 0; i < anAtomCount; i += 2) {
+            tmpMolecule.addBond(i, i + 1, IBond.Order.SINGLE);
+            if (i > 0) {
+                tmpMolecule.addBond(i - 2, i, IBond.Order.SINGLE);
+                tmpMolecule.addBond(i - 1, i + 1, IBond.Order.SINGLE);
+            }
+        }
+        return tmpMolecule;
+    }
+
+    /**
+     * Creates a polymer of para-cyclohexylene units connected by butylene linkers and terminated by cyclohexyl
+     * groups, i.e. many small ring clusters handled as ring linkers.
+     * @param aUnitCount Number of rings.
+     * @return IAtomContainer object.
+     */
+    private IAtomContainer createRingLinkerPolymer(int aUnitCount) {
+        IAtomContainer tmpMolecule = this.createCarbons(aUnitCount * 10 - 4);
+        for (int i = 0; i < tmpMolecule.getAtomCount(); i += 10) {
+            for (int j = 1; j < 6; j++) {
+                tmpMolecule.addBond(i + j - 1, i + j, IBond.Order.SINGLE);
+            }
+            tmpMolecule.addBond(i, i + 5, IBond.Order.SINGLE);
+            if (i > 0) {
+                tmpMolecule.addBond(i - 1, i, IBond.Order.SINGLE);
+            }
+            if (i + 6 < tmpMolecule.getAtomCount()) {
+                tmpMolecule.addBond(i + 3, i + 6, IBond.Order.SINGLE);
+                for (int j = 7; j < 10; j++) {
+                    tmpMolecule.addBond(i + j - 1, i + j, IBond.Order.SINGLE);
+                }
+            }
+        }
+        return tmpMolecule;
+    }
+
+    /**
+     * Partitions the molecule several times and returns the fastest run.
+     * @param aMolecule IAtomContainer object.
+     * @param aSettings Settings of the fragmentation.
+     * @return Duration of the fastest run in nanoseconds.
+     */
+    private long getFastestPartitionNanos(IAtomContainer aMolecule, FragmentationSettings aSettings) {
+        AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+        long tmpFastestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < RUN_COUNT; i++) {
+            long tmpStartNanos = System.nanoTime();
+            FragmentPartition tmpPartition = tmpFragmenter.partition(aMolecule, aSettings);
+            tmpFastestNanos = Math.min(tmpFastestNanos, System.nanoTime() - tmpStartNanos);
+            Assert.assertTrue(tmpPartition.getFragmentCount() > 0);
+        }
+        return tmpFastestNanos;
+    }
+
+    /**
+     * Examines that the partition time of a molecule family grows near-linearly with each doubling of the atom count.
+     * A doubling that exceeds the limit is measured once more, so that a single disturbed measurement, e.g. by a
+     * garbage collection or recompilation, does not fail the test.
+     * @param aFamily Function creating the molecule of the family with approximately the given atom count.
+     * @param aSettings Settings of the fragmentation.
+     */
+    private void assertNearLinearGrowth(Function<Integer, IAtomContainer> aFamily, FragmentationSettings aSettings) {
+        IAtomContainer[] tmpMolecules = new IAtomContainer[DOUBLING_COUNT + 1];
+        for (int i = 0; i <= DOUBLING_COUNT; i++) {
+            tmpMolecules[i] = aFamily.apply(SMALLEST_ATOM_COUNT << i);
+        }
+        //warm-up for the just-in-time compiler
+        this.getFastestPartitionNanos(tmpMolecules[DOUBLING_COUNT], aSettings);
+        long[] tmpNanos = new long[DOUBLING_COUNT + 1];
+        for (int i = 0; i <= DOUBLING_COUNT; i++) {
+            tmpNanos[i] = this.getFastestPartitionNanos(tmpMolecules[i], aSettings);
+        }
+        for (int i = 1; i <= DOUBLING_COUNT; i++) {
+            if ((double) tmpNanos[i] / Math.max(tmpNanos[i - 1], 1L) >= MAX_DOUBLING_GROWTH) {
+                for (int j = i - 1; j <= i; j++) {
+                    tmpNanos[j] = Math.min(tmpNanos[j], this.getFastestPartitionNanos(tmpMolecules[j], aSettings));
+                }
+            }
+            double tmpGrowth = (double) tmpNanos[i] / Math.max(tmpNanos[i - 1], 1L);
+            Assert.assertTrue("Partition time grew by a factor of " + tmpGrowth + " from "
+                    + tmpMolecules[i - 1].getAtomCount() + " to " + tmpMolecules[i].getAtomCount() + " atoms",
+                    tmpGrowth < MAX_DOUBLING_GROWTH);
+        }
+    }
+    //</editor-fold>
+    //<editor-fold desc="Tests">
+    /**
+     * Test method to examine the growth of the partition time of linear chains.
+     */
+    @Test(timeout = 120000)
+    public void testChainScaling () {
+        this.assertNearLinearGrowth(this::createChain, new FragmentationSettings(2,6,false));
+    }
+
+    /**
+     * Test method to examine the growth of the partition time of combs, i.e. molecules with many branches.
+     */
+    @Test(timeout = 120000)
+    public void testCombScaling () {
+        this.assertNearLinearGrowth(anAtomCount -> this.createComb(anAtomCount - anAtomCount % 3),
+                new FragmentationSettings(2,6,true));
+    }
+
+    /**
+     * Test method to examine the growth of the partition time of a single large ring cluster.
+     */
+    @Test(timeout = 120000)
+    public void testLadderScaling () {
+        this.assertNearLinearGrowth(this::createLadder, new FragmentationSettings(2,6,false));
+    }
+
+    /**
+     * Test method to examine the growth of the partition time of molecules with many ring linkers.
+     */
+    @Test(timeout = 120000)
+    public void testRingLinkerScaling () {
+        this.assertNearLinearGrowth(anAtomCount -> this.createRingLinkerPolymer(anAtomCount / 10),
+                new FragmentationSettings(2,6,false));
+    }
+
+    /**
+     * Test method to examine that a chain of one million atoms is fragmented without stack overflow.
+     */
+    @Test(timeout = 120000)
+    public void testMillionAtomChain () {
+        FragmentPartition tmpPartition = new AlkylFragmenter().partition(this.createChain(1000000),
+                new FragmentationSettings(0,6,false));
+        Assert.assertEquals(166667, tmpPartition.getFragmentCount());
+    }
+    //</editor-fold>
+}
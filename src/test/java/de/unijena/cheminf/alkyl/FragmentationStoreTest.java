@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Bänsch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.unijena.cheminf.alkyl;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for the FragmentationStore.
+ */
+public class FragmentationStoreTest {
+    //<editor-fold desc="Definition and Declaration of Private Objects">
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    //</editor-fold>
+    //<editor-fold desc="Private Methods">
+    /**
+     * Creates a partition with aCount fragments of two atoms each.
+     * @param aCount Number of fragments.
+     * @return FragmentPartition object.
+     */
+    private FragmentPartition createPartition(int aCount) {
+        List<List<Integer>> tmpFragments = new ArrayList<>(aCount);
+        for (int i = 0; i < aCount; i++) {
+            tmpFragments.add(List.of(2 * i + 1, 2 * i));
+        }
+        return new FragmentPartition(tmpFragments);
+    }
+    //</editor-fold>
+    //<editor-fold desc="Tests">
+    /**
+     * Test method to examine that entries survive reopening, also after the index has been enlarged several times.
+     * @throws IOException Is triggered when the store files cannot be accessed.
+     */
+    @Test
+    public void testReopen () throws IOException {
+        Path tmpDirectory = this.folder.getRoot().toPath();
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        try (FragmentationStore tmpStore = new FragmentationStore(tmpDirectory)) {
+            for (int i = 0; i < 3000; i++) {
+                tmpStore.put("C".repeat(i + 1), new int[]{i, 0}, tmpSettings, this.createPartition(i % 7));
+            }
+            tmpStore.put("C", new int[]{0, 0}, tmpSettings, this.createPartition(5));
+            Assert.assertEquals(3000, tmpStore.size());
+        }
+        try (FragmentationStore tmpStore = new FragmentationStore(tmpDirectory)) {
+            Assert.assertEquals(3000, tmpStore.size());
+            for (int i = 0; i < 3000; i++) {
+                Assert.assertEquals(this.createPartition(i % 7), tmpStore.get("C".repeat(i + 1),
+                        new int[]{i, 0}, tmpSettings));
+            }
+            Assert.assertNull(tmpStore.get("C", new int[]{0, 0}, new FragmentationSettings(2,3,false)));
+            Assert.assertNull(tmpStore.get("CC", new int[]{0, 1}, tmpSettings));
+            Assert.assertNull(tmpStore.get("CC=C", new int[]{0, 0}, tmpSettings));
+        }
+    }
+
+    /**
+     * Test method to examine that a store written by an older or newer algorithm version is emptied when it is
+     * opened.
+     * @throws IOException Is triggered when the store files cannot be accessed.
+     */
+    @Test
+    public void testVersionChangeInvalidatesEntries () throws IOException {
+        Path tmpDirectory = this.folder.getRoot().toPath();
+        FragmentationSettings tmpSettings = new FragmentationSettings(0,0,false);
+        for (int tmpVersion : new int[]{AlkylFragmenter.ALGORITHM_VERSION - 1, AlkylFragmenter.ALGORITHM_VERSION + 1}) {
+            try (FragmentationStore tmpStore = new FragmentationStore(tmpDirectory)) {
+                tmpStore.put("CCCC", new int[]{0}, tmpSettings, this.createPartition(2));
+            }
+            try (FileChannel tmpChannel = FileChannel.open(tmpDirectory.resolve("fragments.idx"),
+                    StandardOpenOption.WRITE)) {
+                tmpChannel.write(ByteBuffer.allocate(4).putInt(0, tmpVersion), 8);
+            }
+            try (FragmentationStore tmpStore = new FragmentationStore(tmpDirectory)) {
+                Assert.assertEquals(0, tmpStore.size());
+                Assert.assertNull(tmpStore.get("CCCC", new int[]{0}, tmpSettings));
+            }
+        }
+    }
+
+    /**
+     * Test method to examine that a FragmentationCache finds the partitions written by an earlier run in the store.
+     * @throws IOException Is triggered when the store files cannot be accessed.
+     * @throws CDKException Is triggered when a molecule cannot be parsed or fragmented.
+     */
+    @Test
+    public void testCacheUsesStoreOfEarlierRun () throws IOException, CDKException {
+        Path tmpDirectory = this.folder.getRoot().toPath();
+        SmilesParser tmpSmilesParser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        FragmentationSettings tmpSettings = new FragmentationSettings(2,3,true);
+        String tmpSmiles = "CCCCC(CCC)C(C)(CC)C(C)CC(C)(C)C";
+        FragmentPartition tmpFirstPartition;
+        try (FragmentationStore tmpStore = new FragmentationStore(tmpDirectory)) {
+            AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+            tmpFragmenter.setCache(new FragmentationCache(10, tmpStore));
+            tmpFirstPartition = tmpFragmenter.partition(tmpSmilesParser.parseSmiles(tmpSmiles), tmpSettings);
+            Assert.assertEquals(1, tmpFragmenter.getCache().getMissCount());
+        }
+        try (FragmentationStore tmpStore = new FragmentationStore(tmpDirectory)) {
+            AlkylFragmenter tmpFragmenter = new AlkylFragmenter();
+            tmpFragmenter.setCache(new FragmentationCache(10, tmpStore));
+            Assert.assertEquals(tmpFirstPartition,
+                    tmpFragmenter.partition(tmpSmilesParser.parseSmiles(tmpSmiles), tmpSettings));
+            Assert.assertEquals(0, tmpFragmenter.getCache().getMissCount());
+            Assert.assertEquals(1, tmpFragmenter.getCache().getStoreHitCount());
+            //the same structure in another atom order is not taken from the store
+            String tmpReorderedSmiles = "CC(C)(C)CC(C)C(C)(CC)C(CCC)CCCC";
+            FragmentPartition tmpExpectedPartition = new AlkylFragmenter().partition(
+                    tmpSmilesParser.parseSmiles(tmpReorderedSmiles), tmpSettings);
+            Assert.assertEquals(tmpExpectedPartition,
+                    tmpFragmenter.partition(tmpSmilesParser.parseSmiles(tmpReorderedSmiles), tmpSettings));
+            Assert.assertEquals(1, tmpFragmenter.getCache().getMissCount());
+            Assert.assertEquals(1, tmpFragmenter.getCache().getStoreHitCount());
+        }
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Bänsch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.SDFWriter;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for the SdfFileFragmenter.
+ */
+public class SdfFileFragmenterTest {
+    /**
+     * Test method to examine that fragments are written in input order and carry the titles and properties of their
+     * molecules.
+     * @throws CDKException Is triggered when a test molecule cannot be created.
+     * @throws IOException Is triggered when reading or writing fails.
+     */
+    @Test
+    public void testTitlesAndPropertiesAreKept () throws CDKException, IOException {
+        SmilesParser tmpSmilesParser = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        StringWriter tmpInput = new StringWriter();
+        try (SDFWriter tmpSdfWriter = new SDFWriter(tmpInput)) {
+            for (int i = 0; i < 50; i++) {
+                IAtomContainer tmpMolecule = tmpSmilesParser.parseSmiles(i % 5 == 4 ? "CCC(C)C1=CC(C)(CC)C=C(C)C1C(C)(C)C"
+                        : "CCCCCCCCCCCC");
+                tmpMolecule.setTitle("molecule" + i);
+                tmpMolecule.setProperty("Vendor", "vendor" + i);
+                tmpSdfWriter.write(tmpMolecule);
+            }
+        }
+        SdfFileFragmenter tmpFileFragmenter = new SdfFileFragmenter(new FragmentationSettings(3,3,false), 3);
+        tmpFileFragmenter.setCapacity(2);
+        StringWriter tmpOutput = new StringWriter();
+        Assert.assertEquals(50, tmpFileFragmenter.fragment(new StringReader(tmpInput.toString()), tmpOutput));
+        List<IAtomContainer> tmpRecords = new ArrayList<>();
+        try (IteratingSDFReader tmpReader = new IteratingSDFReader(new StringReader(tmpOutput.toString()),
+                DefaultChemObjectBuilder.getInstance())) {
+            tmpReader.forEachRemaining(tmpRecords::add);
+        }
+        Assert.assertEquals(40 * 4 + 10, tmpRecords.size());
+        int tmpRecordIndex = 0;
+        for (int i = 0; i < 50; i++) {
+            int tmpExpectedRecords = i % 5 == 4 ? 1 : 4;
+            for (int j = 0; j < tmpExpectedRecords; j++) {
+                IAtomContainer tmpRecord = tmpRecords.get(tmpRecordIndex++);
+                Assert.assertEquals("molecule" + i, tmpRecord.getProperty(CDKConstants.TITLE));
+                Assert.assertEquals("vendor" + i, tmpRecord.getProperty("Vendor"));
+                if (i % 5 == 4) {
+                    Assert.assertNotNull(tmpRecord.getProperty(SdfFileFragmenter.ERROR_PROPERTY));
+                    Assert.assertEquals(18, tmpRecord.getAtomCount());
+                } else {
+                    Assert.assertEquals((j + 1) + "/4", tmpRecord.getProperty(SdfFileFragmenter.FRAGMENT_PROPERTY));
+                    Assert.assertEquals(3, tmpRecord.getAtomCount());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Andreas Freitag, Jonas Schaub, Felix Bänsch, Achim Zielesny, Christoph Steinbeck
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.unijena.cheminf.alkyl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Test class for the SmilesFileFragmenter.
+ */
+public class SmilesFileFragmenterTest {
+    /**
+     * Test method to examine that records are written in input order with their IDs and that invalid records are
+     * reported in the error column.
+     * @throws IOException Is triggered when reading or writing fails.
+     */
+    @Test
+    public void testOrderedOutput () throws IOException {
+        StringBuilder tmpInput = new StringBuilder("SMILES;Name\n");
+        StringBuilder tmpExpected = new StringBuilder("ID;Fragments;Error\n");
+        for (int i = 0; i < 100; i++) {
+            tmpInput.append("CCCCCCCCCCCC;dodecane").append(i).append('\n');
+            tmpExpected.append("dodecane").append(i).append(";CCC.CCC.CCC.CCC;\n");
+            if (i % 10 == 0) {
+                tmpInput.append("\n").append("C1CC;broken").append(i).append('\n');
+            }
+        }
+        SmilesFileFragmenter tmpFileFragmenter = new SmilesFileFragmenter(new FragmentationSettings(3,3,false), 3);
+        tmpFileFragmenter.setSeparator(';');
+        tmpFileFragmenter.setHasHeader(true);
+        tmpFileFragmenter.setCapacity(4);
+        StringWriter tmpOutput = new StringWriter();
+        long tmpCount = tmpFileFragmenter.fragment(new BufferedReader(new StringReader(tmpInput.toString())), tmpOutput);
+        Assert.assertEquals(110, tmpCount);
+        String[] tmpLines = tmpOutput.toString().split("\n");
+        Assert.assertEquals(111, tmpLines.length);
+        StringBuilder tmpActualWithoutErrors = new StringBuilder();
+        int tmpErrorCount = 0;
+        for (String tmpLine : tmpLines) {
+            if (tmpLine.startsWith("broken")) {
+                Assert.assertTrue(tmpLine, tmpLine.matches("broken\\d+;;.+"));
+                tmpErrorCount++;
+            } else {
+                tmpActualWithoutErrors.append(tmpLine).append('\n');
+            }
+        }
+        Assert.assertEquals(10, tmpErrorCount);
+        Assert.assertEquals(tmpExpected.toString(), tmpActualWithoutErrors.toString());
+    }
+
+    /**
+     * Test method to examine that a memory-mapped file split into many small chunks gives the same output as the
+     * same content read line by line, for all kinds of line breaks, blank lines and a header line.
+     * @throws IOException Is triggered when reading or writing fails.
+     */
+    @Test
+    public void testMappedChunks () throws IOException {
+        String[] tmpLineBreaks = new String[]{"\n", "\r\n", "\r"};
+        StringBuilder tmpInput = new StringBuilder("SMILES;Name\n");
+        for (int i = 0; i < 200; i++) {
+            tmpInput.append(i % 7 == 0 ? " CCCCCC(C)CC(C)(C)CC " : "CCCCCCCCCCCC").append(';').append("molecule")
+                    .append(i).append(tmpLineBreaks[i % 3]);
+            if (i % 11 == 0) {
+                tmpInput.append(" \t").append(tmpLineBreaks[i % 2]).append("C1CC;broken").append(i).append('\n');
+            }
+        }
+        tmpInput.append("CCCC;last");
+        SmilesFileFragmenter tmpFileFragmenter = new SmilesFileFragmenter(new FragmentationSettings(2,3,true), 3);
+        tmpFileFragmenter.setSeparator(';');
+        tmpFileFragmenter.setHasHeader(true);
+        StringWriter tmpExpected = new StringWriter();
+        long tmpExpectedCount = tmpFileFragmenter.fragment(new BufferedReader(new StringReader(tmpInput.toString())),
+                tmpExpected);
+        Path tmpDirectory = Files.createTempDirectory("alkyl-mapped");
+        Path tmpInputFile = tmpDirectory.resolve("input.csv");
+        Path tmpOutputFile = tmpDirectory.resolve("output.csv");
+        Files.write(tmpInputFile, tmpInput.toString().getBytes(StandardCharsets.UTF_8));
+        for (int tmpChunkSize : new int[]{1, 7, 64, 1 << 20}) {
+            tmpFileFragmenter.setChunkSize(tmpChunkSize);
+            Assert.assertEquals(tmpExpectedCount, tmpFileFragmenter.fragment(tmpInputFile, tmpOutputFile));
+            Assert.assertEquals(tmpExpected.toString(),
+                    new String(Files.readAllBytes(tmpOutputFile), StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(220, tmpExpectedCount);
+        Files.delete(tmpInputFile);
+        Files.delete(tmpOutputFile);
+        Files.delete(tmpDirectory);
+    }
+
+    /**
+     * Test method to examine that the BatchCommandLine parses its arguments, fragments a SMILES file like the
+     * SmilesFileFragmenter and prints a summary line with throughput, latency and error count.
+     * @throws IOException Is triggered when reading or writing fails.
+     */
+    @Test
+    public void testBatchCommandLine () throws IOException {
+        Path tmpDirectory = Files.createTempDirectory("alkyl-batch");
+        Path tmpInputFile = tmpDirectory.resolve("input.smi");
+        Path tmpOutputFile = tmpDirectory.resolve("output.csv");
+        StringBuilder tmpInput = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            tmpInput.append("CCCCCCCCCCCC,dodecane").append(i).append('\n');
+        }
+        tmpInput.append("C1CC,broken\n");
+        //a ring at the end of a chain cannot be fragmented with these settings
+        tmpInput.append("CCCCCC1CCCCC1,failing\n");
+        Files.write(tmpInputFile, tmpInput.toString().getBytes(StandardCharsets.UTF_8));
+        BatchCommandLine tmpCommandLine = new BatchCommandLine(new String[]{tmpInputFile.toString(),
+                tmpOutputFile.toString(), "--min-cut", "3", "--max-cut", "3", "--no-preserve", "--threads", "2",
+                "--time-limit", "60000", "--cache", "10"});
+        Assert.assertEquals(new FragmentationSettings(3,3,false), tmpCommandLine.getSettings());
+        Assert.assertEquals(2, tmpCommandLine.getThreadCount());
+        ByteArrayOutputStream tmpProgress = new ByteArrayOutputStream();
+        long tmpCount = tmpCommandLine.run(new PrintStream(tmpProgress, true, StandardCharsets.UTF_8));
+        Assert.assertEquals(22, tmpCount);
+        List<String> tmpLines = Files.readAllLines(tmpOutputFile, StandardCharsets.UTF_8);
+        Assert.assertEquals(23, tmpLines.size());
+        Assert.assertEquals("dodecane0,CCC.CCC.CCC.CCC,", tmpLines.get(1));
+        String tmpSummary = tmpProgress.toString(StandardCharsets.UTF_8).trim();
+        Assert.assertTrue(tmpSummary, tmpSummary.matches(".* 21 molecules \\(.+/s\\), 80 fragments \\(.+/s\\), "
+                + "p50 .+ ms, p99 .+ ms, 1 errors, 22 records written to .+, 2 not fragmented"));
+        Files.delete(tmpInputFile);
+        Files.delete(tmpOutputFile);
+        Files.delete(tmpDirectory);
+        try {
+            new BatchCommandLine(new String[]{tmpInputFile.toString(), "--threads", "0"});
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException anException) {
+            Assert.assertTrue(anException.getMessage().contains("--threads"));
+        }
+    }
+}